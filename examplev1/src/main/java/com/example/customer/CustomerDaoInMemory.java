@@ -47,7 +47,7 @@ public class CustomerDaoInMemory implements CustomerDao {
 	}
 
 	@Override
-    @Cacheable(value = CACHE_CUSTOMER_BY_ID, key = "#customerId")
+    @Cacheable(value = CACHE_CUSTOMER_BY_ID, key = "#customerId", sync = true)
 	public Customer getCustomerById(Long customerId) {
 		try {
 			Thread.sleep(5000);
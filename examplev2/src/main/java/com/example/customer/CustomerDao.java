@@ -6,6 +6,12 @@ public interface CustomerDao {
 
 	public Customer saveCustomer(Customer customer);
 	public Customer getCustomerById(Long customerId);
+
+	/**
+	 * Read a customer from the data source without going through the cache, with the same latency as {@link #getCustomerById(Long)}.
+	 * This is used by callers that cache the customer themselves (e.g. the reactive endpoints).
+	 */
+	public Customer loadCustomerById(Long customerId);
 	
 	public List<Customer> findCustomers(CustomerCriteria criteria);
 	
@@ -50,8 +50,13 @@ public class CustomerDaoInMemory implements CustomerDao {
 	}
 
 	@Override
-    @Cacheable(value = CACHE_CUSTOMER_BY_ID, key = "#customerId")
+    @Cacheable(value = CACHE_CUSTOMER_BY_ID, key = "#customerId", sync = true)
 	public Customer getCustomerById(Long customerId) {
+		return loadCustomerById(customerId);
+	}
+
+	@Override
+	public Customer loadCustomerById(Long customerId) {
 		try {
 			Thread.sleep(5000);
 		} catch (InterruptedException e) {
@@ -6,5 +6,6 @@ public interface CustomerService {
 
 	public Customer saveCustomer(Customer customer);
 	public Customer getCustomerById(Long customerId);
+	public Customer loadCustomerById(Long customerId);
 	public List<Customer> findCustomers(CustomerCriteria criteria);	
 }
@@ -31,6 +31,11 @@ public class CustomerServiceImpl implements CustomerService {
 		return customerDao.getCustomerById(customerId);
 	}
 
+	@Override
+	public Customer loadCustomerById(Long customerId) {
+		return customerDao.loadCustomerById(customerId);
+	}
+
 	@Override
 	public List<Customer> findCustomers(CustomerCriteria criteria) {
 		return customerDao.findCustomers(criteria);
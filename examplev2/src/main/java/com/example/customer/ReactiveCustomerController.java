@@ -0,0 +1,79 @@
+package com.example.customer;
+
+import java.util.List;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.MediaType;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import com.example.cache.ReactiveUnifiedRedisCache;
+import com.example.cache.ReactiveUnifiedRedisCacheManager;
+
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+/**
+ * The reactive counterpart of the customer lookups in {@link CustomerController}. The customers are read from the same
+ * "customerById" cache (via the reactive view of the cache), a miss is loaded from the (blocking) customer service on the
+ * elastic scheduler so the event loop is never blocked. A miss reads the same data source, with the same simulated latency, as a miss
+ * of the blocking endpoint.
+ */
+@RestController
+@RequestMapping(value="/reactive/customers", produces= {MediaType.APPLICATION_JSON_VALUE})
+public class ReactiveCustomerController {
+
+	private static final Logger logger = LoggerFactory.getLogger(ReactiveCustomerController.class);
+
+	private static final String CACHE_CUSTOMER_BY_ID = "customerById";
+
+	@Autowired
+	CustomerService customerService;
+
+	@Autowired
+	ReactiveUnifiedRedisCacheManager reactiveCacheManager;
+
+	@GetMapping(value="/{customerId}")
+	public Mono<Customer> getCustomerById(@PathVariable("customerId") Long customerId) {
+		return getCache().get(customerId, loadCustomer(customerId))
+			.doOnNext(customer -> {
+				if (logger.isInfoEnabled()) {
+					logger.info("The customer [{}] lives in the [{}].", customerId, customer.getAddress().getCity());
+				}
+			});
+	}
+
+	@GetMapping(value="")
+	public Flux<Customer> getCustomersByIds(@RequestParam("ids") List<Long> customerIds) {
+		//The cached customers are fetched concurrently, any customer that is not cached is then loaded (and cached) individually.
+		ReactiveUnifiedRedisCache cache = getCache();
+		return cache.getAll(customerIds)
+			//A key that is known to have no customer (a cached null) is loaded again, like any other miss.
+			.filter(entry -> entry.getValue().get() != null)
+			.collectMap(entry -> entry.getKey(), entry -> (Customer) entry.getValue().get())
+			.flatMapMany(cachedCustomers -> Flux.fromIterable(customerIds)
+				.flatMapSequential(customerId -> cachedCustomers.containsKey(customerId)
+					? Mono.just(cachedCustomers.get(customerId))
+					: loadCustomer(customerId).flatMap(customer -> cache.put(customerId, customer).thenReturn(customer))));
+	}
+
+	private Mono<Customer> loadCustomer(Long customerId) {
+		//The same (uncached, slow) data source read as a miss of the blocking endpoint, so the two are compared like for like.
+		return Mono.fromCallable(() -> customerService.loadCustomerById(customerId))
+			.subscribeOn(Schedulers.elastic());
+	}
+
+	private ReactiveUnifiedRedisCache getCache() {
+		ReactiveUnifiedRedisCache cache = reactiveCacheManager.getCache(CACHE_CUSTOMER_BY_ID);
+		if (cache == null) {
+			throw new IllegalStateException("The cache [" + CACHE_CUSTOMER_BY_ID + "] is not a configured unified redis cache.");
+		}
+		return cache;
+	}
+}
@@ -0,0 +1,57 @@
+package com.example.cache;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+
+import org.springframework.cache.Cache.ValueWrapper;
+
+/**
+ * The non-blocking counterpart of the {@link CacheHelper}. Each operation returns a future, which allows a caller to issue several
+ * independent cache operations at once and compose the results. If a cache does not support non-blocking operations, the operation
+ * is performed on the calling thread and an already completed future is returned.
+ */
+public interface AsyncCacheHelper {
+
+	<K> CompletableFuture<Map<K, ValueWrapper>> getAll(String cacheName, Set<K> keySet);
+
+	<K> CompletableFuture<ValueWrapper> get(String cacheName, K key);
+
+	/**
+	 * Helper method to evict a specific value from the cache.
+	 *
+	 * @param cacheName Name of the cache
+	 * @param key Key for the value that will be evicted.
+	 */
+	CompletableFuture<Void> evict(String cacheName, Object key);
+
+	/**
+	 * Helper method to evict a specific set of values from the cache.
+	 *
+	 * @param cacheName Name of the cache
+	 * @param keys the keys to evict
+	 */
+	<T, C extends Collection<T>> CompletableFuture<Void> evictAll(String cacheName, C keys);
+
+	/**
+	 * Helper method to first evict any existing value within the cache associated with the key and then set the new
+	 * value.
+	 *
+	 * @param cacheName Name of the cache
+	 * @param key Key within the cache
+	 * @param value Value to be cached.
+	 * @param evict If true, any other cached versions of the value are evicted.
+	 */
+	CompletableFuture<Void> put(String cacheName, Object key, Object value, boolean evict);
+
+	/**
+	 * Helper method to add a set of key/values to a given cache. There is also a flag indicating if those values should
+	 * first be evicted prior to being set on the cache.
+	 *
+	 * @param cacheName Name of the cache
+	 * @param cacheEntries The set of key/values that will be added the cache.
+	 * @param evict If true, any other cached versions of the values are evicted.
+	 */
+	<K, V> CompletableFuture<Void> putAll(String cacheName, Map<K, V> cacheEntries, boolean evict);
+}
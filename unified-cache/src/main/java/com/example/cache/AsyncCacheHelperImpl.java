@@ -0,0 +1,100 @@
+package com.example.cache;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+
+import org.springframework.cache.Cache;
+import org.springframework.cache.Cache.ValueWrapper;
+import org.springframework.cache.transaction.TransactionAwareCacheDecorator;
+
+public class AsyncCacheHelperImpl implements AsyncCacheHelper {
+
+	//Used for any cache that does not support non-blocking operations.
+	private final CacheHelper cacheHelper;
+
+	public AsyncCacheHelperImpl(CacheHelper cacheHelper) {
+		this.cacheHelper = cacheHelper;
+	}
+
+	@Override
+	public <K> CompletableFuture<Map<K, ValueWrapper>> getAll(String cacheName, Set<K> keySet) {
+		AsyncExtendedCache cache = getAsyncCache(cacheName);
+		if (cache == null) {
+			return CompletableFuture.completedFuture(cacheHelper.getAll(cacheName, keySet));
+		}
+		if (keySet.isEmpty()) {
+			return CompletableFuture.completedFuture(new HashMap<>());
+		}
+		return cache.getAllAsync(keySet);
+	}
+
+	@Override
+	public <K> CompletableFuture<ValueWrapper> get(String cacheName, K key) {
+		AsyncExtendedCache cache = getAsyncCache(cacheName);
+		if (cache == null) {
+			return CompletableFuture.completedFuture(cacheHelper.get(cacheName, key));
+		}
+		return cache.getAsync(key);
+	}
+
+	@Override
+	public CompletableFuture<Void> put(String cacheName, Object key, Object value, boolean evict) {
+		AsyncExtendedCache cache = getAsyncCache(cacheName);
+		if (cache == null) {
+			cacheHelper.put(cacheName, key, value, evict);
+			return CompletableFuture.completedFuture(null);
+		}
+		if (evict) {
+			return cache.replaceAsync(key, value);
+		}
+		return cache.putAsync(key, value);
+	}
+
+	@Override
+	public <K, V> CompletableFuture<Void> putAll(String cacheName, Map<K, V> cacheEntries, boolean evict) {
+		AsyncExtendedCache cache = getAsyncCache(cacheName);
+		if (cache == null) {
+			cacheHelper.putAll(cacheName, cacheEntries, evict);
+			return CompletableFuture.completedFuture(null);
+		}
+		if (cacheEntries.isEmpty()) {
+			return CompletableFuture.completedFuture(null);
+		}
+		return cache.putAllAsync(cacheEntries, evict);
+	}
+
+	@Override
+	public CompletableFuture<Void> evict(String cacheName, Object key) {
+		AsyncExtendedCache cache = getAsyncCache(cacheName);
+		if (cache == null) {
+			cacheHelper.evict(cacheName, key);
+			return CompletableFuture.completedFuture(null);
+		}
+		return cache.evictAsync(key);
+	}
+
+	@Override
+	public <T, C extends Collection<T>> CompletableFuture<Void> evictAll(String cacheName, C keys) {
+		AsyncExtendedCache cache = getAsyncCache(cacheName);
+		if (cache == null) {
+			cacheHelper.evictAll(cacheName, keys);
+			return CompletableFuture.completedFuture(null);
+		}
+		return cache.evictAllAsync(keys);
+	}
+
+	/**
+	 * @return The cache if it supports non-blocking operations, otherwise null.
+	 */
+	private AsyncExtendedCache getAsyncCache(String cacheName) {
+		Cache cache = cacheHelper.getCache(cacheName);
+		if (cache instanceof TransactionAwareCacheDecorator) {
+			//Writes to a transaction aware cache are deferred until the transaction commits, so they must go through the decorator.
+			return null;
+		}
+		return cache instanceof AsyncExtendedCache ? (AsyncExtendedCache) cache : null;
+	}
+}
@@ -0,0 +1,44 @@
+package com.example.cache;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Non-blocking versions of the cache operations. Each operation is sent to redis without waiting for a response and the returned future
+ * is completed once redis has responded, this allows a caller to issue several independent operations at once and compose the results.
+ *
+ * Just like the blocking operations, a failure to communicate with redis is treated as a miss (or is ignored for puts and evictions),
+ * the returned futures are not completed exceptionally.
+ */
+public interface AsyncExtendedCache extends ExtendedCache {
+
+	/**
+	 * @param key The key
+	 * @return A future of the value wrapper, the value wrapper is null if the key is not in the cache.
+	 */
+	CompletableFuture<ValueWrapper> getAsync(Object key);
+
+	/**
+	 * @param keys the keys whose associated values are to be returned
+	 * @return A future of a map of key to value wrapper, for each key that was found in the cache.
+	 */
+	<K> CompletableFuture<Map<K, ValueWrapper>> getAllAsync(Collection<K> keys);
+
+	CompletableFuture<Void> putAsync(Object key, Object value);
+
+	/**
+	 * Non-blocking version of {@link #replace(Object, Object)}.
+	 */
+	CompletableFuture<Void> replaceAsync(Object key, Object value);
+
+	/**
+	 * @param entries The key/values to be cached.
+	 * @param evict If true, any other cached versions of each key are evicted as the value is set.
+	 */
+	<K, V> CompletableFuture<Void> putAllAsync(Map<K, V> entries, boolean evict);
+
+	CompletableFuture<Void> evictAsync(Object key);
+
+	<T, C extends Collection<T>> CompletableFuture<Void> evictAllAsync(C keys);
+}
@@ -0,0 +1,136 @@
+package com.example.cache;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.springframework.data.redis.serializer.StringRedisSerializer;
+
+/**
+ * Tracks the "generation" of a cache when the cache manager has generations enabled. The generation is a counter stored in redis and
+ * it is included in the key prefix of the cache: <CACHE_NAME><DELIMITER><GENERATION><DELIMITER><KEY_VALUE>.
+ *
+ * Clearing the cache simply increments the counter in redis, which makes every existing key of the cache unreachable. The old keys
+ * are left to age out via their time to live. The cache manager periodically refreshes the generation of each cache so that all
+ * instances of the application move to the new generation shortly after a clear.
+ *
+ * The keys of a cache without a time to live would never age out: the instance that cleared the cache retires the old generation
+ * and removes its keys in the background, once the other instances have moved to the new generation.
+ */
+public class CacheGeneration {
+
+	private static final StringRedisSerializer serializer = new StringRedisSerializer();
+
+	private final byte[] generationKey;
+	private final byte[] basePrefix;
+	private final String keyDelimiter;
+
+	private volatile long generation = -1;
+	private volatile byte[] prefix;
+
+	//The generations retired by this instance (whose keys have not been removed yet) and the time they were retired.
+	private final Map<Long, Long> retiredGenerations = new ConcurrentHashMap<>();
+
+	/**
+	 * @param basePrefix The prefix of the cache without the generation (cache name + delimiter).
+	 * @param generationKey The key of the generation counter, a registry key of the cache manager so it is never a cache key.
+	 * @param keyDelimiter The delimiter used to separate the generation from the key value.
+	 */
+	public CacheGeneration(byte[] basePrefix, byte[] generationKey, String keyDelimiter) {
+		this.basePrefix = basePrefix;
+		this.keyDelimiter = keyDelimiter;
+		this.generationKey = generationKey;
+		update(0);
+	}
+
+	/**
+	 * @return The key in redis under which the generation counter is stored.
+	 */
+	public byte[] getGenerationKey() {
+		return generationKey;
+	}
+
+	/**
+	 * @return The key prefix (including the generation) to use for the cache.
+	 */
+	public byte[] getPrefix() {
+		return prefix;
+	}
+
+	public long getGeneration() {
+		return generation;
+	}
+
+	/**
+	 * @return The key prefix of a generation.
+	 */
+	public byte[] getPrefix(long someGeneration) {
+		return concat(basePrefix, serializer.serialize(someGeneration + keyDelimiter));
+	}
+
+	/**
+	 * Remember that the keys of a generation the cache moved away from must be removed.
+	 */
+	public void retire(long retiredGeneration) {
+		retiredGenerations.putIfAbsent(retiredGeneration, System.currentTimeMillis());
+	}
+
+	/**
+	 * @param delay How long ago a generation must have been retired.
+	 * @return The retired generations whose keys have not been removed yet.
+	 */
+	public List<Long> getRetiredGenerations(Duration delay) {
+		long retiredBefore = System.currentTimeMillis() - delay.toMillis();
+		List<Long> retired = new ArrayList<>();
+		for (Map.Entry<Long, Long> entry : retiredGenerations.entrySet()) {
+			if (entry.getValue() <= retiredBefore) {
+				retired.add(entry.getKey());
+			}
+		}
+		return retired;
+	}
+
+	/**
+	 * The keys of a retired generation have been removed.
+	 */
+	public void removed(long retiredGeneration) {
+		retiredGenerations.remove(retiredGeneration);
+	}
+
+	/**
+	 * Move the cache to a new generation, a generation can only move forward.
+	 *
+	 * @param newGeneration The new generation.
+	 * @return true if the generation was changed.
+	 */
+	public synchronized boolean update(long newGeneration) {
+		if (newGeneration <= generation) {
+			return false;
+		}
+		prefix = getPrefix(newGeneration);
+		generation = newGeneration;
+		return true;
+	}
+
+	/**
+	 * Parse the raw value of the generation counter (as returned by redis) and update the generation.
+	 *
+	 * @param rawGeneration The raw value, this may be null if the counter does not exist.
+	 * @return true if the generation was changed.
+	 */
+	public boolean update(byte[] rawGeneration) {
+		if (rawGeneration == null) {
+			return false;
+		}
+		return update(Long.parseLong(serializer.deserialize(rawGeneration)));
+	}
+
+	private static byte[] concat(byte[] first, byte[] second) {
+		byte[] result = Arrays.copyOf(first, first.length + second.length);
+		System.arraycopy(second, 0, result, first.length, second.length);
+		return result;
+	}
+}
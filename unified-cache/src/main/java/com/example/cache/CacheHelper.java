@@ -52,7 +52,7 @@ public interface CacheHelper {
 	 * 
 	 * @param cacheName Name of the cache
 	 * @param cacheEntries The set of key/values that will be added the cache. 
-	 * @param ev
+	 * @param evict If true, any other cached versions of the values are evicted.
 	 */
 
 	<K, V> void putAll(String cacheName, Map<K, V> cacheEntries, boolean evict);
@@ -31,6 +31,9 @@ public class CacheHelperImpl implements CacheHelper {
 		if (cache == null) {
 			return new HashMap<>();
 		}
+		if (cache instanceof ExtendedCache) {
+			return ((ExtendedCache)cache).getAll(keySet);
+		}
 		Map<K, ValueWrapper> results = new HashMap<>();
 		for (K key : keySet) {
 			ValueWrapper valueWrapper = cache.get(key);
@@ -56,6 +59,10 @@ public class CacheHelperImpl implements CacheHelper {
 		if (cache == null) {
 			return;
 		}
+		if (evict && cache instanceof ExtendedCache) {
+			((ExtendedCache)cache).replace(key, value);
+			return;
+		}
 		if (evict) {
 			cache.evict(key);
 		}
@@ -71,6 +78,10 @@ public class CacheHelperImpl implements CacheHelper {
 		if (cache == null) {
 			return;
 		}
+		if (cache instanceof ExtendedCache) {
+			((ExtendedCache)cache).putAll(cacheEntries, evict);
+			return;
+		}
 		for (Map.Entry<K, V> entry : cacheEntries.entrySet()) {
 			if (evict) {
 				cache.evict(entry.getKey());
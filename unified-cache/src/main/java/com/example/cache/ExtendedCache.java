@@ -1,9 +1,36 @@
 package com.example.cache;
 
 import java.util.Collection;
+import java.util.Map;
 
 import org.springframework.cache.Cache;
 
 public interface ExtendedCache extends Cache {
+
+	/**
+	 * Return the values to which this cache maps the specified keys. Keys that are not in the cache are not included in the
+	 * returned map.
+	 *
+	 * @param keys the keys whose associated values are to be returned
+	 * @return A map of key to value wrapper, for each key that was found in the cache.
+	 */
+	<K> Map<K, ValueWrapper> getAll(Collection<K> keys);
+
+	/**
+	 * Put a map of key/values into the cache.
+	 *
+	 * @param entries The key/values to be cached.
+	 * @param evict If true, any other cached versions of each key are evicted as the value is set.
+	 */
+	<K, V> void putAll(Map<K, V> entries, boolean evict);
+
+	/**
+	 * Put the value of a key, any other cached versions of the key are atomically evicted as the value is set.
+	 *
+	 * @param key The key
+	 * @param value The value to be cached.
+	 */
+	void replace(Object key, Object value);
+
 	<T, C extends Collection<T>> void evictAll(C keys);
 }
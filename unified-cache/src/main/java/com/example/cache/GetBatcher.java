@@ -0,0 +1,210 @@
+package com.example.cache;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Timer;
+
+/**
+ * Collects concurrent single key lookups of a cache and sends them to redis as one pipelined batch. Each lookup is queued and a
+ * dispatcher thread gathers the queued lookups until either the batch window has elapsed (measured from the first lookup of the
+ * batch) or the batch is full. The batch is then fetched via a single call to the fetch function and each caller is completed with
+ * the raw version and value of its key (or null on a miss).
+ *
+ * The dispatcher only does the redis round trips, deserializing and promoting the values is left to the calling threads so that a
+ * large or slow to deserialize value does not hold up the rest of the batch (or the batches behind it).
+ *
+ * This trades a small amount of latency (at most the batch window) for far fewer round trips when many threads read from the same
+ * cache at once. The batches are fetched one at a time, so when redis is slow the lookups pile up behind the current batch. The queue
+ * therefore holds at most QUEUED_BATCHES full batches, a lookup that finds it full is rejected and made directly by its caller rather
+ * than waiting behind lookups that would likely time out.
+ */
+public class GetBatcher {
+
+	private static final Log log = LogFactory.getLog(GetBatcher.class);
+
+	static final int QUEUED_BATCHES = 4;
+
+	private final long windowNanos;
+	private final int maxBatchSize;
+	private final long timeoutNanos;
+	private final Function<List<byte[]>, List<byte[][]>> fetchFunction;
+	private final BlockingQueue<PendingGet> queue;
+	private final Thread dispatcher;
+	private final LongAdder overflowCount = new LongAdder();
+	private volatile boolean running = true;
+
+	private volatile DistributionSummary batchSizes;
+	private volatile Timer queueWaits;
+
+	/**
+	 * @param cacheName The name of the cache, used to name the dispatcher thread.
+	 * @param window How long the dispatcher waits for more lookups once the first lookup of a batch has been queued.
+	 * @param maxBatchSize The maximum number of lookups in a single batch.
+	 * @param timeout How long a lookup waits for its batch to be fetched before giving up.
+	 * @param fetchFunction Fetches a batch of redis keys, the result holds the version and value (or null on a miss) of each key in
+	 *            order.
+	 */
+	public GetBatcher(String cacheName, Duration window, int maxBatchSize, Duration timeout,
+			Function<List<byte[]>, List<byte[][]>> fetchFunction) {
+		this.windowNanos = window.toNanos();
+		this.maxBatchSize = maxBatchSize;
+		this.timeoutNanos = timeout.toNanos();
+		this.fetchFunction = fetchFunction;
+		this.queue = new LinkedBlockingQueue<>(maxBatchSize * QUEUED_BATCHES);
+		this.dispatcher = new Thread(this::dispatch, "cache-get-batcher-" + cacheName);
+		this.dispatcher.setDaemon(true);
+		this.dispatcher.start();
+	}
+
+	/**
+	 * Queue a lookup and wait for the batch that contains it to be fetched.
+	 *
+	 * @param keyBytes The redis key
+	 * @return The version and value of the key or null if the key is not in the cache.
+	 * @throws ExecutionException If fetching the batch failed.
+	 * @throws TimeoutException If the batch was not fetched within the timeout, the lookup is no longer queued.
+	 * @throws RejectedExecutionException If the batcher has been shut down or its queue is full, the lookup should be made directly.
+	 * @throws InterruptedException If the calling thread was interrupted while waiting.
+	 */
+	public byte[][] get(byte[] keyBytes) throws ExecutionException, TimeoutException, InterruptedException {
+		PendingGet pending = new PendingGet(keyBytes);
+		if (!queue.offer(pending)) {
+			overflowCount.increment();
+			throw new RejectedExecutionException("The get batcher queue is full.");
+		}
+		if (!running && queue.remove(pending)) {
+			//The dispatcher may already have drained the queue, it would never pick up the lookup.
+			throw new RejectedExecutionException("The get batcher has been shut down.");
+		}
+		try {
+			return pending.result.get(timeoutNanos, TimeUnit.NANOSECONDS);
+		} catch (TimeoutException e) {
+			queue.remove(pending);
+			throw e;
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof RejectedExecutionException) {
+				throw (RejectedExecutionException) e.getCause();
+			}
+			throw e;
+		}
+	}
+
+	/**
+	 * @return true if the current thread is the dispatcher, a lookup made by the fetch function itself must not be queued.
+	 */
+	public boolean isDispatcherThread() {
+		return Thread.currentThread() == dispatcher;
+	}
+
+	/**
+	 * @return The number of lookups that were rejected because the queue was full (and made directly).
+	 */
+	public long getOverflowCount() {
+		return overflowCount.sum();
+	}
+
+	/**
+	 * Record the size of each batch and how long each lookup waited in the queue.
+	 */
+	public void setMetrics(DistributionSummary batchSizes, Timer queueWaits) {
+		this.batchSizes = batchSizes;
+		this.queueWaits = queueWaits;
+	}
+
+	/**
+	 * Stop the dispatcher, any lookups that are still queued are rejected (and made directly by their callers).
+	 */
+	public void shutdown() {
+		running = false;
+		dispatcher.interrupt();
+	}
+
+	private void dispatch() {
+		List<PendingGet> batch = new ArrayList<>(maxBatchSize);
+		try {
+			while (running) {
+				try {
+					batch.add(queue.take());
+					long deadline = System.nanoTime() + windowNanos;
+					while (batch.size() < maxBatchSize) {
+						long remaining = deadline - System.nanoTime();
+						PendingGet pending = remaining > 0 ? queue.poll(remaining, TimeUnit.NANOSECONDS) : null;
+						if (pending == null) {
+							break;
+						}
+						batch.add(pending);
+					}
+				} catch (InterruptedException e) {
+					//Shutting down, the lookups already taken from the queue are still fetched below.
+				}
+				if (!batch.isEmpty()) {
+					fetch(batch);
+					batch.clear();
+				}
+			}
+		} finally {
+			//Whether shut down or stopped by an error, no lookup may be left waiting on a dispatcher that is gone.
+			running = false;
+			RejectedExecutionException rejected = new RejectedExecutionException("The get batcher has been shut down.");
+			for (PendingGet pending : batch) {
+				pending.result.completeExceptionally(rejected);
+			}
+			PendingGet pending;
+			while ((pending = queue.poll()) != null) {
+				pending.result.completeExceptionally(rejected);
+			}
+		}
+	}
+
+	private void fetch(List<PendingGet> batch) {
+		long now = System.nanoTime();
+		List<byte[]> keys = new ArrayList<>(batch.size());
+		for (PendingGet pending : batch) {
+			keys.add(pending.keyBytes);
+			if (queueWaits != null) {
+				queueWaits.record(now - pending.queuedAt, TimeUnit.NANOSECONDS);
+			}
+		}
+		if (batchSizes != null) {
+			batchSizes.record(batch.size());
+		}
+
+		try {
+			List<byte[][]> values = fetchFunction.apply(keys);
+			for (int index = 0; index < batch.size(); index++) {
+				batch.get(index).result.complete(values.get(index));
+			}
+		} catch (RuntimeException e) {
+			log.trace("Unable to fetch a batch of [" + batch.size() + "] keys.", e);
+			for (PendingGet pending : batch) {
+				pending.result.completeExceptionally(e);
+			}
+		}
+	}
+
+	private static class PendingGet {
+
+		private final byte[] keyBytes;
+		private final long queuedAt = System.nanoTime();
+		private final CompletableFuture<byte[][]> result = new CompletableFuture<>();
+
+		private PendingGet(byte[] keyBytes) {
+			this.keyBytes = keyBytes;
+		}
+	}
+}
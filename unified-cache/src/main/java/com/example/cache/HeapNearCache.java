@@ -0,0 +1,69 @@
+package com.example.cache;
+
+import java.nio.ByteBuffer;
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+import org.springframework.cache.Cache.ValueWrapper;
+import org.springframework.cache.support.SimpleValueWrapper;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+
+/**
+ * An on-heap near cache that holds the deserialized values, a hit costs neither I/O nor deserialization. The cache is bounded by size
+ * and time to live and is backed by Caffeine, whose admission policy (W-TinyLFU) only lets a new entry displace an existing one if it
+ * has been used more frequently.
+ */
+public class HeapNearCache implements NearCache {
+
+	private final Cache<ByteBuffer, ValueWrapper> cache;
+
+	public HeapNearCache(long maximumSize, Duration timeToLive) {
+		cache = Caffeine.newBuilder()
+				.maximumSize(maximumSize)
+				.expireAfterWrite(timeToLive.toNanos(), TimeUnit.NANOSECONDS)
+				.recordStats()
+				.build();
+	}
+
+	@Override
+	public ValueWrapper get(byte[] key) {
+		return cache.getIfPresent(ByteBuffer.wrap(key));
+	}
+
+	@Override
+	public void put(byte[] key, Object value, byte[] serializedValue) {
+		cache.put(ByteBuffer.wrap(key), new SimpleValueWrapper(value));
+	}
+
+	@Override
+	public void invalidate(byte[] key) {
+		cache.invalidate(ByteBuffer.wrap(key));
+	}
+
+	@Override
+	public void invalidateAll() {
+		cache.invalidateAll();
+	}
+
+	@Override
+	public long size() {
+		return cache.estimatedSize();
+	}
+
+	@Override
+	public long hitCount() {
+		return cache.stats().hitCount();
+	}
+
+	@Override
+	public long missCount() {
+		return cache.stats().missCount();
+	}
+
+	@Override
+	public long evictionCount() {
+		return cache.stats().evictionCount();
+	}
+}
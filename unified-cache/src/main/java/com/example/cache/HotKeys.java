@@ -0,0 +1,119 @@
+package com.example.cache;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+
+import org.springframework.data.redis.serializer.StringRedisSerializer;
+
+/**
+ * A ranking of the hot keys of a cache, shared by all instances and versions through a sorted set in redis (see record-hot-keys.lua).
+ * A fraction of the hits are sampled and counted in memory, the counts are periodically added to the ranking in a single round trip.
+ * The scores of the ranking decay (a hit is worth half as much once per decay interval), so the ranking follows the keys that are hot
+ * now. The decay is applied to the new hits rather than to the existing scores, so recording hits stays cheap however large the
+ * ranking.
+ *
+ * A new version of the application reads the top of the ranking as it starts and fetches those keys, promoting their values from the
+ * older versions before the instance takes traffic. The ranking shares the key prefix of the cache, so clearing the cache also clears
+ * the ranking. When the cache uses generations, the ranking is dropped as the cache moves to a new generation, the keys it holds can
+ * no longer be reached.
+ */
+public class HotKeys {
+
+	private static final StringRedisSerializer serializer = new StringRedisSerializer();
+
+	//The member of the ranking that holds the landmark time of the decay starts with this byte, it is not a cache key.
+	private static final byte LANDMARK_MARKER = 0;
+
+	private final byte[] rankingKey;
+	private final double sampleRate;
+	private final int maximumKeys;
+	private final long decayInterval;
+	private final long expiration;
+
+	//The sampled hits (per cache key) since the last flush, at most maximumKeys keys are counted between two flushes. The counts are
+	//only updated atomically (merge and remove), so a hit that races with a flush is counted by the next flush rather than lost.
+	private final Map<ByteBuffer, Long> sampledHits = new ConcurrentHashMap<>();
+
+	/**
+	 * @param rankingKey The key in redis of the ranking, shared by all versions.
+	 * @param sampleRate The fraction of the hits that are sampled.
+	 * @param maximumKeys The maximum number of keys in the ranking.
+	 * @param decayInterval The interval (in milliseconds) after which a hit is worth half as much.
+	 * @param expiration The time to live (in seconds) of the ranking, zero if it does not expire.
+	 */
+	public HotKeys(byte[] rankingKey, double sampleRate, int maximumKeys, long decayInterval, long expiration) {
+		this.rankingKey = rankingKey;
+		this.sampleRate = sampleRate;
+		this.maximumKeys = maximumKeys;
+		this.decayInterval = decayInterval;
+		this.expiration = expiration;
+	}
+
+	public byte[] getRankingKey() {
+		return rankingKey;
+	}
+
+	public int getMaximumKeys() {
+		return maximumKeys;
+	}
+
+	/**
+	 * Count a hit of the key, if it is sampled.
+	 */
+	public void hit(byte[] keyBytes) {
+		if (sampleRate <= 0 || ThreadLocalRandom.current().nextDouble() >= sampleRate) {
+			return;
+		}
+		ByteBuffer key = ByteBuffer.wrap(keyBytes);
+		if (sampledHits.size() >= maximumKeys && !sampledHits.containsKey(key)) {
+			return;
+		}
+		sampledHits.merge(key, 1L, Long::sum);
+	}
+
+	/**
+	 * Drop the hits sampled since the last flush.
+	 */
+	public void clearSampledHits() {
+		sampledHits.clear();
+	}
+
+	/**
+	 * Take the sampled hits since the last call.
+	 *
+	 * @return The arguments of the record script, see record-hot-keys.lua. Null if there are no sampled hits.
+	 */
+	public byte[][] drainSampledHits() {
+		List<byte[]> pairs = new ArrayList<>();
+		for (ByteBuffer key : sampledHits.keySet()) {
+			Long hits = sampledHits.remove(key);
+			if (hits != null) {
+				pairs.add(key.array());
+				pairs.add(serializer.serialize(String.valueOf(hits)));
+			}
+		}
+		if (pairs.isEmpty()) {
+			return null;
+		}
+		byte[][] arguments = new byte[4 + pairs.size()][];
+		arguments[0] = serializer.serialize(String.valueOf(System.currentTimeMillis()));
+		arguments[1] = serializer.serialize(String.valueOf(decayInterval));
+		arguments[2] = serializer.serialize(String.valueOf(maximumKeys));
+		arguments[3] = serializer.serialize(String.valueOf(expiration));
+		for (int index = 0; index < pairs.size(); index++) {
+			arguments[4 + index] = pairs.get(index);
+		}
+		return arguments;
+	}
+
+	/**
+	 * @return true if a member of the ranking is a cache key, rather than the landmark time of the decay.
+	 */
+	static boolean isCacheKey(byte[] member) {
+		return member.length > 0 && member[0] != LANDMARK_MARKER;
+	}
+}
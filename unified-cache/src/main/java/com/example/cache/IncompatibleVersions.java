@@ -0,0 +1,162 @@
+package com.example.cache;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.springframework.data.redis.serializer.StringRedisSerializer;
+
+/**
+ * Remembers the older application versions of a cache whose values cannot be promoted to the current version, per root type of the
+ * value. Once a value of type T read from version X fails to deserialize (its serialVersionUID, or that of a nested object, does not
+ * match the one in memory), the get script is told to skip values of type T in version X. The values are no longer sent to the
+ * application only to fail again, the script falls back to the next older version instead.
+ *
+ * The pairs are shared by all instances through a sorted set in redis (the registry) of pair to the time it was added, which the cache
+ * manager periodically reads. A pair learned by this instance is pending until the cache manager has added it to the registry. Every
+ * pair is passed to each call of the get script, so the registry is bounded: a pair is removed once it is older than the time to live
+ * of the cache (by then the incompatible values have aged out) and only the newest MAXIMUM_PAIRS pairs are kept. The pairs of this
+ * instance follow the registry, a pair that is no longer in it (or an expired registry) is forgotten when the registry is read.
+ */
+public class IncompatibleVersions {
+
+	static final int MAXIMUM_PAIRS = 50;
+
+	private static final StringRedisSerializer serializer = new StringRedisSerializer();
+
+	private final byte[] registryKey;
+	private final long expiration;
+
+	//Each pair is "<version> <root type id>", the type id does not contain a space.
+	private final Set<String> pairs = ConcurrentHashMap.newKeySet();
+	private final Set<String> pendingPairs = ConcurrentHashMap.newKeySet();
+	private volatile byte[][] exclusions = new byte[0][];
+
+	/**
+	 * @param registryKey The key in redis of the set shared by all instances.
+	 * @param expiration The time to live (in seconds) of the registry, zero if it does not expire.
+	 */
+	public IncompatibleVersions(byte[] registryKey, long expiration) {
+		this.registryKey = registryKey;
+		this.expiration = expiration;
+	}
+
+	public byte[] getRegistryKey() {
+		return registryKey;
+	}
+
+	public long getExpiration() {
+		return expiration;
+	}
+
+	/**
+	 * Remember that values of a root type read from an older version are not compatible with the current version.
+	 *
+	 * @param version The older version.
+	 * @param rootTypeId The type id of the root value (as written by {@link RedisJsonTypeIdResolver}).
+	 * @return true if the pair was not already known (and there was room for it).
+	 */
+	public boolean add(String version, String rootTypeId) {
+		String pair = version + " " + rootTypeId;
+		if (pairs.contains(pair) || pairs.size() >= MAXIMUM_PAIRS) {
+			return false;
+		}
+		//The pair is pending before it is known, so an update of the pairs in the meantime does not drop it.
+		pendingPairs.add(pair);
+		if (!pairs.add(pair)) {
+			return false;
+		}
+		updateExclusions();
+		return true;
+	}
+
+	/**
+	 * Replace the pairs with those read from the registry, the pairs that have not yet been added to the registry are kept.
+	 */
+	public void update(Collection<byte[]> members) {
+		if (members == null) {
+			return;
+		}
+		Set<String> updated = new HashSet<>(pendingPairs);
+		for (byte[] member : members) {
+			String pair = serializer.deserialize(member);
+			if (pair != null && pair.indexOf(' ') > 0) {
+				updated.add(pair);
+			}
+		}
+		if (!updated.equals(pairs)) {
+			pairs.retainAll(updated);
+			pairs.addAll(updated);
+			updateExclusions();
+		}
+	}
+
+	/**
+	 * @return The pairs that have not yet been added to the registry.
+	 */
+	public List<byte[]> getPendingPairs() {
+		List<byte[]> pending = new ArrayList<>(pendingPairs.size());
+		for (String pair : pendingPairs) {
+			pending.add(serializer.serialize(pair));
+		}
+		return pending;
+	}
+
+	/**
+	 * The pairs have been added to the registry.
+	 */
+	public void published(Collection<byte[]> publishedPairs) {
+		for (byte[] pair : publishedPairs) {
+			pendingPairs.remove(serializer.deserialize(pair));
+		}
+	}
+
+	/**
+	 * @return The exclusion arguments of the get script: each incompatible pair as a version followed by a payload prefix.
+	 */
+	public byte[][] getExclusions() {
+		return exclusions;
+	}
+
+	public int size() {
+		return pairs.size();
+	}
+
+	private synchronized void updateExclusions() {
+		List<byte[]> arguments = new ArrayList<>(pairs.size() * 2);
+		for (String pair : pairs) {
+			int separator = pair.indexOf(' ');
+			arguments.add(serializer.serialize(pair.substring(0, separator)));
+			arguments.add(payloadPrefix(pair.substring(separator + 1)));
+		}
+		exclusions = arguments.toArray(new byte[arguments.size()][]);
+	}
+
+	/**
+	 * The JSON written by the {@link RedisObjectMapper} wraps the root value in an array that starts with the root value's type id.
+	 */
+	private static byte[] payloadPrefix(String rootTypeId) {
+		return ("[\"" + rootTypeId + "\"").getBytes(StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * @return The type id of the root value of a JSON payload written by the {@link RedisObjectMapper}, or null if the payload is not
+	 * in that format.
+	 */
+	static String getRootTypeId(byte[] payload) {
+		if (payload == null || payload.length < 3 || payload[0] != '[' || payload[1] != '"') {
+			return null;
+		}
+		for (int index = 2; index < payload.length; index++) {
+			if (payload[index] == '"') {
+				String rootTypeId = new String(payload, 2, index - 2, StandardCharsets.UTF_8);
+				return rootTypeId.indexOf(' ') < 0 && rootTypeId.indexOf('\\') < 0 ? rootTypeId : null;
+			}
+		}
+		return null;
+	}
+}
@@ -0,0 +1,162 @@
+package com.example.cache;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A thread safe bloom filter of redis keys. It answers "has this key possibly been written?": a key that was put into the filter is
+ * always reported as possibly present, a key that was not is reported as absent except for a configurable rate of false positives.
+ *
+ * The filter is sized from the number of keys it is expected to hold and the target false positive probability, capped by a maximum
+ * amount of memory. The number of hash functions is derived from the actual size, so a capped filter trades a higher false positive
+ * probability for less memory. Each key is hashed once (128 bit murmur3) and the bit positions are derived from the two halves of the
+ * hash (double hashing).
+ */
+public class KeyBloomFilter {
+
+	private final AtomicLongArray bits;
+	private final long bitSize;
+	private final int hashFunctions;
+	private final AtomicLong bitCount = new AtomicLong();
+
+	/**
+	 * @param expectedInsertions The number of keys the filter is expected to hold.
+	 * @param falsePositiveProbability The target probability that an absent key is reported as possibly present.
+	 * @param maximumMemory The maximum size of the filter in bytes.
+	 */
+	public KeyBloomFilter(long expectedInsertions, double falsePositiveProbability, long maximumMemory) {
+		if (expectedInsertions <= 0 || falsePositiveProbability <= 0 || falsePositiveProbability >= 1 || maximumMemory <= 0) {
+			throw new IllegalArgumentException("The expected insertions and maximum memory must be greater than zero and the false positive probability must be between 0 and 1.");
+		}
+		long optimalBits = (long) Math.ceil(-expectedInsertions * Math.log(falsePositiveProbability) / (Math.log(2) * Math.log(2)));
+		long words = Math.max(1, Math.min((optimalBits + 63) / 64, maximumMemory / 8));
+		if (words > Integer.MAX_VALUE) {
+			words = Integer.MAX_VALUE;
+		}
+		bits = new AtomicLongArray((int) words);
+		bitSize = words * 64;
+		hashFunctions = Math.max(1, (int) Math.round((double) bitSize / expectedInsertions * Math.log(2)));
+	}
+
+	/**
+	 * Record that a key has been written.
+	 */
+	public void put(byte[] key) {
+		long[] hash = murmur3(key);
+		long combinedHash = hash[0];
+		for (int index = 0; index < hashFunctions; index++) {
+			long bitIndex = (combinedHash & Long.MAX_VALUE) % bitSize;
+			int word = (int) (bitIndex >>> 6);
+			long mask = 1L << bitIndex;
+			long current;
+			do {
+				current = bits.get(word);
+				if ((current & mask) != 0) {
+					break;
+				}
+			} while (!bits.compareAndSet(word, current, current | mask));
+			if ((current & mask) == 0) {
+				bitCount.incrementAndGet();
+			}
+			combinedHash += hash[1];
+		}
+	}
+
+	/**
+	 * @return false if the key has definitely not been written, true if it may have been.
+	 */
+	public boolean mightContain(byte[] key) {
+		long[] hash = murmur3(key);
+		long combinedHash = hash[0];
+		for (int index = 0; index < hashFunctions; index++) {
+			long bitIndex = (combinedHash & Long.MAX_VALUE) % bitSize;
+			if ((bits.get((int) (bitIndex >>> 6)) & (1L << bitIndex)) == 0) {
+				return false;
+			}
+			combinedHash += hash[1];
+		}
+		return true;
+	}
+
+	/**
+	 * @return The probability that an absent key is reported as possibly present, given the keys that have been put so far.
+	 */
+	public double getExpectedFalsePositiveProbability() {
+		return Math.pow((double) bitCount.get() / bitSize, hashFunctions);
+	}
+
+	/**
+	 * @return The size of the filter in bytes.
+	 */
+	public long getMemory() {
+		return bitSize / 8;
+	}
+
+	public int getHashFunctions() {
+		return hashFunctions;
+	}
+
+	/**
+	 * The x64 128 bit variant of murmur3 (seed 0).
+	 */
+	static long[] murmur3(byte[] data) {
+		final long c1 = 0x87c37b91114253d5L;
+		final long c2 = 0x4cf5ad432745937fL;
+		long h1 = 0;
+		long h2 = 0;
+		int blocks = data.length / 16;
+		for (int block = 0; block < blocks; block++) {
+			long k1 = getLong(data, block * 16);
+			long k2 = getLong(data, block * 16 + 8);
+			h1 ^= Long.rotateLeft(k1 * c1, 31) * c2;
+			h1 = (Long.rotateLeft(h1, 27) + h2) * 5 + 0x52dce729;
+			h2 ^= Long.rotateLeft(k2 * c2, 33) * c1;
+			h2 = (Long.rotateLeft(h2, 31) + h1) * 5 + 0x38495ab5;
+		}
+
+		long k1 = 0;
+		long k2 = 0;
+		int tail = blocks * 16;
+		for (int index = data.length - 1; index >= tail; index--) {
+			long value = data[index] & 0xffL;
+			if (index - tail >= 8) {
+				k2 |= value << ((index - tail - 8) * 8);
+			} else {
+				k1 |= value << ((index - tail) * 8);
+			}
+		}
+		if (k2 != 0) {
+			h2 ^= Long.rotateLeft(k2 * c2, 33) * c1;
+		}
+		if (k1 != 0) {
+			h1 ^= Long.rotateLeft(k1 * c1, 31) * c2;
+		}
+
+		h1 ^= data.length;
+		h2 ^= data.length;
+		h1 += h2;
+		h2 += h1;
+		h1 = fmix(h1);
+		h2 = fmix(h2);
+		h1 += h2;
+		h2 += h1;
+		return new long[] {h1, h2};
+	}
+
+	private static long getLong(byte[] data, int offset) {
+		long value = 0;
+		for (int index = 7; index >= 0; index--) {
+			value = (value << 8) | (data[offset + index] & 0xffL);
+		}
+		return value;
+	}
+
+	private static long fmix(long value) {
+		value ^= value >>> 33;
+		value *= 0xff51afd7ed558ccdL;
+		value ^= value >>> 33;
+		value *= 0xc4ceb9fe1a85ec53L;
+		value ^= value >>> 33;
+		return value;
+	}
+}
@@ -0,0 +1,242 @@
+package com.example.cache;
+
+import java.io.ObjectStreamClass;
+import java.io.Serializable;
+import java.lang.reflect.Field;
+import java.lang.reflect.GenericArrayType;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.lang.reflect.TypeVariable;
+import java.lang.reflect.WildcardType;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+import org.springframework.data.redis.serializer.StringRedisSerializer;
+
+/**
+ * The fingerprint of the models (the root types of the values) cached by a cache: a digest of the serialVersionUID of every type
+ * reachable from the models through their fields. Each version of the application publishes its fingerprint into a registry (a hash
+ * of version to fingerprint) in redis. An older version that published the same fingerprint as the current version is compatible:
+ * its values can be promoted to the current version by the get script, without the value being checked by the application first.
+ *
+ * Types of the JDK (java.* and javax.*) are not part of the fingerprint, they do not change between versions of the application.
+ * The fingerprint only follows the declared types, so it is only used for models whose graph of types is closed (see
+ * {@link #getOpenTypes(Collection)}): a value that holds a subtype of a declared type could otherwise differ between two versions that
+ * published the same fingerprint.
+ * The registry shares the key prefix of the cache, so clearing the cache also clears the registry: the running versions publish
+ * their fingerprint again at the next refresh.
+ */
+public class ModelFingerprint {
+
+	private static final StringRedisSerializer serializer = new StringRedisSerializer();
+	private static final byte[][] NO_VERSIONS = new byte[0][];
+
+	private final byte[] registryKey;
+	private final byte[] currentVersionBytes;
+	private final byte[] fingerprint;
+	private final long expiration;
+
+	private volatile byte[][] compatibleVersions = NO_VERSIONS;
+
+	/**
+	 * @param registryKey The key in redis of the hash of version to fingerprint, shared by all versions.
+	 * @param currentVersion The current application version.
+	 * @param models The models cached by the cache.
+	 * @param expiration The time to live (in seconds) of the registry, zero if it does not expire.
+	 */
+	public ModelFingerprint(byte[] registryKey, String currentVersion, Collection<Class<?>> models, long expiration) {
+		this.registryKey = registryKey;
+		this.currentVersionBytes = serializer.serialize(currentVersion);
+		this.fingerprint = serializer.serialize(compute(models));
+		this.expiration = expiration;
+	}
+
+	public byte[] getRegistryKey() {
+		return registryKey;
+	}
+
+	public byte[] getCurrentVersionBytes() {
+		return currentVersionBytes;
+	}
+
+	public byte[] getFingerprint() {
+		return fingerprint;
+	}
+
+	public long getExpiration() {
+		return expiration;
+	}
+
+	/**
+	 * @return The other versions that published the same fingerprint as the current version.
+	 */
+	public byte[][] getCompatibleVersions() {
+		return compatibleVersions;
+	}
+
+	/**
+	 * Update the compatible versions from the content of the registry.
+	 *
+	 * @param registry The registry (version to fingerprint) as read from redis, may be null.
+	 */
+	public void update(Map<byte[], byte[]> registry) {
+		if (registry == null) {
+			return;
+		}
+		Set<String> versions = new HashSet<>();
+		for (Map.Entry<byte[], byte[]> entry : registry.entrySet()) {
+			if (Arrays.equals(entry.getValue(), fingerprint) && !Arrays.equals(entry.getKey(), currentVersionBytes)) {
+				versions.add(serializer.deserialize(entry.getKey()));
+			}
+		}
+		byte[][] updated = new byte[versions.size()][];
+		int index = 0;
+		for (String version : versions) {
+			updated[index++] = serializer.serialize(version);
+		}
+		compatibleVersions = updated;
+	}
+
+	/**
+	 * @return The fingerprint (a hex digest) of the serialVersionUIDs of the types reachable from the models.
+	 */
+	static String compute(Collection<Class<?>> models) {
+		Map<String, Long> serialVersionUids = new TreeMap<>();
+		for (Class<?> model : models) {
+			collect(model, serialVersionUids, new HashSet<>());
+		}
+		try {
+			MessageDigest digest = MessageDigest.getInstance("SHA-256");
+			for (Map.Entry<String, Long> entry : serialVersionUids.entrySet()) {
+				digest.update((entry.getKey() + "=" + entry.getValue() + "\n").getBytes(StandardCharsets.UTF_8));
+			}
+			StringBuilder hex = new StringBuilder();
+			byte[] hash = digest.digest();
+			//Half of the digest is plenty to tell the versions of the models apart.
+			for (int index = 0; index < 16; index++) {
+				hex.append(String.format("%02x", hash[index]));
+			}
+			return hex.toString();
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException("SHA-256 is not available.", e);
+		}
+	}
+
+	/**
+	 * The graph of types reachable from the models is closed if a value can only hold the declared types: every type of the
+	 * application is final (or an enum) and every type of the JDK is final, or is a collection or map whose type arguments are closed.
+	 *
+	 * @return The types through which a value may hold a type that is not part of the fingerprint (a subtype, an implementation or an
+	 *         unresolved type variable), empty if the graph is closed.
+	 */
+	static Set<String> getOpenTypes(Collection<Class<?>> models) {
+		Set<String> openTypes = new TreeSet<>();
+		Set<Type> visited = new HashSet<>();
+		for (Class<?> model : models) {
+			collectOpenTypes(model, openTypes, visited);
+		}
+		return openTypes;
+	}
+
+	private static void collectOpenTypes(Type type, Set<String> openTypes, Set<Type> visited) {
+		if (type == null || !visited.add(type)) {
+			return;
+		}
+		if (type instanceof ParameterizedType) {
+			Class<?> rawType = (Class<?>) ((ParameterizedType) type).getRawType();
+			if (!isContainer(rawType)) {
+				collectOpenTypes(rawType, openTypes, visited);
+			}
+			for (Type argument : ((ParameterizedType) type).getActualTypeArguments()) {
+				collectOpenTypes(argument, openTypes, visited);
+			}
+		} else if (type instanceof GenericArrayType) {
+			collectOpenTypes(((GenericArrayType) type).getGenericComponentType(), openTypes, visited);
+		} else if (type instanceof WildcardType) {
+			for (Type bound : ((WildcardType) type).getUpperBounds()) {
+				collectOpenTypes(bound, openTypes, visited);
+			}
+		} else if (type instanceof TypeVariable) {
+			openTypes.add(type.getTypeName());
+		} else if (type instanceof Class) {
+			Class<?> clazz = (Class<?>) type;
+			if (clazz.isArray()) {
+				collectOpenTypes(clazz.getComponentType(), openTypes, visited);
+				return;
+			}
+			if (clazz.isPrimitive() || clazz.isEnum()) {
+				return;
+			}
+			if (isContainer(clazz) || !Modifier.isFinal(clazz.getModifiers())) {
+				//A raw collection (or map) holds any type, as does a type that can be extended.
+				openTypes.add(clazz.getName());
+			}
+			if (isJdkType(clazz)) {
+				return;
+			}
+			for (Class<?> current = clazz; current != null && current != Object.class; current = current.getSuperclass()) {
+				collectOpenTypes(current.getGenericSuperclass(), openTypes, visited);
+				for (Field field : current.getDeclaredFields()) {
+					if (!Modifier.isStatic(field.getModifiers()) && !Modifier.isTransient(field.getModifiers())) {
+						collectOpenTypes(field.getGenericType(), openTypes, visited);
+					}
+				}
+			}
+		}
+	}
+
+	private static boolean isContainer(Class<?> clazz) {
+		return isJdkType(clazz) && (Collection.class.isAssignableFrom(clazz) || Map.class.isAssignableFrom(clazz));
+	}
+
+	private static boolean isJdkType(Class<?> clazz) {
+		return clazz.getName().startsWith("java.") || clazz.getName().startsWith("javax.");
+	}
+
+	private static void collect(Type type, Map<String, Long> serialVersionUids, Set<Type> visited) {
+		if (type == null || !visited.add(type)) {
+			return;
+		}
+		if (type instanceof ParameterizedType) {
+			collect(((ParameterizedType) type).getRawType(), serialVersionUids, visited);
+			for (Type argument : ((ParameterizedType) type).getActualTypeArguments()) {
+				collect(argument, serialVersionUids, visited);
+			}
+		} else if (type instanceof GenericArrayType) {
+			collect(((GenericArrayType) type).getGenericComponentType(), serialVersionUids, visited);
+		} else if (type instanceof WildcardType) {
+			for (Type bound : ((WildcardType) type).getUpperBounds()) {
+				collect(bound, serialVersionUids, visited);
+			}
+		} else if (type instanceof Class) {
+			Class<?> clazz = (Class<?>) type;
+			if (clazz.isArray()) {
+				collect(clazz.getComponentType(), serialVersionUids, visited);
+				return;
+			}
+			if (clazz.isPrimitive() || isJdkType(clazz)) {
+				return;
+			}
+			if (Serializable.class.isAssignableFrom(clazz)) {
+				serialVersionUids.put(clazz.getName(), ObjectStreamClass.lookup(clazz).getSerialVersionUID());
+			}
+			for (Class<?> current = clazz; current != null && current != Object.class; current = current.getSuperclass()) {
+				collect(current.getGenericSuperclass(), serialVersionUids, visited);
+				for (Field field : current.getDeclaredFields()) {
+					if (!Modifier.isStatic(field.getModifiers()) && !Modifier.isTransient(field.getModifiers())) {
+						collect(field.getGenericType(), serialVersionUids, visited);
+					}
+				}
+			}
+		}
+	}
+}
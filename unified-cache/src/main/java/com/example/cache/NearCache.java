@@ -0,0 +1,38 @@
+package com.example.cache;
+
+import org.springframework.cache.Cache.ValueWrapper;
+
+/**
+ * A near cache is an optional, bounded, in-process tier that sits in front of redis within the {@link UnifiedRedisCache}. A hit in the
+ * near cache does not require any I/O. Entries are keyed by the fully computed redis key (which includes the cache prefix) and are
+ * invalidated across all instances of the application via the {@link NearCacheInvalidator}.
+ */
+public interface NearCache {
+
+	/**
+	 * @param key The redis key.
+	 * @return The cached value or null if the key is not in the near cache.
+	 */
+	ValueWrapper get(byte[] key);
+
+	/**
+	 * Add a value to the near cache.
+	 *
+	 * @param key The redis key.
+	 * @param value The (deserialized) value.
+	 * @param serializedValue The serialized value, exactly as it is stored in redis.
+	 */
+	void put(byte[] key, Object value, byte[] serializedValue);
+
+	void invalidate(byte[] key);
+
+	void invalidateAll();
+
+	long size();
+
+	long hitCount();
+
+	long missCount();
+
+	long evictionCount();
+}
@@ -0,0 +1,126 @@
+package com.example.cache;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.RedisOperations;
+import org.springframework.data.redis.serializer.StringRedisSerializer;
+
+/**
+ * Keeps the near caches of all instances of the application consistent. Any change made to a cache (put, evict, clear) on one instance
+ * is published on a redis channel and every other instance removes the affected keys from its own near cache.
+ *
+ * A message is encoded as: [operation (1 byte)][instance ID (16 bytes)][cache name length (int)][cache name][key count (int)] followed
+ * by [key length (int)][key] for each key. Messages published by this instance are ignored when they are received.
+ *
+ * This listener is registered with a message listener container within the "CacheAutoConfiguration" class.
+ */
+public class NearCacheInvalidator implements MessageListener {
+
+	private static final Log log = LogFactory.getLog(NearCacheInvalidator.class);
+
+	private static final byte EVICT = 1;
+	private static final byte CLEAR = 2;
+
+	private final RedisOperations<? extends Object, ? extends Object> redisOperations;
+	private final String channel;
+	private final byte[] channelBytes;
+	private final byte[] instanceId;
+	private final Map<String, UnifiedRedisCache> caches = new ConcurrentHashMap<>();
+
+	public NearCacheInvalidator(RedisOperations<? extends Object, ? extends Object> redisOperations, String channel) {
+		this.redisOperations = redisOperations;
+		this.channel = channel;
+		this.channelBytes = new StringRedisSerializer().serialize(channel);
+
+		UUID uuid = UUID.randomUUID();
+		instanceId = ByteBuffer.allocate(16).putLong(uuid.getMostSignificantBits()).putLong(uuid.getLeastSignificantBits()).array();
+	}
+
+	public String getChannel() {
+		return channel;
+	}
+
+	/**
+	 * Register a cache with a near cache so that it receives the invalidations published by other instances.
+	 */
+	public void register(UnifiedRedisCache cache) {
+		caches.put(cache.getName(), cache);
+	}
+
+	/**
+	 * Tell all other instances to remove the keys from their near cache. The message is published after the change has been sent to
+	 * redis, it is not subject to the circuit breaker or the bulkhead of the cache: once the change has been made, dropping the message
+	 * would leave the other instances serving the previous value. A message that cannot be published is counted by the cache.
+	 */
+	public void publishEvict(UnifiedRedisCache cache, Collection<byte[]> keys) {
+		if (!keys.isEmpty()) {
+			publish(EVICT, cache, keys);
+		}
+	}
+
+	/**
+	 * Tell all other instances to clear their near cache.
+	 */
+	public void publishClear(UnifiedRedisCache cache) {
+		publish(CLEAR, cache, Collections.emptyList());
+	}
+
+	private void publish(byte operation, UnifiedRedisCache cache, Collection<byte[]> keys) {
+		byte[] name = cache.getName().getBytes(StandardCharsets.UTF_8);
+		int length = 1 + instanceId.length + 4 + name.length + 4;
+		for (byte[] key : keys) {
+			length += 4 + key.length;
+		}
+		ByteBuffer buffer = ByteBuffer.allocate(length);
+		buffer.put(operation).put(instanceId).putInt(name.length).put(name).putInt(keys.size());
+		for (byte[] key : keys) {
+			buffer.putInt(key.length).put(key);
+		}
+		final byte[] message = buffer.array();
+		try {
+			redisOperations.execute((RedisCallback<Long>) connection -> connection.publish(channelBytes, message));
+		} catch (RuntimeException e) {
+			cache.invalidationDropped();
+			log.warn("Redis exception. Unable to publish the near cache invalidation of cache [" + cache.getName()
+				+ "], other instances will expire the entries via their time to live.", e);
+		}
+	}
+
+	@Override
+	public void onMessage(Message message, byte[] pattern) {
+		ByteBuffer buffer = ByteBuffer.wrap(message.getBody());
+		byte operation = buffer.get();
+		byte[] sender = new byte[instanceId.length];
+		buffer.get(sender);
+		if (ByteBuffer.wrap(sender).equals(ByteBuffer.wrap(instanceId))) {
+			return;
+		}
+		byte[] name = new byte[buffer.getInt()];
+		buffer.get(name);
+		UnifiedRedisCache cache = caches.get(new String(name, StandardCharsets.UTF_8));
+		if (cache == null) {
+			return;
+		}
+		if (operation == CLEAR) {
+			cache.invalidateNearCache();
+			return;
+		}
+		int count = buffer.getInt();
+		for (int index = 0; index < count; index++) {
+			byte[] key = new byte[buffer.getInt()];
+			buffer.get(key);
+			cache.invalidateNearCache(key);
+		}
+	}
+}
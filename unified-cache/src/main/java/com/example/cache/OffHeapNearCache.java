@@ -0,0 +1,260 @@
+package com.example.cache;
+
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.springframework.cache.Cache.ValueWrapper;
+import org.springframework.cache.support.SimpleValueWrapper;
+import org.springframework.core.serializer.support.SerializationFailedException;
+import org.springframework.data.redis.serializer.RedisSerializer;
+import org.springframework.data.redis.serializer.SerializationException;
+
+/**
+ * A near cache that holds the serialized values, exactly as they are stored in redis, in direct (off-heap) memory. The only objects
+ * on the heap are a small index entry per key, so a large near cache does not add to the old generation of the heap. The trade off is
+ * that the value is deserialized on every hit.
+ *
+ * The memory is managed by a slab allocator (in the spirit of memcached): memory is allocated in slabs of a fixed size, each slab is
+ * carved into chunks of a single size class (powers of two, starting at 64 bytes) and a value is stored in a chunk of the smallest class
+ * that fits it. Once the memory limit is reached, the least recently used entry of the same size class is evicted to make room. Values
+ * that are larger than a slab are not held in the near cache. Slabs are assigned to a size class until the whole near cache is
+ * invalidated, they are then kept (the direct memory is never released and allocated again) and re-partitioned between the size
+ * classes as they are needed.
+ */
+public class OffHeapNearCache implements NearCache {
+
+	private static final int MIN_CHUNK_SIZE = 64;
+	private static final int MAX_SLAB_SIZE = 1024 * 1024;
+
+	private final RedisSerializer<?> serializer;
+	private final long timeToLiveNanos;
+	private final int slabSize;
+	private final int maximumSlabs;
+	private final SlabClass[] slabClasses;
+
+	//All of the state below is guarded by "this".
+	private final Map<ByteBuffer, Entry> entries = new HashMap<>();
+	private final List<ByteBuffer> slabs = new ArrayList<>();
+	//The slabs that are not assigned to a size class, since the near cache was last invalidated.
+	private final ArrayDeque<ByteBuffer> freeSlabs = new ArrayDeque<>();
+
+	private final AtomicLong hitCount = new AtomicLong();
+	private final AtomicLong missCount = new AtomicLong();
+	private final AtomicLong evictionCount = new AtomicLong();
+
+	/**
+	 * @param maximumMemory The maximum number of bytes of direct memory used by the near cache.
+	 * @param timeToLive How long an entry is held in the near cache after it has been written.
+	 * @param serializer The serializer used to deserialize the values on a hit, if this is null the values are the raw bytes.
+	 */
+	public OffHeapNearCache(long maximumMemory, Duration timeToLive, RedisSerializer<?> serializer) {
+		this.serializer = serializer;
+		this.timeToLiveNanos = timeToLive.toNanos();
+		this.slabSize = Integer.highestOneBit((int) Math.max(MIN_CHUNK_SIZE, Math.min(MAX_SLAB_SIZE, maximumMemory)));
+		this.maximumSlabs = (int) Math.max(1, Math.min(Integer.MAX_VALUE, maximumMemory / slabSize));
+
+		int classCount = Integer.numberOfTrailingZeros(slabSize) - Integer.numberOfTrailingZeros(MIN_CHUNK_SIZE) + 1;
+		slabClasses = new SlabClass[classCount];
+		for (int index = 0; index < classCount; index++) {
+			slabClasses[index] = new SlabClass(MIN_CHUNK_SIZE << index);
+		}
+	}
+
+	@Override
+	public ValueWrapper get(byte[] key) {
+		Entry entry;
+		byte[] bytes;
+		synchronized (this) {
+			entry = entries.get(ByteBuffer.wrap(key));
+			if (entry == null) {
+				missCount.incrementAndGet();
+				return null;
+			}
+			if (System.nanoTime() - entry.expiresAt >= 0) {
+				remove(entry);
+				evictionCount.incrementAndGet();
+				missCount.incrementAndGet();
+				return null;
+			}
+			//Touch the entry so it moves to the end of the LRU order of its size class.
+			entry.slabClass.entries.get(entry.key);
+			bytes = new byte[entry.length];
+			entry.chunk.duplicate().get(bytes);
+		}
+
+		//Deserialize outside of the lock, a failure (e.g. the class has changed) simply drops the entry.
+		Object value;
+		try {
+			value = serializer != null ? serializer.deserialize(bytes) : bytes;
+		} catch (SerializationFailedException | SerializationException exception) {
+			synchronized (this) {
+				//Unless the entry has been replaced by a newer value in the meantime.
+				if (entries.get(entry.key) == entry) {
+					remove(entry);
+				}
+			}
+			missCount.incrementAndGet();
+			return null;
+		}
+		hitCount.incrementAndGet();
+		return new SimpleValueWrapper(value);
+	}
+
+	@Override
+	public void put(byte[] key, Object value, byte[] serializedValue) {
+		if (serializedValue == null || serializedValue.length > slabSize) {
+			invalidate(key);
+			return;
+		}
+		ByteBuffer keyBuffer = ByteBuffer.wrap(key);
+		synchronized (this) {
+			Entry existing = entries.get(keyBuffer);
+			if (existing != null) {
+				remove(existing);
+			}
+			SlabClass slabClass = slabClassFor(serializedValue.length);
+			ByteBuffer chunk = allocate(slabClass);
+			if (chunk == null) {
+				//Every slab is in use by other size classes.
+				return;
+			}
+			chunk.duplicate().put(serializedValue);
+			Entry entry = new Entry(keyBuffer, slabClass, chunk, serializedValue.length, System.nanoTime() + timeToLiveNanos);
+			entries.put(keyBuffer, entry);
+			slabClass.entries.put(keyBuffer, entry);
+		}
+	}
+
+	@Override
+	public synchronized void invalidate(byte[] key) {
+		Entry entry = entries.get(ByteBuffer.wrap(key));
+		if (entry != null) {
+			remove(entry);
+		}
+	}
+
+	@Override
+	public synchronized void invalidateAll() {
+		//Every chunk is now free, so every slab can be assigned to any size class again.
+		entries.clear();
+		for (SlabClass slabClass : slabClasses) {
+			slabClass.entries.clear();
+			slabClass.freeChunks.clear();
+		}
+		freeSlabs.clear();
+		freeSlabs.addAll(slabs);
+	}
+
+	@Override
+	public synchronized long size() {
+		return entries.size();
+	}
+
+	@Override
+	public long hitCount() {
+		return hitCount.get();
+	}
+
+	@Override
+	public long missCount() {
+		return missCount.get();
+	}
+
+	@Override
+	public long evictionCount() {
+		return evictionCount.get();
+	}
+
+	/**
+	 * @return The number of bytes of direct memory allocated by the near cache.
+	 */
+	public synchronized long getAllocatedMemory() {
+		return (long) slabs.size() * slabSize;
+	}
+
+	/**
+	 * @return The size of the chunks a value of the given length is stored in.
+	 */
+	int getChunkSize(int length) {
+		return slabClassFor(length).chunkSize;
+	}
+
+	private SlabClass slabClassFor(int length) {
+		int chunkSize = Math.max(MIN_CHUNK_SIZE, length);
+		//Round up to the next power of two.
+		int index = 32 - Integer.numberOfLeadingZeros(chunkSize - 1) - Integer.numberOfTrailingZeros(MIN_CHUNK_SIZE);
+		return slabClasses[index];
+	}
+
+	private ByteBuffer allocate(SlabClass slabClass) {
+		ByteBuffer chunk = slabClass.freeChunks.poll();
+		if (chunk != null) {
+			return chunk;
+		}
+		ByteBuffer slab = freeSlabs.poll();
+		if (slab == null && slabs.size() < maximumSlabs) {
+			slab = ByteBuffer.allocateDirect(slabSize);
+			slabs.add(slab);
+		}
+		if (slab != null) {
+			ByteBuffer view = slab.duplicate();
+			for (int offset = 0; offset < slabSize; offset += slabClass.chunkSize) {
+				//Cast to Buffer so the code also runs on Java 8, where limit and position are not overridden by ByteBuffer.
+				((Buffer) view).limit(offset + slabClass.chunkSize).position(offset);
+				slabClass.freeChunks.add(view.slice());
+			}
+			return slabClass.freeChunks.poll();
+		}
+		Iterator<Entry> leastRecentlyUsed = slabClass.entries.values().iterator();
+		if (!leastRecentlyUsed.hasNext()) {
+			return null;
+		}
+		remove(leastRecentlyUsed.next());
+		evictionCount.incrementAndGet();
+		return slabClass.freeChunks.poll();
+	}
+
+	private void remove(Entry entry) {
+		entries.remove(entry.key);
+		entry.slabClass.entries.remove(entry.key);
+		entry.slabClass.freeChunks.add(entry.chunk);
+	}
+
+	private static class SlabClass {
+
+		private final int chunkSize;
+		private final ArrayDeque<ByteBuffer> freeChunks = new ArrayDeque<>();
+		//The entries stored in this size class in least recently used order.
+		private final LinkedHashMap<ByteBuffer, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+
+		private SlabClass(int chunkSize) {
+			this.chunkSize = chunkSize;
+		}
+	}
+
+	private static class Entry {
+
+		private final ByteBuffer key;
+		private final SlabClass slabClass;
+		private final ByteBuffer chunk;
+		private final int length;
+		private final long expiresAt;
+
+		private Entry(ByteBuffer key, SlabClass slabClass, ByteBuffer chunk, int length, long expiresAt) {
+			this.key = key;
+			this.slabClass = slabClass;
+			this.chunk = chunk;
+			this.length = length;
+			this.expiresAt = expiresAt;
+		}
+	}
+}
@@ -0,0 +1,278 @@
+package com.example.cache;
+
+import java.nio.ByteBuffer;
+import java.util.AbstractMap;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.springframework.cache.Cache.ValueWrapper;
+import org.springframework.cache.support.SimpleValueWrapper;
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.redis.RedisConnectionFailureException;
+import org.springframework.data.redis.connection.ReturnType;
+import org.springframework.data.redis.core.ReactiveRedisCallback;
+import org.springframework.data.redis.core.ReactiveRedisOperations;
+
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+/**
+ * A reactive (non-blocking) view of a {@link UnifiedRedisCache}. The operations are sent to redis via a reactive connection, so a caller
+ * running on an event loop (e.g. WebFlux) never blocks on redis. The values are stored exactly as they are by the unified cache (a
+ * hash of application version to serialized value), values from an older version of the application are promoted to the current
+ * version and the key computation, hit/miss/put/promotion counts and near cache are those of the wrapped cache.
+ *
+ * The serialized values are deserialized on a separate scheduler (the parallel scheduler by default) rather than on the event loop
+ * that received the response from redis.
+ *
+ * Just like the blocking cache, a failure to communicate with redis is treated as a miss (or is ignored for puts and evictions), the
+ * returned publishers do not signal an error.
+ */
+public class ReactiveUnifiedRedisCache {
+
+	private static final Log log = LogFactory.getLog(ReactiveUnifiedRedisCache.class);
+
+	private static final UnifiedRedisScript GET_WITH_PROMOTION_SCRIPT = UnifiedRedisScript.load("get-with-promotion.lua");
+	private static final UnifiedRedisScript STORE_VALUE_SCRIPT = UnifiedRedisScript.load("store-value.lua");
+
+	private final UnifiedRedisCache cache;
+	private final ReactiveRedisOperations<?, ?> reactiveOperations;
+	private final Scheduler deserializationScheduler;
+	private final ConcurrentMap<ByteBuffer, Mono<ValueWrapper>> inFlightLoads = new ConcurrentHashMap<>();
+
+	/**
+	 * @param cache The unified cache that is wrapped.
+	 * @param reactiveOperations The reactive operations used to communicate with redis, only the raw connection is used so the
+	 * serializers of the operations do not matter.
+	 */
+	public ReactiveUnifiedRedisCache(UnifiedRedisCache cache, ReactiveRedisOperations<?, ?> reactiveOperations) {
+		this(cache, reactiveOperations, Schedulers.parallel());
+	}
+
+	/**
+	 * @param cache The unified cache that is wrapped.
+	 * @param reactiveOperations The reactive operations used to communicate with redis.
+	 * @param deserializationScheduler The scheduler on which values read from redis are deserialized.
+	 */
+	public ReactiveUnifiedRedisCache(UnifiedRedisCache cache, ReactiveRedisOperations<?, ?> reactiveOperations, Scheduler deserializationScheduler) {
+		this.cache = cache;
+		this.reactiveOperations = reactiveOperations;
+		this.deserializationScheduler = deserializationScheduler;
+	}
+
+	public String getName() {
+		return cache.getName();
+	}
+
+	public UnifiedRedisCache getNativeCache() {
+		return cache;
+	}
+
+	/**
+	 * @param key The key
+	 * @return The value wrapper or an empty mono if the key is not in the cache.
+	 */
+	public Mono<ValueWrapper> get(Object key) {
+		return Mono.defer(() -> {
+			final byte[] keyBytes = cache.computeKey(key);
+			ValueWrapper nearValue = cache.getFromNearCache(keyBytes);
+			if (nearValue != null) {
+				return Mono.just(nearValue);
+			}
+			if (cache.isKnownAbsent(keyBytes)) {
+				return Mono.empty();
+			}
+			final long nearCacheEpoch = cache.getNearCacheEpoch(keyBytes);
+
+			//The script returns the current version's value or, if missing, the value of the newest older version in a single round trip.
+			return execute(connection -> GET_WITH_PROMOTION_SCRIPT.<List<ByteBuffer>>executeReactive(connection,
+						ReturnType.MULTI, 1, getPromotionKeyAndArguments(keyBytes)))
+				.next()
+				.defaultIfEmpty(Collections.emptyList())
+				.publishOn(deserializationScheduler)
+				.flatMap(versionAndValue -> toValueWrapper(keyBytes, nearCacheEpoch, versionAndValue))
+				.onErrorResume(DataAccessException.class, e -> {
+					log.trace("Redis exception. Falling back to regular DB access.", e);
+					return Mono.empty();
+				});
+		});
+	}
+
+	/**
+	 * Return the value of the key, if the key is not in the cache the value is obtained from the loader and is then put into the cache.
+	 * If the loader completes empty and the cache allows null values, the absence of the value is cached.
+	 *
+	 * Concurrent misses of the same key within this instance share a single load: the loader of the first miss is subscribed to and
+	 * the other callers receive its outcome. Unlike {@link UnifiedRedisCache#get(Object, java.util.concurrent.Callable)} there is no
+	 * cluster wide load lease (waiting for the lease would mean polling redis) and no load timeout, so other instances (and blocking
+	 * callers of the same cache) may still load the key at the same time.
+	 *
+	 * @param key The key
+	 * @param valueLoader The loader, it is only subscribed to on a miss.
+	 * @return The cached or loaded value, empty if the key is known to have no value.
+	 */
+	@SuppressWarnings("unchecked")
+	public <T> Mono<T> get(Object key, Mono<T> valueLoader) {
+		return get(key)
+			.switchIfEmpty(Mono.defer(() -> load(key, valueLoader)))
+			.flatMap(valueWrapper -> Mono.justOrEmpty((T) valueWrapper.get()));
+	}
+
+	private <T> Mono<ValueWrapper> load(Object key, Mono<T> valueLoader) {
+		final ByteBuffer loadKey = ByteBuffer.wrap(cache.computeKey(key));
+		final AtomicReference<Mono<ValueWrapper>> load = new AtomicReference<>();
+		//The load is removed once it terminates, a later miss loads the key again rather than replaying an old outcome.
+		load.set(valueLoader
+			.flatMap(value -> put(key, value).thenReturn((ValueWrapper) new SimpleValueWrapper(value)))
+			.switchIfEmpty(Mono.defer(() -> cache.isCacheNullValues() ? put(key, null).then(Mono.empty()) : Mono.empty()))
+			.doFinally(signal -> inFlightLoads.remove(loadKey, load.get()))
+			.cache());
+		Mono<ValueWrapper> inFlightLoad = inFlightLoads.putIfAbsent(loadKey, load.get());
+		return inFlightLoad != null ? inFlightLoad : load.get();
+	}
+
+	/**
+	 * Return the values for a collection of keys, the keys are looked up concurrently and each hit is emitted as soon as it has been
+	 * read. Keys that are not in the cache are not emitted.
+	 *
+	 * @param keys The keys
+	 * @return An entry of key to value wrapper, for each key that was found in the cache.
+	 */
+	public <K> Flux<Map.Entry<K, ValueWrapper>> getAll(Collection<K> keys) {
+		return Flux.fromIterable(keys)
+			.flatMap(key -> get(key).map(valueWrapper -> new AbstractMap.SimpleImmutableEntry<>(key, valueWrapper)));
+	}
+
+	public Mono<Void> put(Object key, Object value) {
+		return Mono.defer(() -> {
+			final byte[] keyBytes = cache.computeKey(key);
+			final byte[] valueBytes = cache.serializeValue(value);
+
+			return execute(connection -> STORE_VALUE_SCRIPT.<List<Object>>executeReactive(connection, ReturnType.MULTI, 1,
+					getKeyAndArguments(keyBytes, cache.getStoreArguments(valueBytes, UnifiedRedisCache.STORE_PUT))))
+				.doOnNext(cache::storeCompleted)
+				.then()
+				.doOnSuccess(ignored -> cache.putCompleted(keyBytes, value, valueBytes))
+				.onErrorResume(DataAccessException.class, e -> {
+					log.trace("Redis exception. Cache puts are non-critical.", e);
+					cache.putFailed(keyBytes);
+					return Mono.empty();
+				});
+		});
+	}
+
+	/**
+	 * Evict the key from the cache, all versions of the key are removed.
+	 */
+	public Mono<Void> evict(Object key) {
+		return Mono.defer(() -> {
+			final byte[] keyBytes = cache.computeKey(key);
+			final AtomicBoolean skipped = new AtomicBoolean();
+			return execute(connection -> connection.keyCommands().del(ByteBuffer.wrap(keyBytes)))
+				.then()
+				.onErrorResume(DataAccessException.class, e -> {
+					skipped.set(UnifiedRedisCache.isSkipped(e));
+					log.trace("Redis exception. Cache evictions are non-critical.", e);
+					return Mono.empty();
+				})
+				.doFinally(signal -> cache.invalidateNearCaches(Collections.singletonList(keyBytes), !skipped.get()));
+		});
+	}
+
+	private ByteBuffer[] getPromotionKeyAndArguments(byte[] keyBytes) {
+		return getKeyAndArguments(keyBytes, cache.getPromotionArguments());
+	}
+
+	private static ByteBuffer[] getKeyAndArguments(byte[] keyBytes, byte[][] arguments) {
+		ByteBuffer[] keyAndArguments = new ByteBuffer[arguments.length + 1];
+		keyAndArguments[0] = ByteBuffer.wrap(keyBytes);
+		for (int index = 0; index < arguments.length; index++) {
+			keyAndArguments[index + 1] = ByteBuffer.wrap(arguments[index]);
+		}
+		return keyAndArguments;
+	}
+
+	/**
+	 * Hand the raw result of the script to the unified cache, a value read from an older version is promoted before the value is
+	 * emitted.
+	 */
+	private Mono<ValueWrapper> toValueWrapper(byte[] keyBytes, long nearCacheEpoch, List<ByteBuffer> versionAndValue) {
+		byte[] version = versionAndValue.size() >= 2 ? getBytes(versionAndValue.get(0)) : null;
+		byte[] valueBytes = versionAndValue.size() >= 2 ? getBytes(versionAndValue.get(1)) : null;
+		cache.countScriptPromotion(versionAndValue);
+
+		AtomicReference<Mono<Void>> promotion = new AtomicReference<>(Mono.empty());
+		ValueWrapper valueWrapper = cache.toValueWrapper(keyBytes, version, valueBytes, nearCacheEpoch,
+			(promotedKey, promotedValue) -> promotion.set(promote(promotedKey, promotedValue)));
+		return promotion.get().then(Mono.justOrEmpty(valueWrapper));
+	}
+
+	/**
+	 * Copy a value from an older version of the application into the current version's field, HSETNX is used so that a value written
+	 * by the current version in the meantime is never overwritten by the older copy.
+	 */
+	private Mono<Void> promote(byte[] keyBytes, byte[] valueBytes) {
+		Flux<?> promotion = cache.usesStoreScript()
+			? execute(connection -> STORE_VALUE_SCRIPT.<List<Object>>executeReactive(connection, ReturnType.MULTI, 1,
+				getKeyAndArguments(keyBytes, cache.getStoreArguments(valueBytes, UnifiedRedisCache.STORE_PROMOTE))))
+			: execute(connection -> connection.hashCommands()
+				.hSetNX(ByteBuffer.wrap(keyBytes), ByteBuffer.wrap(cache.getCurrentVersionBytes()), ByteBuffer.wrap(valueBytes)));
+		return promotion
+			.next()
+			.doOnNext(promoted -> {
+				if (cache.storeCompleted(promoted)) {
+					cache.promotionCompleted();
+				}
+			})
+			.then()
+			.onErrorResume(DataAccessException.class, e -> {
+				log.trace("Redis exception. Promotion of the cached value is non-critical.", e);
+				return Mono.empty();
+			});
+	}
+
+	/**
+	 * Make a call to redis through the bulkhead and circuit breaker of the unified cache, if the call is rejected it is not made and
+	 * the rejection is signalled instead.
+	 */
+	private <T> Flux<T> execute(ReactiveRedisCallback<T> callback) {
+		return Flux.defer(() -> {
+			final Semaphore permits;
+			try {
+				permits = cache.acquireRedis();
+			} catch (RedisConnectionFailureException e) {
+				return Flux.<T>error(e);
+			}
+			final long start = System.nanoTime();
+			final AtomicReference<Throwable> error = new AtomicReference<>();
+			Flux<T> result;
+			try {
+				result = reactiveOperations.execute(callback);
+			} catch (Throwable e) {
+				cache.releaseRedis(permits, e, System.nanoTime() - start);
+				throw e;
+			}
+			//A call that is cancelled (e.g. by next()) once it has produced its result is a success.
+			return result
+				.doOnError(error::set)
+				.doFinally(signal -> cache.releaseRedis(permits, error.get(), System.nanoTime() - start));
+		});
+	}
+
+	private static byte[] getBytes(ByteBuffer buffer) {
+		byte[] bytes = new byte[buffer.remaining()];
+		buffer.duplicate().get(bytes);
+		return bytes;
+	}
+}
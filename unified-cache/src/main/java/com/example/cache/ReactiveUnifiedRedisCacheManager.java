@@ -0,0 +1,45 @@
+package com.example.cache;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.springframework.cache.Cache;
+import org.springframework.cache.transaction.TransactionAwareCacheDecorator;
+import org.springframework.data.redis.core.ReactiveRedisOperations;
+
+/**
+ * Exposes the caches of a {@link UnifiedRedisCacheManager} as {@link ReactiveUnifiedRedisCache}s. The reactive cache is a view of the
+ * cache managed by the cache manager, so both share the same configuration (time to live, key prefix, generation and near cache) and
+ * the same metrics.
+ */
+public class ReactiveUnifiedRedisCacheManager {
+
+	private final UnifiedRedisCacheManager cacheManager;
+	private final ReactiveRedisOperations<?, ?> reactiveOperations;
+	private final ConcurrentMap<String, ReactiveUnifiedRedisCache> caches = new ConcurrentHashMap<>();
+
+	public ReactiveUnifiedRedisCacheManager(UnifiedRedisCacheManager cacheManager, ReactiveRedisOperations<?, ?> reactiveOperations) {
+		this.cacheManager = cacheManager;
+		this.reactiveOperations = reactiveOperations;
+	}
+
+	/**
+	 * @param name The name of the cache.
+	 * @return The reactive cache or null if the cache manager does not have a unified cache by that name.
+	 */
+	public ReactiveUnifiedRedisCache getCache(String name) {
+		ReactiveUnifiedRedisCache reactiveCache = caches.get(name);
+		if (reactiveCache != null) {
+			return reactiveCache;
+		}
+		Cache cache = cacheManager.getCache(name);
+		if (cache instanceof TransactionAwareCacheDecorator) {
+			cache = ((TransactionAwareCacheDecorator) cache).getTargetCache();
+		}
+		if (!(cache instanceof UnifiedRedisCache)) {
+			return null;
+		}
+		final UnifiedRedisCache unifiedCache = (UnifiedRedisCache) cache;
+		return caches.computeIfAbsent(name, cacheName -> new ReactiveUnifiedRedisCache(unifiedCache, reactiveOperations));
+	}
+}
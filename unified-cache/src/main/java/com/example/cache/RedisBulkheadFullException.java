@@ -0,0 +1,22 @@
+package com.example.cache;
+
+import org.springframework.data.redis.RedisConnectionFailureException;
+
+/**
+ * This exception is thrown instead of calling redis when a cache already has the maximum number of operations in flight. It is handled
+ * exactly like redis being unreachable (a miss for gets, a dropped put or eviction), so one busy cache cannot starve the other caches
+ * of the shared connection.
+ */
+public class RedisBulkheadFullException extends RedisConnectionFailureException {
+	private static final long serialVersionUID = 1L;
+
+	public RedisBulkheadFullException(String cacheName) {
+		super("Cache [" + cacheName + "] has the maximum number of redis operations in flight, the call to redis was skipped.");
+	}
+
+	@Override
+	public synchronized Throwable fillInStackTrace() {
+		//Thrown on every call while the cache is saturated, the stack trace is not useful.
+		return this;
+	}
+}
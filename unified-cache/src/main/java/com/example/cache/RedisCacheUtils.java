@@ -2,6 +2,9 @@ package com.example.cache;
 
 import java.util.Arrays;
 
+import org.springframework.data.redis.connection.DecoratedRedisConnection;
+import org.springframework.data.redis.connection.RedisClusterConnection;
+import org.springframework.data.redis.connection.RedisConnection;
 import org.springframework.data.redis.core.RedisOperations;
 
 public final class RedisCacheUtils {
@@ -25,4 +28,32 @@ public final class RedisCacheUtils {
 		return result;
 	}
 
+	/**
+	 * @return true if the connection (or the connection it decorates) is a connection to a redis cluster.
+	 */
+	public static boolean isClusterConnection(RedisConnection connection) {
+
+		while (connection instanceof DecoratedRedisConnection) {
+			connection = ((DecoratedRedisConnection) connection).getDelegate();
+		}
+
+		return connection instanceof RedisClusterConnection;
+	}
+
+	/**
+	 * @return true if the exception (or any of its causes) has a message that contains the given text. This is used to detect specific
+	 * error replies from the redis server.
+	 */
+	public static boolean hasErrorMessage(Throwable exception, String text) {
+		Throwable current = exception;
+		while (current != null) {
+			String message = current.getMessage();
+			if (message != null && message.contains(text)) {
+				return true;
+			}
+			current = current.getCause();
+		}
+		return false;
+	}
+
 }
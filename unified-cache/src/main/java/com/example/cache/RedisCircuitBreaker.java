@@ -0,0 +1,257 @@
+package com.example.cache;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.dao.QueryTimeoutException;
+import org.springframework.data.redis.TooManyClusterRedirectionsException;
+
+import io.lettuce.core.RedisCommandTimeoutException;
+import io.lettuce.core.RedisConnectionException;
+
+/**
+ * A circuit breaker that protects the application from a degraded redis. The outcome (failure and latency) of the most recent calls
+ * to redis is kept in a sliding window, once enough calls have been made and either the failure rate or the slow call rate reaches
+ * its threshold, the breaker opens. While open, calls to redis are skipped entirely: gets are an immediate miss and puts/evictions
+ * are dropped, so a slow redis no longer ties up the calling threads for the full command timeout.
+ *
+ * After the wait duration has elapsed, the breaker moves to half open and lets a limited number of probe calls through. If all of the
+ * probes succeed (and are not slow) the breaker closes, a single failed or slow probe opens the breaker again.
+ *
+ * A single breaker is shared by all of the caches of a cache manager, as they share the same redis.
+ */
+public class RedisCircuitBreaker {
+
+	private static final Log log = LogFactory.getLog(RedisCircuitBreaker.class);
+
+	//The states are in order of severity, the gauge of the state is the ordinal.
+	public enum State {
+		CLOSED, HALF_OPEN, OPEN
+	}
+
+	private final int slidingWindowSize;
+	private final int minimumNumberOfCalls;
+	private final float failureRateThreshold;
+	private final long slowCallDurationNanos;
+	private final float slowCallRateThreshold;
+	private final long waitDurationInOpenStateNanos;
+	private final int permittedCallsInHalfOpenState;
+
+	//All of the state below is guarded by "this".
+	private volatile State state = State.CLOSED;
+	private final byte[] outcomes;
+	private int nextOutcome = 0;
+	private int recordedCalls = 0;
+	private int failedCalls = 0;
+	private int slowCalls = 0;
+	private long openedAt;
+	private int probesStarted = 0;
+	private int probesSucceeded = 0;
+
+	private final AtomicLong rejectedCount = new AtomicLong();
+
+	private static final byte FAILED = 1;
+	private static final byte SLOW = 2;
+
+	/**
+	 * @param slidingWindowSize The number of most recent calls used to compute the failure and slow call rates.
+	 * @param minimumNumberOfCalls The number of calls that must be recorded before the breaker can open.
+	 * @param failureRateThreshold The percentage of failed calls at which the breaker opens.
+	 * @param slowCallDuration Calls that take longer than this are slow.
+	 * @param slowCallRateThreshold The percentage of slow calls at which the breaker opens.
+	 * @param waitDurationInOpenState How long the breaker stays open before probe calls are let through.
+	 * @param permittedCallsInHalfOpenState The number of probe calls that must succeed to close the breaker.
+	 */
+	public RedisCircuitBreaker(int slidingWindowSize, int minimumNumberOfCalls, float failureRateThreshold, Duration slowCallDuration,
+			float slowCallRateThreshold, Duration waitDurationInOpenState, int permittedCallsInHalfOpenState) {
+		this.slidingWindowSize = Math.max(1, slidingWindowSize);
+		this.minimumNumberOfCalls = Math.max(1, Math.min(minimumNumberOfCalls, this.slidingWindowSize));
+		this.failureRateThreshold = failureRateThreshold;
+		this.slowCallDurationNanos = slowCallDuration.toNanos();
+		this.slowCallRateThreshold = slowCallRateThreshold;
+		this.waitDurationInOpenStateNanos = waitDurationInOpenState.toNanos();
+		this.permittedCallsInHalfOpenState = Math.max(1, permittedCallsInHalfOpenState);
+		this.outcomes = new byte[this.slidingWindowSize];
+	}
+
+	/**
+	 * Ask permission to make a call to redis. Every call that is permitted must be followed by a call to
+	 * {@link #onSuccess(long)} or {@link #onFailure(long)}.
+	 *
+	 * @return false if the call must not be made because the breaker is open (or all of the probe calls are in progress).
+	 */
+	public boolean tryAcquire() {
+		if (state == State.CLOSED) {
+			return true;
+		}
+		synchronized (this) {
+			if (state == State.OPEN && System.nanoTime() - openedAt >= waitDurationInOpenStateNanos) {
+				transitionTo(State.HALF_OPEN);
+			}
+			if (state == State.HALF_OPEN && probesStarted < permittedCallsInHalfOpenState) {
+				probesStarted++;
+				return true;
+			}
+			if (state == State.CLOSED) {
+				return true;
+			}
+		}
+		rejectedCount.incrementAndGet();
+		return false;
+	}
+
+	/**
+	 * Record a permitted call that completed without a redis failure.
+	 *
+	 * @param durationNanos How long the call took.
+	 */
+	public void onSuccess(long durationNanos) {
+		record(false, durationNanos >= slowCallDurationNanos);
+	}
+
+	/**
+	 * Record a permitted call that failed because redis could not be reached (or did not respond in time).
+	 *
+	 * @param durationNanos How long the call took.
+	 */
+	public void onFailure(long durationNanos) {
+		record(true, durationNanos >= slowCallDurationNanos);
+	}
+
+	/**
+	 * Record the outcome of a permitted call, only failures of redis itself (connection failures and timeouts) count as a failure.
+	 *
+	 * @param error The error raised by the call or null if it succeeded.
+	 * @param durationNanos How long the call took.
+	 */
+	public void onComplete(Throwable error, long durationNanos) {
+		if (error != null && isRedisFailure(error)) {
+			onFailure(durationNanos);
+		} else {
+			onSuccess(durationNanos);
+		}
+	}
+
+	private synchronized void record(boolean failed, boolean slow) {
+		if (state == State.HALF_OPEN) {
+			if (failed || slow) {
+				transitionTo(State.OPEN);
+			} else if (++probesSucceeded >= permittedCallsInHalfOpenState) {
+				transitionTo(State.CLOSED);
+			}
+			return;
+		}
+		if (state == State.OPEN) {
+			//A call that was permitted before the breaker opened.
+			return;
+		}
+
+		byte outcome = (byte) ((failed ? FAILED : 0) | (slow ? SLOW : 0));
+		if (recordedCalls == slidingWindowSize) {
+			byte evicted = outcomes[nextOutcome];
+			failedCalls -= (evicted & FAILED) != 0 ? 1 : 0;
+			slowCalls -= (evicted & SLOW) != 0 ? 1 : 0;
+		} else {
+			recordedCalls++;
+		}
+		outcomes[nextOutcome] = outcome;
+		nextOutcome = (nextOutcome + 1) % slidingWindowSize;
+		failedCalls += failed ? 1 : 0;
+		slowCalls += slow ? 1 : 0;
+
+		if (recordedCalls >= minimumNumberOfCalls
+				&& (getFailureRate() >= failureRateThreshold || getSlowCallRate() >= slowCallRateThreshold)) {
+			transitionTo(State.OPEN);
+		}
+	}
+
+	private void transitionTo(State newState) {
+		if (state == State.CLOSED) {
+			log.warn("The redis circuit breaker moved from [" + state + "] to [" + newState + "], failure rate [" + getFailureRate()
+				+ "%], slow call rate [" + getSlowCallRate() + "%].");
+		} else {
+			log.warn("The redis circuit breaker moved from [" + state + "] to [" + newState + "].");
+		}
+		state = newState;
+		probesStarted = 0;
+		probesSucceeded = 0;
+		if (newState == State.OPEN) {
+			openedAt = System.nanoTime();
+		}
+		if (newState == State.CLOSED) {
+			recordedCalls = 0;
+			nextOutcome = 0;
+			failedCalls = 0;
+			slowCalls = 0;
+		}
+	}
+
+	/**
+	 * @return true if the error (or one of its causes) means redis could not be reached or did not respond in time.
+	 */
+	public static boolean isRedisFailure(Throwable error) {
+		for (Throwable cause = error; cause != null; cause = cause.getCause()) {
+			if (cause instanceof DataAccessResourceFailureException || cause instanceof QueryTimeoutException
+					|| cause instanceof TooManyClusterRedirectionsException || cause instanceof RedisConnectionException
+					|| cause instanceof RedisCommandTimeoutException) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	public State getState() {
+		if (state == State.OPEN) {
+			synchronized (this) {
+				//Report the breaker as half open once probes would be let through, even if no call has been made since.
+				if (state == State.OPEN && System.nanoTime() - openedAt >= waitDurationInOpenStateNanos) {
+					return State.HALF_OPEN;
+				}
+			}
+		}
+		return state;
+	}
+
+	/**
+	 * @return The number of calls in the sliding window that failed.
+	 */
+	public synchronized int getFailureCount() {
+		return failedCalls;
+	}
+
+	/**
+	 * @return When the breaker will let probe calls through, null if the breaker is not open.
+	 */
+	public synchronized Instant getOpenUntil() {
+		if (state != State.OPEN) {
+			return null;
+		}
+		long remaining = waitDurationInOpenStateNanos - (System.nanoTime() - openedAt);
+		return remaining > 0 ? Instant.now().plusNanos(remaining) : null;
+	}
+
+	/**
+	 * @return The percentage of the calls in the sliding window that failed.
+	 */
+	public synchronized float getFailureRate() {
+		return recordedCalls == 0 ? 0 : failedCalls * 100.0f / recordedCalls;
+	}
+
+	/**
+	 * @return The percentage of the calls in the sliding window that were slow.
+	 */
+	public synchronized float getSlowCallRate() {
+		return recordedCalls == 0 ? 0 : slowCalls * 100.0f / recordedCalls;
+	}
+
+	/**
+	 * @return The number of calls that were not made because the breaker was open.
+	 */
+	public long getRejectedCount() {
+		return rejectedCount.get();
+	}
+}
@@ -0,0 +1,21 @@
+package com.example.cache;
+
+import org.springframework.data.redis.RedisConnectionFailureException;
+
+/**
+ * This exception is thrown instead of calling redis while the {@link RedisCircuitBreaker} is open. It is a connection failure, so it
+ * is handled exactly like redis being unreachable (a miss for gets, a dropped put or eviction) but without waiting for a timeout.
+ */
+public class RedisCircuitOpenException extends RedisConnectionFailureException {
+	private static final long serialVersionUID = 1L;
+
+	public RedisCircuitOpenException() {
+		super("The redis circuit breaker is open, the call to redis was skipped.");
+	}
+
+	@Override
+	public synchronized Throwable fillInStackTrace() {
+		//Thrown on every call while the breaker is open, the stack trace is not useful.
+		return this;
+	}
+}
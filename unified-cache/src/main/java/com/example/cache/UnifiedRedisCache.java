@@ -1,8 +1,36 @@
 package com.example.cache;
 
+import java.io.IOException;
+import java.io.InvalidClassException;
+import java.nio.ByteBuffer;
+import java.time.Duration;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.UUID;
 import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
@@ -11,24 +39,39 @@ import org.springframework.cache.support.SimpleValueWrapper;
 import org.springframework.core.serializer.support.SerializationFailedException;
 import org.springframework.dao.DataAccessException;
 import org.springframework.dao.InvalidDataAccessApiUsageException;
+import org.springframework.dao.QueryTimeoutException;
 import org.springframework.data.redis.RedisConnectionFailureException;
+import org.springframework.data.redis.RedisSystemException;
 import org.springframework.data.redis.TooManyClusterRedirectionsException;
 import org.springframework.data.redis.cache.RedisCache;
-import org.springframework.data.redis.connection.DecoratedRedisConnection;
+import org.springframework.data.redis.connection.ClusterSlotHashUtil;
 import org.springframework.data.redis.connection.RedisClusterConnection;
+import org.springframework.data.redis.connection.RedisClusterNode;
 import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.connection.RedisPipelineException;
+import org.springframework.data.redis.connection.RedisStringCommands.SetOption;
 import org.springframework.data.redis.connection.ReturnType;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.data.redis.core.Cursor;
 import org.springframework.data.redis.core.RedisCallback;
 import org.springframework.data.redis.core.RedisOperations;
+import org.springframework.data.redis.core.RedisAccessor;
+import org.springframework.data.redis.core.ScanOptions;
+import org.springframework.data.redis.core.types.Expiration;
 import org.springframework.data.redis.serializer.RedisSerializer;
 import org.springframework.data.redis.serializer.SerializationException;
 import org.springframework.data.redis.serializer.StringRedisSerializer;
 import org.springframework.util.Assert;
 
+import io.lettuce.core.ScriptOutputType;
+import io.lettuce.core.cluster.api.async.RedisClusterAsyncCommands;
+
 /**
  * This cache uses a "unified caching model" which allows multiple versions of an application to share the same redis instance. Cached
  * values are stored by cache name to a key. The value is actually a hashset of application version to serialized value. This means that
- * the same object can be cached more than once if their are two different versions of the application that both leverage the cache.
+ * the same object can be cached more than once if their are two different versions of the application that both leverage the cache,
+ * unless payloads are deduplicated (see setDeduplicatePayloads()).
  *
  * The BuildCacheHelper provides convenience methods for explicitly working with the unified cache, specifically the "put" operation in
  * the helper provides an optional flag that can be used to evict Other versions of a cached object.
@@ -79,23 +122,160 @@ import org.springframework.util.Assert;
  *</PRE>
  *
  */
-public class UnifiedRedisCache implements Cache {
+public class UnifiedRedisCache implements AsyncExtendedCache {
 
 	private Log log = LogFactory.getLog(UnifiedRedisCache.class);
 
+	private static final UnifiedRedisScript GET_WITH_PROMOTION_SCRIPT = UnifiedRedisScript.load("get-with-promotion.lua");
+	private static final UnifiedRedisScript RELEASE_LEASE_SCRIPT = UnifiedRedisScript.load("release-lease.lua");
+	private static final UnifiedRedisScript STORE_VALUE_SCRIPT = UnifiedRedisScript.load("store-value.lua");
+	private static final UnifiedRedisScript RECORD_HOT_KEYS_SCRIPT = UnifiedRedisScript.load("record-hot-keys.lua");
+
+	//The modes of the store script.
+	static final byte[] STORE_PUT = new StringRedisSerializer().serialize("put");
+	static final byte[] STORE_REPLACE = new StringRedisSerializer().serialize("replace");
+	static final byte[] STORE_PUT_IF_ABSENT = new StringRedisSerializer().serialize("absent");
+	static final byte[] STORE_PROMOTE = new StringRedisSerializer().serialize("promote");
+	static final byte[] STORE_PRUNE = new StringRedisSerializer().serialize("prune");
+	private static final byte[] TRUE = new StringRedisSerializer().serialize("1");
+	private static final byte[] FALSE = new StringRedisSerializer().serialize("0");
+
+	private static final byte[][] NO_ARGUMENTS = new byte[0][];
+	private static final byte[] NO_VALUE = new byte[0];
+
+	//The registries of the cache manager are stored under the key prefix of the cache, their names start with a NUL byte so they
+	//can be told apart from the cache keys (a serialized (JSON) key never starts with it) whatever the features enabled.
+	static final String REGISTRY_MARKER = "\0";
+
+	//The lease of a key is a sibling key with this suffix. It starts with a NUL byte, so a serialized (JSON) key never ends with it.
+	private static final byte[] LEASE_SUFFIX = new StringRedisSerializer().serialize("\0lease");
+
+	//The value stored for a key that is known to have no value. It starts with a NUL byte, so the value serializer (JSON) never produces it.
+	static final byte[] NULL_VALUE = new StringRedisSerializer().serialize("\0unified-cache:null");
+
+	//A version field that holds a reference to a deduplicated payload starts with this byte, see store-value.lua.
+	private static final byte REFERENCE_MARKER = 1;
+
+	//The number of stripes (a power of two) the keys are spread over to track the invalidations of the near cache.
+	private static final int NEAR_CACHE_STRIPES = 64;
+
 	private final long expiration;
 	private final byte[] prefix;
 	private final RedisOperations<? extends Object, ? extends Object> redisOperations;
 	private final RedisCacheMetadata cacheMetadata;
 
-	final Integer applicationVersion;
+	//The current application version, null if the version can not be ordered (the values of older versions are then not promoted).
+	final String applicationVersion;
 	final RedisSerializer<String> versionSerializer;
 	private final byte[] currentVersionBytes;
 
-	private long hitCount = 0;
-	private long missCount = 0;
-	private long putCount = 0;
-	private long promotionCount = 0;
+	//The maximum number of entries sent to redis in a single pipeline.
+	private int batchSize = 500;
+
+	//The COUNT hint passed to each SCAN command when clearing the cache or rebuilding its bloom filter.
+	private int scanCount = 1000;
+
+	//When connected to a cluster, the master nodes are scanned in parallel on this executor (shared by the caches of a cache manager).
+	//Without an executor, the nodes are scanned one after the other on the calling thread.
+	private ExecutorService scanExecutor;
+
+	//Set to false if the redis server does not support the UNLINK command.
+	private volatile boolean unlinkSupported = true;
+
+	//When the cache manager uses generations, the generation is part of the key prefix and clearing the cache moves to a new generation.
+	private CacheGeneration generation;
+
+	//The older versions (per root type) whose values are known to be incompatible with the current version, they are not promoted.
+	private IncompatibleVersions incompatibleVersions;
+
+	//When set, the values of older versions with the same model fingerprint are promoted by the get script (without being checked).
+	private ModelFingerprint modelFingerprint;
+	private volatile PromotionArguments promotionArguments;
+
+	//When the versions are not integers, the older versions (newest first) that values can be promoted from.
+	private VersionRegistry versionRegistry;
+
+	//When set, a fraction of the hits are sampled into a ranking of the hot keys, a new version pre-warms the top keys.
+	private HotKeys hotKeys;
+	private volatile Thread prewarmingThread;
+
+	//An optional, in-process tier in front of redis and the means to invalidate the near caches of other instances.
+	private NearCache nearCache;
+	private NearCacheInvalidator nearCacheInvalidator;
+	private final AtomicLong droppedInvalidationCount = new AtomicLong();
+
+	//The invalidations of the near cache (made by this instance or published by other instances) per stripe of the keys. A value read
+	//from redis is not kept in the near cache if its key was invalidated while the value was being read, see fillNearCache().
+	private final AtomicLongArray nearCacheEpochs = new AtomicLongArray(NEAR_CACHE_STRIPES);
+
+	//The loads (via get(key, valueLoader)) that are in progress in this instance, keyed by the redis key.
+	private final ConcurrentMap<ByteBuffer, CompletableFuture<Object>> inFlightLoads = new ConcurrentHashMap<>();
+	private Duration loadTimeout = Duration.ofSeconds(10);
+	private final AtomicLong coalescedLoadCount = new AtomicLong();
+	private final AtomicLong loadTimeoutCount = new AtomicLong();
+
+	//When load leases are used, only one instance (the one holding the lease) loads a missing key, see loadValueWithLease().
+	private boolean useLoadLeases = false;
+	private Duration loadLeaseTime = Duration.ofSeconds(10);
+	private Duration loadLeasePollInterval = Duration.ofMillis(50);
+	private final AtomicLong leaseWaitCount = new AtomicLong();
+	private final AtomicLong leaseFallbackCount = new AtomicLong();
+
+	//Whether null values are cached (as NULL_VALUE) and the time to live, in seconds, of a key holding a null value.
+	private boolean cacheNullValues = true;
+	private long nullValueExpiration = 0;
+
+	//When enabled, values are written by the store script: identical payloads of different versions of a key are only stored once.
+	private boolean deduplicatePayloads = false;
+
+	//The number of older versions whose values are kept in each key, the store script prunes the others when a key is written and the
+	//sweeper prunes the keys that are not written. Negative to keep all versions.
+	private int retainedVersions = -1;
+	private byte[] retainedVersionsBytes = new StringRedisSerializer().serialize("-1");
+	private final AtomicLong prunedVersionCount = new AtomicLong();
+	private final AtomicLong prunedVersionBytes = new AtomicLong();
+
+	//When enabled, each version's value expires on its own (HEXPIRE or, on older servers, an expiration time checked by the scripts)
+	//rather than each write extending the time to live of the whole key.
+	private boolean fieldTimeToLive = false;
+
+	//When enabled, a lookup of a key that the bloom filter has never seen is a miss without calling redis, see setBloomFilter(). The
+	//filter is null until it has first been built, the next filter is the one being rebuilt (it is also told about the keys written).
+	private boolean useBloomFilter = false;
+	private long bloomFilterExpectedInsertions;
+	private double bloomFilterFalsePositiveProbability;
+	private long bloomFilterMaximumMemory;
+	private volatile KeyBloomFilter bloomFilter;
+	private volatile KeyBloomFilter nextBloomFilter;
+	private final AtomicLong bloomFilterSkipCount = new AtomicLong();
+
+	//When set, concurrent single key lookups are sent to redis in batches.
+	private volatile GetBatcher getBatcher;
+
+	//When set, calls to redis are skipped while redis is degraded (see RedisCircuitBreaker).
+	private RedisCircuitBreaker circuitBreaker;
+	private final AtomicLong circuitRejectionCount = new AtomicLong();
+
+	//When set, limits the number of operations of this cache that are in flight at once (see setMaxConcurrentOperations()).
+	//A call releases the permit to the semaphore it was acquired from, which may have been replaced since.
+	private volatile Semaphore bulkhead;
+	private volatile int maxConcurrentOperations = 0;
+	private final AtomicLong bulkheadRejectionCount = new AtomicLong();
+
+	//Progress of the cache being cleared, the cleared key count is updated as each batch of keys is removed. Clears may overlap, so
+	//the clears in progress are counted.
+	private final AtomicInteger clearsInProgress = new AtomicInteger();
+	private final AtomicLong clearedKeyCount = new AtomicLong();
+
+	//The counters are updated by the calling threads as well as the I/O threads of the non-blocking operations.
+	private final AtomicLong hitCount = new AtomicLong();
+	private final AtomicLong missCount = new AtomicLong();
+	private final AtomicLong putCount = new AtomicLong();
+	private final AtomicLong negativeHitCount = new AtomicLong();
+	private final AtomicLong promotionCount = new AtomicLong();
+	private final AtomicLong batchPutCount = new AtomicLong();
+	private final AtomicLong batchPutTime = new AtomicLong();
+	private final AtomicLong batchPutFailureCount = new AtomicLong();
 	
 	/**
 	 * Constructs a new <code>UnifiedRedisCache</code> instance.
@@ -106,6 +286,14 @@ public class UnifiedRedisCache implements Cache {
 	 * @param expiration
 	 */
 	public UnifiedRedisCache(String name, byte[] prefix, RedisOperations<? extends Object, ? extends Object> redisOperations, long expiration, String applicationVersion) {
+		this(name, prefix, redisOperations, expiration, applicationVersion, VersionComparator.INTEGER);
+	}
+
+	/**
+	 * @param versionComparator Orders the application versions, the values of older versions are promoted to the current version.
+	 */
+	public UnifiedRedisCache(String name, byte[] prefix, RedisOperations<? extends Object, ? extends Object> redisOperations, long expiration, String applicationVersion,
+			VersionComparator versionComparator) {
 
 		Assert.hasText(name, "CacheName must not be null or empty!");
 		Assert.notNull(redisOperations.getValueSerializer(), "The Redis template must have a value serializer when using this cache.");
@@ -117,243 +305,1839 @@ public class UnifiedRedisCache implements Cache {
 		this.prefix = prefix;
 		this.expiration = expiration;
 
-		Integer version = null;
-		try {
-			version = Integer.parseInt(applicationVersion);
-		} catch (NumberFormatException e) {
-			//ignore exception, we want this to be null
-		}
-		this.applicationVersion = version;
+		this.applicationVersion = versionComparator.isOrdered(applicationVersion) ? applicationVersion : null;
 		versionSerializer = new StringRedisSerializer();
 		currentVersionBytes = versionSerializer.serialize(applicationVersion);
 	}
 
 	@Override
 	public ValueWrapper get(final Object key) {
-		
-		ValueWrapper valueWrapper;
-		final byte[] keyBytes = RedisCacheUtils.computeKey(redisOperations, prefix, key);
 
+		final byte[] keyBytes = computeKey(key);
+
+		if (nearCache != null) {
+			ValueWrapper nearValue = nearCache.get(keyBytes);
+			if (nearValue != null) {
+				hitCount.incrementAndGet();
+				sampleHit(keyBytes);
+				return nearValue;
+			}
+		}
+
+		if (isKnownAbsent(keyBytes)) {
+			return null;
+		}
+
+		final long nearCacheEpoch = getNearCacheEpoch(keyBytes);
+		GetBatcher batcher = getBatcher;
+		if (batcher != null && !batcher.isDispatcherThread()) {
+			//The lookup is sent to redis as part of a batch, the raw value is deserialized (and promoted) on this thread.
+			try {
+				byte[][] versionAndValue = batcher.get(keyBytes);
+				return versionAndValue != null ? toValueWrapper(keyBytes, versionAndValue[0], versionAndValue[1], nearCacheEpoch, this::promote)
+					: toValueWrapper(keyBytes, null, null, nearCacheEpoch, this::promote);
+			} catch (ExecutionException e) {
+				log.trace("Redis exception. Falling back to regular DB access.", e.getCause());
+				return null;
+			} catch (TimeoutException | RejectedExecutionException e) {
+				//The batch did not complete in time (or the batcher was shut down or full), the lookup is made directly instead.
+				log.trace("Batched lookup did not complete. Falling back to a direct lookup.", e);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				return null;
+			}
+		}
+
+		List<byte[]> versionAndValue;
 		try {
-			valueWrapper = redisOperations.execute((RedisCallback<ValueWrapper>)
-				connection -> {
-					byte[] bs = connection.hGet(keyBytes, currentVersionBytes);
-					Object value = redisOperations.getValueSerializer() != null ? redisOperations.getValueSerializer().deserialize(bs) : bs;
-					if (bs == null && applicationVersion != null) {
-						Set<byte[]> hKeys = connection.hKeys(keyBytes);
-						Integer maxVersion = null;
-						for (byte[] hKey : hKeys) {
-							String version = versionSerializer.deserialize(hKey);
-							try {
-								int verNum = Integer.parseInt(version);
-								if (maxVersion == null || verNum > maxVersion) {
-									maxVersion = verNum;
-								}
-							} catch (NumberFormatException e) {
-								// ignore
-							}
-						}
-						if (maxVersion != null) {
-							bs = connection.hGet(keyBytes, versionSerializer.serialize("" + maxVersion));
-							// bs could be null if evicted after the version scan
-							if (bs != null) {
-								value = redisOperations.getValueSerializer() != null ? redisOperations.getValueSerializer().deserialize(bs) : bs;
-								promotionCount++;
-								connection.hSet(keyBytes, currentVersionBytes, bs);
-							}
-						}
-					}
-					return bs == null ? null : new SimpleValueWrapper(value);
-				});
-		} catch (RedisConnectionFailureException|TooManyClusterRedirectionsException|InvalidDataAccessApiUsageException e) {
+			//The script returns the current version's value or, if missing, the value of the newest older version in a single round trip.
+			versionAndValue = execute((RedisCallback<List<byte[]>>)
+				connection -> GET_WITH_PROMOTION_SCRIPT.execute(connection, ReturnType.MULTI, 1, getPromotionKeyAndArguments(keyBytes)));
+		} catch (RedisConnectionFailureException|QueryTimeoutException|TooManyClusterRedirectionsException|InvalidDataAccessApiUsageException e) {
 			log.trace("Redis exception. Falling back to regular DB access.", e);
 			return null;
-		} catch (SerializationFailedException | SerializationException exception) {
-			log.trace("Redis serialization exception: " + exception.getMessage(), exception);
+		}
+		if (versionAndValue == null || versionAndValue.size() < 2) {
+			missCount.incrementAndGet();
 			return null;
 		}
-		if (valueWrapper == null) {
-			missCount++;
+		countScriptPromotion(versionAndValue);
+		return toValueWrapper(keyBytes, versionAndValue.get(0), versionAndValue.get(1), nearCacheEpoch, this::promote);
+	}
+
+	/**
+	 * Deserialize a value read from redis and update the hit and miss counts. Deserialization will fail if the serialVersionUID of the
+	 * cached value does not match the one in memory, this is treated as a miss. A value that was read from another version of the
+	 * application is handed to the promoter once it has been successfully deserialized.
+	 *
+	 * @param keyBytes The redis key.
+	 * @param version The version the value was read from.
+	 * @param valueBytes The serialized value, null if the key was not found.
+	 * @param nearCacheEpoch The invalidation epoch of the key, read before the value was read (see {@link #getNearCacheEpoch(byte[])}).
+	 * @param promoter Promotes the value (key, value) to the current version.
+	 * @return The value or null on a miss.
+	 */
+	ValueWrapper toValueWrapper(byte[] keyBytes, byte[] version, byte[] valueBytes, long nearCacheEpoch, BiConsumer<byte[], byte[]> promoter) {
+		if (valueBytes == null) {
+			missCount.incrementAndGet();
 			return null;
+		}
+		Object value;
+		if (isNullValue(valueBytes)) {
+			//The key is known to have no value (negative caching), this is a hit with a null value.
+			value = null;
+			negativeHitCount.incrementAndGet();
 		} else {
-			hitCount++;
-			return valueWrapper;
+			try {
+				value = deserializeIfNecessary(valueBytes);
+			} catch (SerializationFailedException | SerializationException exception) {
+				log.trace("Redis serialization exception: " + exception.getMessage(), exception);
+				if (!Arrays.equals(version, currentVersionBytes)) {
+					rememberIncompatibleVersion(version, valueBytes, exception);
+				}
+				missCount.incrementAndGet();
+				return null;
+			}
+		}
+		if (!Arrays.equals(version, currentVersionBytes)) {
+			promoter.accept(keyBytes, valueBytes);
 		}
+		if (nearCache != null) {
+			fillNearCache(keyBytes, value, valueBytes, nearCacheEpoch);
+		}
+		hitCount.incrementAndGet();
+		sampleHit(keyBytes);
+		return new SimpleValueWrapper(value);
 	}
 
-	@Override
-	public void put(final Object key, final Object value) {
-		try {
-			final byte[] keyBytes = RedisCacheUtils.computeKey(redisOperations, prefix, key);
-			final byte[] valueBytes = convertToBytesIfNecessary(redisOperations.getValueSerializer(), value);
-
-			redisOperations.execute(new RedisCallback<Object>() {
+	/**
+	 * A value read from an older version failed to deserialize because its type (or a nested type) is incompatible with the current
+	 * version, values of the same root type are no longer read from that version.
+	 */
+	private void rememberIncompatibleVersion(byte[] version, byte[] valueBytes, Exception exception) {
+		if (incompatibleVersions == null || !isIncompatibleType(exception)) {
+			return;
+		}
+		String rootTypeId = IncompatibleVersions.getRootTypeId(valueBytes);
+		if (rootTypeId != null && incompatibleVersions.add(versionSerializer.deserialize(version), rootTypeId)) {
+			log.info("Cache [" + getName() + "] : Values of type [" + rootTypeId + "] from version [" + versionSerializer.deserialize(version)
+				+ "] are incompatible with the current version and will no longer be read.");
+		}
+	}
 
-				@Override
-				public Object doInRedis(RedisConnection connection) throws DataAccessException {
-					connection.hSet(keyBytes, currentVersionBytes, valueBytes);
-					if (expiration > 0) {
-						connection.expire(keyBytes, expiration);
-					}
-					return null;
-				}
-			});
-			putCount++;
-		} catch (RedisConnectionFailureException|TooManyClusterRedirectionsException|InvalidDataAccessApiUsageException e) {
-			log.trace("Redis exception. Cache puts are non-critical.", e);
+	private static boolean isIncompatibleType(Throwable exception) {
+		for (Throwable cause = exception; cause != null; cause = cause.getCause()) {
+			if (cause instanceof CachedSerialiVersionMisMatch || cause instanceof InvalidClassException) {
+				return true;
+			}
 		}
+		return false;
 	}
 
-	/*
-	 * (non-Javadoc)
-	 * @see org.springframework.cache.Cache#putIfAbsent(java.lang.Object, java.lang.Object)
+	/**
+	 * @return The arguments of the get script: the current version, the current time and the time to live of a promoted value (when
+	 * each value has its own time to live), the number of older versions followed by the older versions (when the versions are not
+	 * integers), the number of compatible versions followed by the compatible versions, and then the (version, payload prefix) pairs
+	 * that are known to be incompatible.
 	 */
-	@Override
-	public ValueWrapper putIfAbsent(Object key, final Object value) {
-		//Really dont need this semantic for our use case, we just call the standard put and return the value we are setting.
-		put(key, value);
-		return new SimpleValueWrapper(value);
+	byte[][] getPromotionArguments() {
+		byte[][] olderVersions = versionRegistry != null ? versionRegistry.getOlderVersions() : null;
+		byte[][] compatibleVersions = modelFingerprint != null ? modelFingerprint.getCompatibleVersions() : NO_ARGUMENTS;
+		byte[][] exclusions = incompatibleVersions != null ? incompatibleVersions.getExclusions() : NO_ARGUMENTS;
+		PromotionArguments arguments = promotionArguments;
+		if (arguments == null || arguments.olderVersions != olderVersions || arguments.compatibleVersions != compatibleVersions
+				|| arguments.exclusions != exclusions) {
+			//They are replaced (never modified) when they change, so the arguments are only rebuilt on a change.
+			arguments = new PromotionArguments(olderVersions, compatibleVersions, exclusions);
+			promotionArguments = arguments;
+		}
+		if (!fieldTimeToLive) {
+			return arguments.arguments;
+		}
+		byte[][] timedArguments = arguments.arguments.clone();
+		timedArguments[1] = versionSerializer.serialize(String.valueOf(System.currentTimeMillis()));
+		timedArguments[2] = versionSerializer.serialize(String.valueOf(expiration));
+		return timedArguments;
 	}
 
-	@SuppressWarnings({"unchecked", "rawtypes"})
-	private byte[] convertToBytesIfNecessary(RedisSerializer redisSerializer, Object value) {
+	private final class PromotionArguments {
 
-		if (redisSerializer == null) {
-			if (value instanceof byte[]) {
-				return (byte[]) value;
-			} else {
-				throw new RuntimeException("serializer required");
-			}
-		}
+		private final byte[][] olderVersions;
+		private final byte[][] compatibleVersions;
+		private final byte[][] exclusions;
+		private final byte[][] arguments;
 
-		return redisSerializer.serialize(value);
+		/**
+		 * @param olderVersions The older versions newest first, null if the script orders the (integer) versions itself.
+		 */
+		private PromotionArguments(byte[][] olderVersions, byte[][] compatibleVersions, byte[][] exclusions) {
+			this.olderVersions = olderVersions;
+			this.compatibleVersions = compatibleVersions;
+			this.exclusions = exclusions;
+			byte[][] older = olderVersions != null ? olderVersions : NO_ARGUMENTS;
+			arguments = new byte[5 + older.length + compatibleVersions.length + exclusions.length][];
+			arguments[0] = currentVersionBytes;
+			arguments[1] = FALSE;
+			arguments[2] = FALSE;
+			arguments[3] = versionSerializer.serialize(String.valueOf(olderVersions != null ? olderVersions.length : -1));
+			System.arraycopy(older, 0, arguments, 4, older.length);
+			arguments[4 + older.length] = versionSerializer.serialize(String.valueOf(compatibleVersions.length));
+			System.arraycopy(compatibleVersions, 0, arguments, 5 + older.length, compatibleVersions.length);
+			System.arraycopy(exclusions, 0, arguments, 5 + older.length + compatibleVersions.length, exclusions.length);
+		}
 	}
 
 	/**
-	 * Return the value to which this cache maps the specified key, generically specifying a type that return value will
-	 * be cast to.
-	 *
-	 * @param key
-	 * @param type
-	 * @return
-	 * @see DATAREDIS-243
+	 * The get script returns a third element (the version the value was copied from) when it promoted the value itself.
 	 */
-	@SuppressWarnings("unchecked")
-	@Override
-	public <T> T get(Object key, Class<T> type) {
+	void countScriptPromotion(List<?> versionAndValue) {
+		if (versionAndValue.size() > 2) {
+			promotionCount.incrementAndGet();
+		}
+	}
 
-		ValueWrapper wrapper = get(key);
-		return wrapper == null ? null : (T) wrapper.get();
+	private byte[][] getPromotionKeyAndArguments(byte[] keyBytes) {
+		byte[][] arguments = getPromotionArguments();
+		byte[][] keyAndArguments = new byte[arguments.length + 1][];
+		keyAndArguments[0] = keyBytes;
+		System.arraycopy(arguments, 0, keyAndArguments, 1, arguments.length);
+		return keyAndArguments;
 	}
 
-	/*
-	 * @see  org.springframework.cache.Cache#get(java.lang.Object, java.util.concurrent.Callable)
-	 * introduced in springframework 4.3.0.RC1
+	/**
+	 * Copy a value from an older version of the application into the current version's field. This is only called once the value
+	 * has been successfully deserialized (meaning the serialVersionUIDs match). HSETNX is used so that a value written by the current
+	 * version in the meantime is never overwritten by the older copy. When payloads are deduplicated, the store script only writes a
+	 * reference to the payload that is already stored.
+	 */
+	private void promote(final byte[] keyBytes, final byte[] valueBytes) {
+		try {
+			Object promoted = execute((RedisCallback<Object>) connection -> usesStoreScript()
+				? STORE_VALUE_SCRIPT.execute(connection, ReturnType.MULTI, 1, getStoreKeyAndArguments(keyBytes, valueBytes, STORE_PROMOTE))
+				: connection.hSetNX(keyBytes, currentVersionBytes, valueBytes));
+			if (storeCompleted(promoted)) {
+				promotionCount.incrementAndGet();
+			}
+		} catch (RedisConnectionFailureException|QueryTimeoutException|TooManyClusterRedirectionsException|InvalidDataAccessApiUsageException e) {
+			log.trace("Redis exception. Promotion of the cached value is non-critical.", e);
+		}
+	}
+
+	/**
+	 * Return the values for a collection of keys. The current version's value for each key is fetched in a single pipeline and any
+	 * keys that were missed are then sent through the promotion script as a second pipeline. The raw values are only deserialized once
+	 * the pipelines have completed, on the calling thread rather than while holding the connection. Values that were successfully
+	 * deserialized from an older version are promoted to the current version with a final pipeline.
 	 */
-	@SuppressWarnings("unchecked")
 	@Override
-	public <T> T get(final Object key, final Callable<T> valueLoader) {
+	public <K> Map<K, ValueWrapper> getAll(Collection<K> keys) {
 
-		//The recommendation is to attempt to implement this method as an atomic operation, this is not really used in our implementation
-		//and this cache takes a naive approach to this contract, it is not guaranteed to be atomic.
-		ValueWrapper val = get(key);
-		if (val != null) {
-			return (T) val.get();
+		Map<K, ValueWrapper> results = new HashMap<>();
+		if (keys.isEmpty()) {
+			return results;
 		}
 
-		T value;
-		try {
-			value = valueLoader.call();
-			put(key, value);
-			return value;
-		} catch (Exception exception) {
-			throw new ValueRetrievalException(key, valueLoader, exception);
+		final List<K> keyList = new ArrayList<>(keys.size());
+		final List<byte[]> keyBytesList = new ArrayList<>(keys.size());
+		for (K key : keys) {
+			byte[] keyBytes = computeKey(key);
+			ValueWrapper nearValue = nearCache != null ? nearCache.get(keyBytes) : null;
+			if (nearValue != null) {
+				results.put(key, nearValue);
+				hitCount.incrementAndGet();
+				sampleHit(keyBytes);
+			} else if (!isKnownAbsent(keyBytes)) {
+				keyList.add(key);
+				keyBytesList.add(keyBytes);
+			}
+		}
+		if (!keyList.isEmpty()) {
+			fetchAll(keyList, keyBytesList, results);
 		}
+		return results;
 	}
 
-	/*
-	 * (non-Javadoc)
-	 * @see org.springframework.cache.Cache#evict(java.lang.Object)
+	/**
+	 * Fetch the values of a batch of keys from redis (bypassing the near cache) and add any hits to the results.
 	 */
-	@Override
-	public void evict(final Object key) {
+	private <K> void fetchAll(final List<K> keyList, final List<byte[]> keyBytesList, final Map<K, ValueWrapper> results) {
+		byte[][] versions = new byte[keyList.size()][];
+		byte[][] values = new byte[keyList.size()][];
+		long[] epochs = getNearCacheEpochs(keyBytesList);
+
+		try {
+			fetchValues(keyBytesList, versions, values);
+		} catch (RedisConnectionFailureException|QueryTimeoutException|TooManyClusterRedirectionsException|InvalidDataAccessApiUsageException|RedisPipelineException e) {
+			log.trace("Redis exception. Falling back to regular DB access.", e);
+			return;
+		}
 
-		redisOperations.execute(new RedisCallback<Object>() {
+		List<byte[][]> promotions = new ArrayList<>();
+		for (int index = 0; index < keyList.size(); index++) {
+			ValueWrapper valueWrapper = toValueWrapper(keyBytesList.get(index), versions[index], values[index], epochs[index],
+				(keyBytes, valueBytes) -> promotions.add(new byte[][] {keyBytes, valueBytes}));
+			if (valueWrapper != null) {
+				results.put(keyList.get(index), valueWrapper);
+			}
+		}
+		if (!promotions.isEmpty()) {
+			promoteAll(promotions);
+		}
+	}
 
-			@Override
-			public Object doInRedis(RedisConnection connection) throws DataAccessException {
-				final byte[] keyBytes = RedisCacheUtils.computeKey(redisOperations, prefix, key);
-				connection.del(keyBytes);
+	/**
+	 * Fetch the raw version and value of a batch of keys, the value of a key that was not found is left null. The current version's
+	 * values are fetched in a single pipeline and any misses are then sent through the promotion script as a second pipeline.
+	 */
+	private void fetchValues(final List<byte[]> keyBytesList, final byte[][] versions, final byte[][] values) {
+		List<Integer> misses = new ArrayList<>();
+		if (readsThroughScript()) {
+			//The version fields hold references to the payloads or expired values, only the get script resolves them.
+			for (int index = 0; index < keyBytesList.size(); index++) {
+				misses.add(index);
+			}
+		} else {
+			List<Object> currentValues = executePipelined((RedisCallback<Object>) connection -> {
+				for (byte[] keyBytes : keyBytesList) {
+					connection.hGet(keyBytes, currentVersionBytes);
+				}
 				return null;
+			}, null);
+
+			for (int index = 0; index < keyBytesList.size(); index++) {
+				byte[] currentValue = (byte[]) currentValues.get(index);
+				if (currentValue != null && !isReference(currentValue)) {
+					versions[index] = currentVersionBytes;
+					values[index] = currentValue;
+				} else if (currentValue != null || applicationVersion != null) {
+					misses.add(index);
+				}
 			}
-		});
+		}
 
+		if (!misses.isEmpty()) {
+			List<byte[][]> scriptArguments = new ArrayList<>(misses.size());
+			for (Integer index : misses) {
+				scriptArguments.add(getPromotionKeyAndArguments(keyBytesList.get(index)));
+			}
+			List<Object> fallbackValues = callRedis(() -> GET_WITH_PROMOTION_SCRIPT.executePipelined(redisOperations, ReturnType.MULTI, 1, scriptArguments));
+			for (int fallback = 0; fallback < misses.size(); fallback++) {
+				@SuppressWarnings("unchecked")
+				List<byte[]> versionAndValue = (List<byte[]>) fallbackValues.get(fallback);
+				if (versionAndValue != null && versionAndValue.size() >= 2) {
+					countScriptPromotion(versionAndValue);
+					versions[misses.get(fallback)] = versionAndValue.get(0);
+					values[misses.get(fallback)] = versionAndValue.get(1);
+				}
+			}
+		}
 	}
 
-	/*
-	 * (non-Javadoc)
-	 * @see org.springframework.cache.Cache#clear()
+	/**
+	 * The fetch function of the get batcher, only the round trips are made on the dispatcher thread. The raw values are deserialized
+	 * by the threads that made the lookups.
 	 */
-	@Override
-	public void clear() {
-		redisOperations.execute(new RedisCacheCleanByPrefixCallback(cacheMetadata));
+	private List<byte[][]> fetchBatch(List<byte[]> keyBytesList) {
+		byte[][] versions = new byte[keyBytesList.size()][];
+		byte[][] values = new byte[keyBytesList.size()][];
+		fetchValues(keyBytesList, versions, values);
+		List<byte[][]> results = new ArrayList<>(keyBytesList.size());
+		for (int index = 0; index < keyBytesList.size(); index++) {
+			results.add(values[index] != null ? new byte[][] {versions[index], values[index]} : null);
+		}
+		return results;
 	}
 
-	/*
-	 * (non-Javadoc)
-	 * @see org.springframework.cache.Cache#getName()
+	/**
+	 * Pipelined version of {@link #promote(byte[], byte[])}, each promotion is a pair of key and value.
 	 */
+	private void promoteAll(final List<byte[][]> promotions) {
+		try {
+			List<Object> promoted;
+			if (usesStoreScript()) {
+				List<byte[][]> scriptArguments = new ArrayList<>(promotions.size());
+				for (byte[][] promotion : promotions) {
+					scriptArguments.add(getStoreKeyAndArguments(promotion[0], promotion[1], STORE_PROMOTE));
+				}
+				promoted = callRedis(() -> STORE_VALUE_SCRIPT.executePipelined(redisOperations, ReturnType.MULTI, 1, scriptArguments));
+			} else {
+				promoted = executePipelined((RedisCallback<Object>) connection -> {
+					for (byte[][] promotion : promotions) {
+						connection.hSetNX(promotion[0], currentVersionBytes, promotion[1]);
+					}
+					return null;
+				}, null);
+			}
+			for (Object result : promoted) {
+				if (storeCompleted(result)) {
+					promotionCount.incrementAndGet();
+				}
+			}
+		} catch (RedisConnectionFailureException|QueryTimeoutException|TooManyClusterRedirectionsException|InvalidDataAccessApiUsageException|RedisPipelineException e) {
+			log.trace("Redis exception. Promotion of the cached values is non-critical.", e);
+		}
+	}
+
 	@Override
-	public String getName() {
-		return cacheMetadata.getCacheName();
+	public void put(final Object key, final Object value) {
+		store(key, value, STORE_PUT);
 	}
 
 	/**
-	 * {@inheritDoc} This implementation simply returns the RedisTemplate used for configuring the cache, giving access to
-	 * the underlying Redis store.
+	 * Put the value of a key, the other cached versions of the key are atomically dropped as the value is set (there is no window in
+	 * which the key does not exist).
 	 */
 	@Override
-	public Object getNativeCache() {
-		return redisOperations;
+	public void replace(Object key, Object value) {
+		store(key, value, STORE_REPLACE);
 	}
 
 	/**
-	 * Metadata required to maintain {@link RedisCache}. Keeps track of additional data structures required for processing
-	 * cache operations.
+	 * Write the current version's value of a key with the store script, the value and the expiration are set in a single round trip.
 	 *
-	 * @author Christoph Strobl
-	 * @since 1.5
+	 * @return The value the current version already has if the mode is "absent" and the value was not set, otherwise null.
 	 */
-	static class RedisCacheMetadata {
+	private ValueWrapper store(Object key, Object value, byte[] mode) {
+		final byte[] keyBytes = computeKey(key);
+		try {
+			final byte[] valueBytes = serializeValue(value);
 
-		private final String cacheName;
-		private final byte[] keyPrefix;
-		private long defaultExpiration = 0;
+			Object result = execute((RedisCallback<Object>) connection -> STORE_VALUE_SCRIPT.execute(connection, ReturnType.MULTI, 1,
+				getStoreKeyAndArguments(keyBytes, valueBytes, mode)));
+			if (storeCompleted(result)) {
+				putCompleted(keyBytes, value, valueBytes);
+				return null;
+			}
+			byte[] existingBytes = getExistingValue(result);
+			return existingBytes != null ? toExistingValueWrapper(existingBytes) : null;
+		} catch (RedisConnectionFailureException|QueryTimeoutException|TooManyClusterRedirectionsException|InvalidDataAccessApiUsageException e) {
+			log.trace("Redis exception. Cache puts are non-critical.", e);
+			putFailed(keyBytes);
+			return null;
+		}
+	}
 
-		/**
-		 * @param cacheName must not be {@literal null} or empty.
-		 * @param keyPrefix can be {@literal null}.
-		 */
-		public RedisCacheMetadata(String cacheName, byte[] keyPrefix) {
+	/**
+	 * Deserialize the value the current version already has, as returned by a write. This is not a read of the cache, so neither the
+	 * hit/miss counts, the hot key ranking nor the near cache are updated.
+	 *
+	 * @return The existing value or null if it can not be deserialized.
+	 */
+	private ValueWrapper toExistingValueWrapper(byte[] existingBytes) {
+		if (isNullValue(existingBytes)) {
+			return new SimpleValueWrapper(null);
+		}
+		try {
+			return new SimpleValueWrapper(deserializeIfNecessary(existingBytes));
+		} catch (SerializationFailedException | SerializationException exception) {
+			log.trace("Redis serialization exception: " + exception.getMessage(), exception);
+			return null;
+		}
+	}
 
-			Assert.hasText(cacheName, "CacheName must not be null or empty!");
-			this.cacheName = cacheName;
-			this.keyPrefix = keyPrefix;
+	/**
+	 * Put a map of key/values into the cache. The entries are sent to redis in pipelined batches (of at most "batchSize" entries),
+	 * each entry is written by a call to the store script. If evict is true, each key is atomically replaced with a hash that only
+	 * contains the current version's value.
+	 *
+	 * The time spent on each batch is tracked and entries that fail to be written are counted rather than aborting the remaining
+	 * batches, cache puts are non-critical.
+	 */
+	@Override
+	public <K, V> void putAll(Map<K, V> entries, boolean evict) {
 
+		List<byte[][]> batch = new ArrayList<>(Math.min(batchSize, entries.size()));
+		for (Map.Entry<K, V> entry : entries.entrySet()) {
+			try {
+				batch.add(new byte[][] {
+					computeKey(entry.getKey()),
+					serializeValue(entry.getValue())
+				});
+			} catch (SerializationFailedException | SerializationException | IllegalArgumentException exception) {
+				//A value that cannot be serialized (or a null value the cache does not allow) only fails its own entry.
+				log.trace("Redis serialization exception: " + exception.getMessage(), exception);
+				batchPutFailureCount.incrementAndGet();
+				continue;
+			}
+			if (batch.size() >= batchSize) {
+				putBatch(batch, evict);
+				batch.clear();
+			}
 		}
-
-		/**
-		 * @return true if the {@link RedisCache} uses a prefix for key ranges.
-		 */
-		public boolean usesKeyPrefix() {
-			return (keyPrefix != null && keyPrefix.length > 0);
+		if (!batch.isEmpty()) {
+			putBatch(batch, evict);
 		}
+	}
 
-		/**
-		 * Get the binary representation of the key prefix.
-		 *
-		 * @return never {@literal null}.
-		 */
+	private void putBatch(final List<byte[][]> batch, final boolean evict) {
+
+		long start = System.nanoTime();
+		int failures = 0;
+		boolean skipped = false;
+		try {
+			List<byte[][]> scriptArguments = new ArrayList<>(batch.size());
+			for (byte[][] entry : batch) {
+				scriptArguments.add(getStoreKeyAndArguments(entry[0], entry[1], evict ? STORE_REPLACE : STORE_PUT));
+			}
+			for (Object result : callRedis(() -> STORE_VALUE_SCRIPT.executePipelined(redisOperations, ReturnType.MULTI, 1, scriptArguments))) {
+				storeCompleted(result);
+			}
+		} catch (RedisPipelineException e) {
+			//Some of the scripts in the pipeline failed, there is one script per entry.
+			for (Object result : e.getPipelineResult()) {
+				if (result instanceof Exception) {
+					failures++;
+				}
+			}
+			log.trace("Redis exception. Cache puts are non-critical.", e);
+		} catch (RedisConnectionFailureException|QueryTimeoutException|TooManyClusterRedirectionsException|InvalidDataAccessApiUsageException e) {
+			failures = batch.size();
+			skipped = isSkipped(e);
+			log.trace("Redis exception. Cache puts are non-critical.", e);
+		}
+		long elapsed = System.nanoTime() - start;
+
+		List<byte[]> keys = new ArrayList<>(batch.size());
+		for (byte[][] entry : batch) {
+			keys.add(entry[0]);
+			//An entry that failed may still have been written.
+			rememberKey(entry[0]);
+		}
+		invalidateNearCaches(keys, !skipped);
+
+		batchPutCount.incrementAndGet();
+		batchPutTime.addAndGet(elapsed);
+		batchPutFailureCount.addAndGet(failures);
+		putCount.addAndGet(batch.size() - failures);
+		if (log.isDebugEnabled()) {
+			log.debug("Cache [" + getName() + "] : Put a batch of [" + batch.size() + "] entries in [" + TimeUnit.NANOSECONDS.toMillis(elapsed)
+				+ "ms], failures [" + failures + "].");
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see org.springframework.cache.Cache#putIfAbsent(java.lang.Object, java.lang.Object)
+	 */
+	@Override
+	public ValueWrapper putIfAbsent(Object key, final Object value) {
+		//Like HSETNX, the value is only set if the current version has no value. Values of the other versions are ignored.
+		return store(key, value, STORE_PUT_IF_ABSENT);
+	}
+
+	/**
+	 * Update the put count and the near caches once a single value has been written to redis.
+	 */
+	void putCompleted(byte[] keyBytes, Object value, byte[] valueBytes) {
+		putCount.incrementAndGet();
+		rememberKey(keyBytes);
+		if (nearCache != null) {
+			//The reads of the key that are in flight may return the previous value, they no longer fill the near cache.
+			nearCacheEpochs.incrementAndGet(getNearCacheStripe(keyBytes));
+			nearCache.put(keyBytes, value, value != null ? valueBytes : null);
+			nearCacheInvalidator.publishEvict(this, Collections.singletonList(keyBytes));
+		}
+	}
+
+	/**
+	 * The value of the key may or may not have been written to redis, the key is dropped from the near cache.
+	 */
+	void putFailed(byte[] keyBytes) {
+		rememberKey(keyBytes);
+		if (nearCache != null) {
+			invalidateNearCache(keyBytes);
+		}
+	}
+
+	/**
+	 * @return true (counted as a miss) if the bloom filter shows the key has never been written, so redis does not need to be called.
+	 */
+	boolean isKnownAbsent(byte[] keyBytes) {
+		KeyBloomFilter filter = bloomFilter;
+		if (filter == null || filter.mightContain(keyBytes)) {
+			return false;
+		}
+		missCount.incrementAndGet();
+		bloomFilterSkipCount.incrementAndGet();
+		return true;
+	}
+
+	/**
+	 * Tell the bloom filter that a key has been written, this must be called once the key has been written to redis. The filter that
+	 * is being rebuilt is told first: if it is not yet being rebuilt, the rebuild's scan starts after the key was written and will find
+	 * it, if it has been swapped in since, the current filter is the rebuilt one.
+	 */
+	private void rememberKey(byte[] keyBytes) {
+		KeyBloomFilter next = nextBloomFilter;
+		if (next != null) {
+			next.put(keyBytes);
+		}
+		KeyBloomFilter current = bloomFilter;
+		if (current != null && current != next) {
+			current.put(keyBytes);
+		}
+	}
+
+	/**
+	 * Rebuild the bloom filter from the keys of this cache that are in redis, the filter is then swapped in. Keys that have been evicted
+	 * (or have expired) are only dropped from the filter by a rebuild and keys written by other instances are only added to the filter
+	 * by a rebuild. A failed rebuild keeps the current filter.
+	 */
+	public void rebuildBloomFilter() {
+		if (!useBloomFilter) {
+			return;
+		}
+		final KeyBloomFilter next = new KeyBloomFilter(bloomFilterExpectedInsertions, bloomFilterFalsePositiveProbability, bloomFilterMaximumMemory);
+		final byte[] keyPrefix = generation != null ? generation.getPrefix() : prefix;
+		nextBloomFilter = next;
+		try {
+			long start = System.currentTimeMillis();
+			Long keys = callRedis(() -> redisOperations.execute(new ScanByPrefixCallback(keyPrefix, (connection, batch) -> {
+				for (byte[] key : batch) {
+					next.put(key);
+				}
+				return batch.size();
+			})), false);
+			bloomFilter = next;
+			if (log.isDebugEnabled()) {
+				log.debug("Cache [" + getName() + "] : Rebuilt the bloom filter from [" + keys + "] keys in [" + (System.currentTimeMillis() - start)
+					+ "ms], expected false positive probability [" + next.getExpectedFalsePositiveProbability() + "].");
+			}
+		} catch (RedisConnectionFailureException|QueryTimeoutException|TooManyClusterRedirectionsException e) {
+			warnUnlessCircuitOpen("Redis exception. Unable to rebuild the bloom filter of cache [" + getName() + "].", e);
+		} finally {
+			nextBloomFilter = null;
+		}
+	}
+
+	/**
+	 * Prune the values of the stale (or expired) versions from every key of the cache, this is run periodically so that keys that are
+	 * no longer written (the store script prunes the keys that are written) do not keep the values of old versions until they expire.
+	 */
+	public void sweepVersions() {
+		if ((retainedVersions < 0 && !fieldTimeToLive) || applicationVersion == null) {
+			return;
+		}
+		final byte[] keyPrefix = generation != null ? generation.getPrefix() : prefix;
+		final long prunedBefore = prunedVersionCount.get();
+		try {
+			long start = System.currentTimeMillis();
+			Long keys = callRedis(() -> redisOperations.execute(new ScanByPrefixCallback(keyPrefix, (connection, batch) -> {
+				List<byte[][]> scriptArguments = new ArrayList<>(batch.size());
+				for (byte[] key : batch) {
+					//Leases and the registries of the cache manager share the key prefix, they are not cache keys.
+					if (!isLeaseKey(key) && !isRegistryKey(keyPrefix, key)) {
+						scriptArguments.add(getStoreKeyAndArguments(key, NO_VALUE, STORE_PRUNE));
+					}
+				}
+				if (!scriptArguments.isEmpty()) {
+					for (Object result : STORE_VALUE_SCRIPT.executePipelined(redisOperations, ReturnType.MULTI, 1, scriptArguments)) {
+						storeCompleted(result);
+					}
+				}
+				return scriptArguments.size();
+			})), false);
+			if (log.isDebugEnabled()) {
+				log.debug("Cache [" + getName() + "] : Swept [" + keys + "] keys in [" + (System.currentTimeMillis() - start)
+					+ "ms], pruned [" + (prunedVersionCount.get() - prunedBefore) + "] stale versions.");
+			}
+		} catch (RedisConnectionFailureException|QueryTimeoutException|TooManyClusterRedirectionsException|RedisPipelineException e) {
+			warnUnlessCircuitOpen("Redis exception. Unable to sweep the stale versions of cache [" + getName() + "].", e);
+		}
+	}
+
+	private static boolean isLeaseKey(byte[] key) {
+		if (key.length < LEASE_SUFFIX.length) {
+			return false;
+		}
+		for (int index = 0; index < LEASE_SUFFIX.length; index++) {
+			if (key[key.length - LEASE_SUFFIX.length + index] != LEASE_SUFFIX[index]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * @param keyPrefix The prefix the key was found under.
+	 * @return true if the key is a registry of the cache manager (see {@link #REGISTRY_MARKER}), even of a feature this instance does
+	 *         not use.
+	 */
+	private static boolean isRegistryKey(byte[] keyPrefix, byte[] key) {
+		return key.length > keyPrefix.length && key[keyPrefix.length] == REGISTRY_MARKER.charAt(0);
+	}
+
+	private void sampleHit(byte[] keyBytes) {
+		if (hotKeys != null && Thread.currentThread() != prewarmingThread) {
+			hotKeys.hit(keyBytes);
+		}
+	}
+
+	/**
+	 * Add the hits sampled since the last flush to the hot key ranking, this is run periodically.
+	 */
+	public void flushHotKeys() {
+		final byte[][] arguments = hotKeys != null ? hotKeys.drainSampledHits() : null;
+		if (arguments == null) {
+			return;
+		}
+		byte[][] keyAndArguments = new byte[arguments.length + 1][];
+		keyAndArguments[0] = hotKeys.getRankingKey();
+		System.arraycopy(arguments, 0, keyAndArguments, 1, arguments.length);
+		try {
+			execute((RedisCallback<Long>) connection -> RECORD_HOT_KEYS_SCRIPT.execute(connection, ReturnType.INTEGER, 1, keyAndArguments));
+		} catch (RedisConnectionFailureException|QueryTimeoutException|TooManyClusterRedirectionsException|InvalidDataAccessApiUsageException e) {
+			log.trace("Redis exception. The hot key ranking is non-critical.", e);
+		}
+	}
+
+	/**
+	 * Drop the hot key ranking once the cache has moved to a new generation, the keys it holds can no longer be reached. Until they
+	 * refresh their generation, the other instances may still add keys of the previous generation, these are skipped by prewarm().
+	 */
+	private void resetHotKeys() {
+		if (hotKeys == null) {
+			return;
+		}
+		hotKeys.clearSampledHits();
+		try {
+			execute((RedisCallback<Long>) connection -> connection.del(hotKeys.getRankingKey()));
+		} catch (RedisConnectionFailureException|QueryTimeoutException|TooManyClusterRedirectionsException|InvalidDataAccessApiUsageException e) {
+			log.trace("Redis exception. The hot key ranking is non-critical.", e);
+		}
+	}
+
+	/**
+	 * Fetch the top keys of the hot key ranking in pipelined batches (of at most "batchSize" keys), the values of older versions are
+	 * promoted to the current version and the near cache is filled. This is called once as a new version starts, before it takes
+	 * traffic.
+	 *
+	 * @param keys The maximum number of keys fetched.
+	 * @param timeout No more batches are fetched once the timeout has passed.
+	 * @return The number of keys that had a value.
+	 */
+	public int prewarm(int keys, Duration timeout) {
+		if (hotKeys == null || keys <= 0) {
+			return 0;
+		}
+		long deadline = System.nanoTime() + timeout.toNanos();
+		List<byte[]> topKeys = new ArrayList<>(keys);
+		//Only the keys of the current generation can be reached.
+		final byte[] keyPrefix = generation != null ? generation.getPrefix() : null;
+		try {
+			//One more than asked for, the ranking also holds the landmark time of its decay.
+			Set<byte[]> ranking = execute((RedisCallback<Set<byte[]>>) connection -> connection.zRevRange(hotKeys.getRankingKey(), 0, keys));
+			for (byte[] member : ranking) {
+				if (HotKeys.isCacheKey(member) && (keyPrefix == null || startsWith(member, keyPrefix)) && topKeys.size() < keys) {
+					topKeys.add(member);
+				}
+			}
+		} catch (RedisConnectionFailureException|QueryTimeoutException|TooManyClusterRedirectionsException|InvalidDataAccessApiUsageException e) {
+			warnUnlessCircuitOpen("Redis exception. Unable to read the hot keys of cache [" + getName() + "].", e);
+			return 0;
+		}
+
+		Map<byte[], ValueWrapper> results = new HashMap<>();
+		//The fetches are not sampled as hits, or each new version would reinforce the ranking it pre-warmed from.
+		prewarmingThread = Thread.currentThread();
+		try {
+			for (int start = 0; start < topKeys.size() && System.nanoTime() < deadline; start += batchSize) {
+				List<byte[]> batch = topKeys.subList(start, Math.min(start + batchSize, topKeys.size()));
+				fetchAll(batch, batch, results);
+			}
+		} finally {
+			prewarmingThread = null;
+		}
+		return results.size();
+	}
+
+	/**
+	 * @return The value from the near cache (counted as a hit) or null if there is no near cache or the key is not in it.
+	 */
+	ValueWrapper getFromNearCache(byte[] keyBytes) {
+		ValueWrapper nearValue = nearCache != null ? nearCache.get(keyBytes) : null;
+		if (nearValue != null) {
+			hitCount.incrementAndGet();
+			sampleHit(keyBytes);
+		}
+		return nearValue;
+	}
+
+	void promotionCompleted() {
+		promotionCount.incrementAndGet();
+	}
+
+	byte[] computeKey(Object key) {
+		return RedisCacheUtils.computeKey(redisOperations, generation != null ? generation.getPrefix() : prefix, key);
+	}
+
+	/**
+	 * Serialize a value to be written to redis, a null value is written as the null sentinel if the cache allows null values.
+	 *
+	 * @throws IllegalArgumentException If the value is null and the cache does not allow null values.
+	 */
+	byte[] serializeValue(Object value) {
+		if (value == null) {
+			if (!cacheNullValues) {
+				throw new IllegalArgumentException(String.format("Cache '%s' does not allow 'null' values. Avoid storing null via "
+					+ "'@Cacheable(unless=\"#result == null\")' or enable spring.cache.redis.cache-null-values.", getName()));
+			}
+			return NULL_VALUE;
+		}
+		return convertToBytesIfNecessary(redisOperations.getValueSerializer(), value);
+	}
+
+	static boolean isNullValue(byte[] valueBytes) {
+		return Arrays.equals(valueBytes, NULL_VALUE);
+	}
+
+	/**
+	 * @return true if a version field holds a reference to a deduplicated payload, only the get script resolves the reference.
+	 */
+	static boolean isReference(byte[] valueBytes) {
+		return valueBytes != null && valueBytes.length > 0 && valueBytes[0] == REFERENCE_MARKER;
+	}
+
+	/**
+	 * @return true if values are promoted by the store script (rather than HSETNX), to deduplicate their payloads, prune the stale
+	 * versions or give each value its own time to live. Values are always put by the store script.
+	 */
+	boolean usesStoreScript() {
+		return deduplicatePayloads || retainedVersions >= 0 || fieldTimeToLive;
+	}
+
+	/**
+	 * @return true if the current version's value can only be read by the get script, because the version fields may hold references
+	 * to deduplicated payloads or values that have expired.
+	 */
+	private boolean readsThroughScript() {
+		return deduplicatePayloads || fieldTimeToLive;
+	}
+
+	/**
+	 * @param mode The mode of the store script: put, replace (drop the other versions), promote (only if the current version has no
+	 * value yet) or prune (only prune the stale versions).
+	 * @return The arguments of the store script, see store-value.lua.
+	 */
+	byte[][] getStoreArguments(byte[] valueBytes, byte[] mode) {
+		//A promotion leaves the expiration of the key unchanged, as does HSETNX, unless the promoted value has its own time to live.
+		byte[] expirationBytes = mode == STORE_PRUNE || (mode == STORE_PROMOTE && !fieldTimeToLive) ? FALSE
+			: versionSerializer.serialize(String.valueOf(getExpiration(valueBytes)));
+		byte[] nowBytes = fieldTimeToLive ? versionSerializer.serialize(String.valueOf(System.currentTimeMillis())) : FALSE;
+		return new byte[][] {currentVersionBytes, valueBytes, expirationBytes, mode, deduplicatePayloads ? TRUE : FALSE, retainedVersionsBytes,
+			nowBytes};
+	}
+
+	private byte[][] getStoreKeyAndArguments(byte[] keyBytes, byte[] valueBytes, byte[] mode) {
+		byte[][] arguments = getStoreArguments(valueBytes, mode);
+		byte[][] keyAndArguments = new byte[arguments.length + 1][];
+		keyAndArguments[0] = keyBytes;
+		System.arraycopy(arguments, 0, keyAndArguments, 1, arguments.length);
+		return keyAndArguments;
+	}
+
+	/**
+	 * Count the stale versions pruned by the store script.
+	 *
+	 * @param result The result of the store script, or of HSETNX.
+	 * @return true if the current version's value was set.
+	 */
+	boolean storeCompleted(Object result) {
+		if (!(result instanceof List)) {
+			return Boolean.TRUE.equals(result);
+		}
+		List<?> counts = (List<?>) result;
+		if (counts.size() < 3) {
+			return false;
+		}
+		prunedVersionCount.addAndGet(((Number) counts.get(1)).longValue());
+		prunedVersionBytes.addAndGet(((Number) counts.get(2)).longValue());
+		return ((Number) counts.get(0)).longValue() == 1;
+	}
+
+	/**
+	 * @param result The result of the store script.
+	 * @return The value the current version already had when the store script was called in "absent" mode and did not set the value.
+	 */
+	static byte[] getExistingValue(Object result) {
+		if (result instanceof List && ((List<?>) result).size() > 3 && ((List<?>) result).get(3) instanceof byte[]) {
+			return (byte[]) ((List<?>) result).get(3);
+		}
+		return null;
+	}
+
+	byte[] getCurrentVersionBytes() {
+		return currentVersionBytes;
+	}
+
+	/**
+	 * @param valueBytes The serialized value that is written.
+	 * @return The time to live (in seconds) of the key once the value has been written, null values have their own (shorter) time to
+	 * live.
+	 */
+	long getExpiration(byte[] valueBytes) {
+		if (nullValueExpiration <= 0 || !isNullValue(valueBytes)) {
+			return expiration;
+		}
+		return expiration > 0 ? Math.min(expiration, nullValueExpiration) : nullValueExpiration;
+	}
+
+	private Object deserializeIfNecessary(byte[] bytes) {
+		return redisOperations.getValueSerializer() != null ? redisOperations.getValueSerializer().deserialize(bytes) : bytes;
+	}
+
+	@SuppressWarnings({"unchecked", "rawtypes"})
+	private byte[] convertToBytesIfNecessary(RedisSerializer redisSerializer, Object value) {
+
+		if (redisSerializer == null) {
+			if (value instanceof byte[]) {
+				return (byte[]) value;
+			} else {
+				throw new RuntimeException("serializer required");
+			}
+		}
+
+		return redisSerializer.serialize(value);
+	}
+
+	/**
+	 * Return the value to which this cache maps the specified key, generically specifying a type that return value will
+	 * be cast to.
+	 *
+	 * @param key
+	 * @param type
+	 * @return
+	 * @see DATAREDIS-243
+	 */
+	@SuppressWarnings("unchecked")
+	@Override
+	public <T> T get(Object key, Class<T> type) {
+
+		ValueWrapper wrapper = get(key);
+		return wrapper == null ? null : (T) wrapper.get();
+	}
+
+	/*
+	 * @see  org.springframework.cache.Cache#get(java.lang.Object, java.util.concurrent.Callable)
+	 * introduced in springframework 4.3.0.RC1
+	 */
+	@SuppressWarnings("unchecked")
+	@Override
+	public <T> T get(final Object key, final Callable<T> valueLoader) {
+
+		ValueWrapper val = get(key);
+		if (val != null) {
+			return (T) val.get();
+		}
+
+		//Loads are coalesced within this instance: the first caller to miss runs the value loader and any concurrent callers for the
+		//same key wait (for up to the load timeout) and share its result or its exception. This is not atomic across instances.
+		ByteBuffer loadKey = ByteBuffer.wrap(computeKey(key));
+		CompletableFuture<Object> load = new CompletableFuture<>();
+		CompletableFuture<Object> inFlightLoad = inFlightLoads.putIfAbsent(loadKey, load);
+		if (inFlightLoad != null) {
+			coalescedLoadCount.incrementAndGet();
+			try {
+				return (T) inFlightLoad.get(loadTimeout.toNanos(), TimeUnit.NANOSECONDS);
+			} catch (ExecutionException exception) {
+				Throwable cause = exception.getCause();
+				if (cause instanceof RuntimeException) {
+					throw (RuntimeException) cause;
+				}
+				if (cause instanceof Error) {
+					throw (Error) cause;
+				}
+				throw new ValueRetrievalException(key, valueLoader, cause);
+			} catch (TimeoutException exception) {
+				log.debug("Timed out waiting for another thread to load key [" + key + "] in cache [" + getName() + "], loading the value instead.");
+				loadTimeoutCount.incrementAndGet();
+				return loadValue(key, valueLoader);
+			} catch (InterruptedException exception) {
+				Thread.currentThread().interrupt();
+				throw new ValueRetrievalException(key, valueLoader, exception);
+			}
+		}
+
+		try {
+			//The previous load of the key may have completed between the lookup above and this load taking its place.
+			val = get(key);
+			if (val != null) {
+				load.complete(val.get());
+				return (T) val.get();
+			}
+			T value = useLoadLeases ? loadValueWithLease(key, loadKey.array(), valueLoader) : loadValue(key, valueLoader);
+			load.complete(value);
+			return value;
+		} catch (Throwable exception) {
+			//Whatever the failure (of the loader or of the put), the waiting callers must not be left waiting.
+			load.completeExceptionally(exception);
+			throw exception;
+		} finally {
+			inFlightLoads.remove(loadKey, load);
+		}
+	}
+
+	/**
+	 * Load a value while holding a cluster wide lease on the key, so that only one instance runs the value loader for a missing key. The
+	 * lease is a separate key (SET NX PX) rather than a field of the cached hash, this way the lease expires on its own if the holder
+	 * dies without affecting the time to live of the cached value. An instance that does not get the lease polls until the lease is
+	 * released and then reads the value written by the lease holder. If the lease holder did not write a value (or the wait exceeds
+	 * the load timeout), the instance loads the value itself.
+	 */
+	@SuppressWarnings("unchecked")
+	private <T> T loadValueWithLease(final Object key, final byte[] keyBytes, final Callable<T> valueLoader) {
+		final byte[] leaseKey = concat(keyBytes, LEASE_SUFFIX);
+		final byte[] token = versionSerializer.serialize(UUID.randomUUID().toString());
+
+		Boolean acquired;
+		try {
+			acquired = execute((RedisCallback<Boolean>) connection ->
+				connection.set(leaseKey, token, Expiration.from(loadLeaseTime.toMillis(), TimeUnit.MILLISECONDS), SetOption.ifAbsent()));
+		} catch (RedisConnectionFailureException|QueryTimeoutException|TooManyClusterRedirectionsException|InvalidDataAccessApiUsageException e) {
+			log.trace("Redis exception. Loading the value without a lease.", e);
+			return loadValue(key, valueLoader);
+		}
+
+		if (Boolean.TRUE.equals(acquired)) {
+			try {
+				return loadValue(key, valueLoader);
+			} finally {
+				releaseLease(leaseKey, token);
+			}
+		}
+
+		long deadline = System.nanoTime() + loadTimeout.toNanos();
+		try {
+			while (System.nanoTime() - deadline < 0) {
+				//A poll interval below a millisecond would be a busy loop.
+				Thread.sleep(Math.max(1, loadLeasePollInterval.toMillis()));
+				Boolean leaseHeld = execute((RedisCallback<Boolean>) connection -> connection.exists(leaseKey));
+				if (!Boolean.TRUE.equals(leaseHeld)) {
+					ValueWrapper value = get(key);
+					if (value != null) {
+						leaseWaitCount.incrementAndGet();
+						return (T) value.get();
+					}
+					break;
+				}
+			}
+		} catch (InterruptedException exception) {
+			Thread.currentThread().interrupt();
+			throw new ValueRetrievalException(key, valueLoader, exception);
+		} catch (RedisConnectionFailureException|QueryTimeoutException|TooManyClusterRedirectionsException|InvalidDataAccessApiUsageException e) {
+			log.trace("Redis exception. Loading the value without waiting on the lease.", e);
+		}
+		log.debug("The lease holder did not load key [" + key + "] in cache [" + getName() + "], loading the value instead.");
+		leaseFallbackCount.incrementAndGet();
+		return loadValue(key, valueLoader);
+	}
+
+	private void releaseLease(final byte[] leaseKey, final byte[] token) {
+		try {
+			execute((RedisCallback<Long>) connection ->
+				RELEASE_LEASE_SCRIPT.execute(connection, ReturnType.INTEGER, 1, leaseKey, token));
+		} catch (RedisConnectionFailureException|QueryTimeoutException|TooManyClusterRedirectionsException|InvalidDataAccessApiUsageException e) {
+			log.trace("Redis exception. The lease will expire on its own.", e);
+		}
+	}
+
+	private static boolean startsWith(byte[] bytes, byte[] prefix) {
+		if (bytes.length < prefix.length) {
+			return false;
+		}
+		for (int index = 0; index < prefix.length; index++) {
+			if (bytes[index] != prefix[index]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private static byte[] concat(byte[] first, byte[] second) {
+		byte[] result = Arrays.copyOf(first, first.length + second.length);
+		System.arraycopy(second, 0, result, first.length, second.length);
+		return result;
+	}
+
+	private <T> T loadValue(final Object key, final Callable<T> valueLoader) {
+		T value;
+		try {
+			value = valueLoader.call();
+		} catch (Exception exception) {
+			throw new ValueRetrievalException(key, valueLoader, exception);
+		}
+		put(key, value);
+		return value;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see org.springframework.cache.Cache#evict(java.lang.Object)
+	 */
+	@Override
+	public void evict(final Object key) {
+
+		final byte[] keyBytes = computeKey(key);
+		boolean skipped = false;
+		try {
+			execute(new RedisCallback<Object>() {
+
+				@Override
+				public Object doInRedis(RedisConnection connection) throws DataAccessException {
+					connection.del(keyBytes);
+					return null;
+				}
+			});
+		} catch (RedisConnectionFailureException|QueryTimeoutException|TooManyClusterRedirectionsException e) {
+			skipped = isSkipped(e);
+			warnUnlessCircuitOpen("Redis exception. Unable to evict a key from cache [" + getName() + "], the cached value will age out via its time to live.", e);
+		} finally {
+			invalidateNearCaches(Collections.singletonList(keyBytes), !skipped);
+		}
+	}
+
+	/**
+	 * Evict a collection of keys from the cache, all versions of each key are removed. The keys are removed with UNLINK, in batches,
+	 * so that large hashes are freed asynchronously on the server rather than blocking other clients.
+	 */
+	@Override
+	public <T, C extends Collection<T>> void evictAll(C keys) {
+		if (keys.isEmpty()) {
+			return;
+		}
+		final List<byte[]> keyBytesList = new ArrayList<>(keys.size());
+		for (Object key : keys) {
+			keyBytesList.add(computeKey(key));
+		}
+		boolean skipped = false;
+		try {
+			execute((RedisCallback<Long>) connection -> unlinkKeys(connection, keyBytesList));
+		} catch (RedisConnectionFailureException|QueryTimeoutException|TooManyClusterRedirectionsException e) {
+			skipped = isSkipped(e);
+			warnUnlessCircuitOpen("Redis exception. Unable to evict [" + keyBytesList.size() + "] keys from cache [" + getName()
+				+ "], the cached values will age out via their time to live.", e);
+		} finally {
+			invalidateNearCaches(keyBytesList, !skipped);
+		}
+	}
+
+	/**
+	 * Failed evictions are logged as a warning, other than those skipped by an open circuit breaker (the breaker logs when it opens).
+	 */
+	private void warnUnlessCircuitOpen(String message, RuntimeException e) {
+		if (e instanceof RedisCircuitOpenException) {
+			log.trace(message, e);
+		} else {
+			log.warn(message, e);
+		}
+	}
+
+	/**
+	 * @return true if the call to redis was not made at all, because the circuit breaker was open or the bulkhead was full.
+	 */
+	static boolean isSkipped(Throwable e) {
+		Throwable cause = e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+		return cause instanceof RedisCircuitOpenException || cause instanceof RedisBulkheadFullException;
+	}
+
+	/**
+	 * Remove keys from the near cache of this instance and tell all other instances to do the same.
+	 */
+	void invalidateNearCaches(List<byte[]> keys) {
+		invalidateNearCaches(keys, true);
+	}
+
+	/**
+	 * Remove keys from the near cache of this instance and, if publish is true, tell all other instances to do the same. There is
+	 * nothing to tell when the change was skipped before it was sent to redis, the value in redis is unchanged.
+	 */
+	void invalidateNearCaches(List<byte[]> keys, boolean publish) {
+		if (nearCache == null) {
+			return;
+		}
+		for (byte[] key : keys) {
+			invalidateNearCache(key);
+		}
+		if (publish) {
+			nearCacheInvalidator.publishEvict(this, keys);
+		}
+	}
+
+	/**
+	 * Remove a key from the near cache of this instance, the reads of the key that are in flight no longer fill the near cache.
+	 */
+	void invalidateNearCache(byte[] keyBytes) {
+		nearCacheEpochs.incrementAndGet(getNearCacheStripe(keyBytes));
+		nearCache.invalidate(keyBytes);
+	}
+
+	/**
+	 * Remove all keys from the near cache of this instance, the reads that are in flight no longer fill the near cache.
+	 */
+	void invalidateNearCache() {
+		for (int stripe = 0; stripe < NEAR_CACHE_STRIPES; stripe++) {
+			nearCacheEpochs.incrementAndGet(stripe);
+		}
+		nearCache.invalidateAll();
+	}
+
+	/**
+	 * @return The invalidation epoch of a key, it is read before the value of the key is read from redis and handed to
+	 *         {@link #toValueWrapper(byte[], byte[], byte[], long, BiConsumer)}.
+	 */
+	long getNearCacheEpoch(byte[] keyBytes) {
+		return nearCache != null ? nearCacheEpochs.get(getNearCacheStripe(keyBytes)) : 0;
+	}
+
+	private long[] getNearCacheEpochs(List<byte[]> keyBytesList) {
+		long[] epochs = new long[keyBytesList.size()];
+		for (int index = 0; index < epochs.length; index++) {
+			epochs[index] = getNearCacheEpoch(keyBytesList.get(index));
+		}
+		return epochs;
+	}
+
+	/**
+	 * Add a value read from redis to the near cache, unless the key has been invalidated since its epoch was read. The epoch is checked
+	 * again once the value has been added: an invalidation either changes the epoch before that check or removes the value after it.
+	 */
+	private void fillNearCache(byte[] keyBytes, Object value, byte[] valueBytes, long epoch) {
+		int stripe = getNearCacheStripe(keyBytes);
+		if (nearCacheEpochs.get(stripe) != epoch) {
+			return;
+		}
+		nearCache.put(keyBytes, value, value != null ? valueBytes : null);
+		if (nearCacheEpochs.get(stripe) != epoch) {
+			nearCache.invalidate(keyBytes);
+		}
+	}
+
+	private static int getNearCacheStripe(byte[] keyBytes) {
+		int hash = Arrays.hashCode(keyBytes);
+		return (hash ^ (hash >>> 16)) & (NEAR_CACHE_STRIPES - 1);
+	}
+
+	/**
+	 * Delete a list of keys via UNLINK (the memory is reclaimed by a background thread on the server) in batches of at most "batchSize"
+	 * keys, falling back to DEL for redis servers that do not support UNLINK (prior to 4.0). When connected to a cluster, the keys are
+	 * grouped by hash slot so that each command only touches a single slot. All of the batches are sent in a single pipeline.
+	 *
+	 * @return The number of keys that were removed.
+	 */
+	long unlinkKeys(RedisConnection connection, List<byte[]> keys) {
+
+		List<byte[][]> batches = new ArrayList<>();
+		if (RedisCacheUtils.isClusterConnection(connection)) {
+			Map<Integer, List<byte[]>> keysBySlot = new HashMap<>();
+			for (byte[] key : keys) {
+				keysBySlot.computeIfAbsent(ClusterSlotHashUtil.calculateSlot(key), slot -> new ArrayList<>()).add(key);
+			}
+			for (List<byte[]> slotKeys : keysBySlot.values()) {
+				partition(slotKeys, batches);
+			}
+		} else {
+			partition(keys, batches);
+		}
+
+		if (unlinkSupported) {
+			try {
+				return deleteBatches(connection, batches, true);
+			} catch (RedisPipelineException e) {
+				if (!RedisCacheUtils.hasErrorMessage(e, "unknown command")) {
+					throw e;
+				}
+				log.info("The redis server does not support UNLINK, falling back to DEL.");
+				unlinkSupported = false;
+			}
+		}
+		return deleteBatches(connection, batches, false);
+	}
+
+	private void partition(List<byte[]> keys, List<byte[][]> batches) {
+		for (int start = 0; start < keys.size(); start += batchSize) {
+			List<byte[]> batch = keys.subList(start, Math.min(start + batchSize, keys.size()));
+			batches.add(batch.toArray(new byte[batch.size()][]));
+		}
+	}
+
+	private long deleteBatches(RedisConnection connection, List<byte[][]> batches, boolean unlink) {
+		connection.openPipeline();
+		for (byte[][] batch : batches) {
+			if (unlink) {
+				connection.unlink(batch);
+			} else {
+				connection.del(batch);
+			}
+		}
+		long deleted = 0;
+		for (Object result : connection.closePipeline()) {
+			if (result instanceof Number) {
+				deleted += ((Number) result).longValue();
+			}
+		}
+		return deleted;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see org.springframework.cache.Cache#clear()
+	 */
+	@Override
+	public void clear() {
+		boolean skipped = false;
+		try {
+			if (generation != null) {
+				//Moving to the next generation makes all existing keys unreachable, they will age out via their time to live. Without a
+				//time to live they never would, the keys of the previous generation are removed in the background instead.
+				Long next = execute((RedisCallback<Long>) connection -> connection.incr(generation.getGenerationKey()));
+				generation.update(next);
+				if (expiration <= 0) {
+					generation.retire(next - 1);
+				}
+				resetHotKeys();
+				log.info("Cache [" + getName() + "] cleared, now using generation [" + next + "].");
+				return;
+			}
+			if (!cacheMetadata.usesKeyPrefix()) {
+				//Without a prefix there is no way to tell which keys belong to this cache.
+				log.warn("Cache [" + getName() + "] does not use a key prefix and cannot be cleared.");
+				return;
+			}
+			clearsInProgress.incrementAndGet();
+			try {
+				long start = System.currentTimeMillis();
+				//Clearing a large cache is expected to be slow, so only the failure (not the latency) is recorded by the circuit breaker.
+				//The matching keys are removed in UNLINK batches, so redis is never blocked for more than a single SCAN or UNLINK command.
+				Long removed = callRedis(() -> redisOperations.execute(new ScanByPrefixCallback(cacheMetadata.getKeyPrefix(), (connection, keys) -> {
+					long unlinked = unlinkKeys(connection, keys);
+					clearedKeyCount.addAndGet(unlinked);
+					return unlinked;
+				})), false);
+				log.info("Cache [" + getName() + "] cleared, removed [" + removed + "] keys in [" + (System.currentTimeMillis() - start) + "ms].");
+			} finally {
+				clearsInProgress.decrementAndGet();
+			}
+		} catch (RedisConnectionFailureException|QueryTimeoutException|TooManyClusterRedirectionsException e) {
+			skipped = isSkipped(e);
+			warnUnlessCircuitOpen("Redis exception. Unable to clear cache [" + getName() + "].", e);
+		} finally {
+			if (nearCache != null) {
+				invalidateNearCache();
+				if (!skipped) {
+					nearCacheInvalidator.publishClear(this);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Remove the keys of the generations retired by clearing the cache, when the cache has no time to live (the keys would otherwise
+	 * never be removed). A generation is only removed once the delay has passed since it was retired, by then the other instances have
+	 * moved to the new generation and no longer write to it. This is run periodically, a failed removal is retried on the next run.
+	 *
+	 * @param delay How long after a generation was retired its keys are removed.
+	 */
+	public void removeRetiredGenerations(Duration delay) {
+		if (generation == null) {
+			return;
+		}
+		for (final Long retired : generation.getRetiredGenerations(delay)) {
+			try {
+				long start = System.currentTimeMillis();
+				Long removed = callRedis(() -> redisOperations.execute(new ScanByPrefixCallback(generation.getPrefix(retired), this::unlinkKeys)), false);
+				generation.removed(retired);
+				log.info("Cache [" + getName() + "] : Removed [" + removed + "] keys of generation [" + retired + "] in ["
+					+ (System.currentTimeMillis() - start) + "ms].");
+			} catch (RedisConnectionFailureException|QueryTimeoutException|TooManyClusterRedirectionsException|RedisPipelineException e) {
+				warnUnlessCircuitOpen("Redis exception. Unable to remove the keys of generation [" + retired + "] of cache [" + getName() + "].", e);
+				return;
+			}
+		}
+	}
+
+	/**
+	 * Non-blocking version of {@link #get(Object)}, the get script is executed on the native Lettuce connection. The value is
+	 * deserialized (and promoted) off of the I/O thread, with the same serialVersionUID check as the blocking get.
+	 */
+	@Override
+	public CompletableFuture<ValueWrapper> getAsync(final Object key) {
+		final byte[] keyBytes = computeKey(key);
+		if (nearCache != null) {
+			ValueWrapper nearValue = nearCache.get(keyBytes);
+			if (nearValue != null) {
+				hitCount.incrementAndGet();
+				sampleHit(keyBytes);
+				return CompletableFuture.completedFuture(nearValue);
+			}
+		}
+		if (isKnownAbsent(keyBytes)) {
+			return CompletableFuture.completedFuture(null);
+		}
+
+		final long nearCacheEpoch = getNearCacheEpoch(keyBytes);
+		CompletableFuture<ValueWrapper> result = executeAsync(commands ->
+			GET_WITH_PROMOTION_SCRIPT.<List<byte[]>>executeAsync(commands, ScriptOutputType.MULTI, new byte[][] {keyBytes}, getPromotionArguments())
+				.thenComposeAsync(versionAndValue -> {
+					if (versionAndValue == null || versionAndValue.size() < 2) {
+						missCount.incrementAndGet();
+						return CompletableFuture.completedFuture(null);
+					}
+					countScriptPromotion(versionAndValue);
+					List<CompletableFuture<Void>> promotions = new ArrayList<>(1);
+					ValueWrapper valueWrapper = toValueWrapper(keyBytes, versionAndValue.get(0), versionAndValue.get(1), nearCacheEpoch,
+						(promotedKey, promotedValue) -> promotions.add(promoteAsync(commands, promotedKey, promotedValue)));
+					//The connection is held until the promotion has completed.
+					return allOf(promotions).thenApply(ignored -> valueWrapper);
+				}));
+		if (result == null) {
+			return CompletableFuture.completedFuture(get(key));
+		}
+		return result.exceptionally(error -> {
+			log.trace("Redis exception. Falling back to regular DB access.", error);
+			return null;
+		});
+	}
+
+	/**
+	 * Non-blocking version of {@link #getAll(Collection)}. The HGET of each key is sent without waiting on a response (Lettuce
+	 * pipelines the commands on the connection), followed by the get script for any keys that were missed.
+	 */
+	@Override
+	public <K> CompletableFuture<Map<K, ValueWrapper>> getAllAsync(Collection<K> keys) {
+
+		final Map<K, ValueWrapper> results = new HashMap<>();
+		final List<K> keyList = new ArrayList<>(keys.size());
+		final List<byte[]> keyBytesList = new ArrayList<>(keys.size());
+		for (K key : keys) {
+			byte[] keyBytes = computeKey(key);
+			ValueWrapper nearValue = nearCache != null ? nearCache.get(keyBytes) : null;
+			if (nearValue != null) {
+				results.put(key, nearValue);
+				hitCount.incrementAndGet();
+				sampleHit(keyBytes);
+			} else if (!isKnownAbsent(keyBytes)) {
+				keyList.add(key);
+				keyBytesList.add(keyBytes);
+			}
+		}
+		if (keyList.isEmpty()) {
+			return CompletableFuture.completedFuture(results);
+		}
+		final long[] epochs = getNearCacheEpochs(keyBytesList);
+
+		CompletableFuture<Map<K, ValueWrapper>> result = executeAsync(commands -> {
+			List<CompletableFuture<byte[]>> currentValues = new ArrayList<>(keyBytesList.size());
+			for (byte[] keyBytes : keyBytesList) {
+				//The version fields may hold references to the payloads or expired values, only the get script resolves them.
+				currentValues.add(readsThroughScript() ? CompletableFuture.completedFuture(null)
+					: commands.hget(keyBytes, currentVersionBytes).toCompletableFuture());
+			}
+			return allOf(currentValues).thenCompose(ignored -> {
+				Map<Integer, CompletableFuture<List<byte[]>>> fallbackValues = new HashMap<>();
+				for (int index = 0; index < keyList.size(); index++) {
+					byte[] currentValue = currentValues.get(index).join();
+					if (currentValue == null ? applicationVersion != null || readsThroughScript() : isReference(currentValue)) {
+						fallbackValues.put(index, GET_WITH_PROMOTION_SCRIPT.executeAsync(commands, ScriptOutputType.MULTI,
+							new byte[][] {keyBytesList.get(index)}, getPromotionArguments()));
+					}
+				}
+				return allOf(fallbackValues.values()).thenComposeAsync(ignoredFallbacks -> {
+					List<CompletableFuture<Void>> promotions = new ArrayList<>();
+					for (int index = 0; index < keyList.size(); index++) {
+						byte[] version = currentVersionBytes;
+						byte[] value = currentValues.get(index).join();
+						CompletableFuture<List<byte[]>> fallbackValue = fallbackValues.get(index);
+						if (fallbackValue != null) {
+							value = null;
+							List<byte[]> versionAndValue = fallbackValue.join();
+							if (versionAndValue != null && versionAndValue.size() >= 2) {
+								countScriptPromotion(versionAndValue);
+								version = versionAndValue.get(0);
+								value = versionAndValue.get(1);
+							}
+						}
+						ValueWrapper valueWrapper = toValueWrapper(keyBytesList.get(index), version, value, epochs[index],
+							(promotedKey, promotedValue) -> promotions.add(promoteAsync(commands, promotedKey, promotedValue)));
+						if (valueWrapper != null) {
+							results.put(keyList.get(index), valueWrapper);
+						}
+					}
+					return allOf(promotions).thenApply(ignoredPromotions -> results);
+				});
+			});
+		});
+		if (result == null) {
+			return CompletableFuture.completedFuture(getAll(keys));
+		}
+		return result.exceptionally(error -> {
+			log.trace("Redis exception. Falling back to regular DB access.", error);
+			return results;
+		});
+	}
+
+	private CompletableFuture<Void> promoteAsync(RedisClusterAsyncCommands<byte[], byte[]> commands, byte[] keyBytes, byte[] valueBytes) {
+		CompletableFuture<?> promotion;
+		if (usesStoreScript()) {
+			promotion = STORE_VALUE_SCRIPT.<List<Object>>executeAsync(commands, ScriptOutputType.MULTI, new byte[][] {keyBytes},
+				getStoreArguments(valueBytes, STORE_PROMOTE));
+		} else {
+			promotion = commands.hsetnx(keyBytes, currentVersionBytes, valueBytes).toCompletableFuture();
+		}
+		return promotion.handle((promoted, error) -> {
+			if (error != null) {
+				log.trace("Redis exception. Promotion of the cached value is non-critical.", error);
+			} else if (storeCompleted(promoted)) {
+				promotionCount.incrementAndGet();
+			}
+			return null;
+		});
+	}
+
+	@Override
+	public CompletableFuture<Void> putAsync(final Object key, final Object value) {
+		return storeAsync(key, value, false);
+	}
+
+	@Override
+	public CompletableFuture<Void> replaceAsync(final Object key, final Object value) {
+		return storeAsync(key, value, true);
+	}
+
+	private CompletableFuture<Void> storeAsync(final Object key, final Object value, final boolean evict) {
+		final byte[] keyBytes = computeKey(key);
+		final byte[] valueBytes;
+		try {
+			valueBytes = serializeValue(value);
+		} catch (SerializationFailedException | SerializationException exception) {
+			return failedFuture(exception);
+		}
+
+		CompletableFuture<Void> result = executeAsync(commands -> putEntryAsync(commands, keyBytes, valueBytes, evict));
+		if (result == null) {
+			store(key, value, evict ? STORE_REPLACE : STORE_PUT);
+			return CompletableFuture.completedFuture(null);
+		}
+		return result.handleAsync((ignored, error) -> {
+			if (error == null) {
+				putCompleted(keyBytes, value, valueBytes);
+			} else {
+				log.trace("Redis exception. Cache puts are non-critical.", error);
+				putFailed(keyBytes);
+			}
+			return null;
+		});
+	}
+
+	/**
+	 * Non-blocking version of {@link #putAll(Map, boolean)}, all of the entries are sent without waiting on a response and are tracked
+	 * as a single batch.
+	 */
+	@Override
+	public <K, V> CompletableFuture<Void> putAllAsync(Map<K, V> entries, final boolean evict) {
+
+		final List<byte[][]> batch = new ArrayList<>(entries.size());
+		for (Map.Entry<K, V> entry : entries.entrySet()) {
+			try {
+				batch.add(new byte[][] {
+					computeKey(entry.getKey()),
+					serializeValue(entry.getValue())
+				});
+			} catch (SerializationFailedException | SerializationException | IllegalArgumentException exception) {
+				//A value that cannot be serialized (or a null value the cache does not allow) only fails its own entry.
+				log.trace("Redis serialization exception: " + exception.getMessage(), exception);
+				batchPutFailureCount.incrementAndGet();
+			}
+		}
+		if (batch.isEmpty()) {
+			return CompletableFuture.completedFuture(null);
+		}
+
+		final long start = System.nanoTime();
+		CompletableFuture<Integer> result = executeAsync(commands -> {
+			List<CompletableFuture<Integer>> failures = new ArrayList<>(batch.size());
+			for (byte[][] entry : batch) {
+				failures.add(putEntryAsync(commands, entry[0], entry[1], evict).handle((ignored, error) -> error == null ? 0 : 1));
+			}
+			return allOf(failures).thenApply(ignored -> failures.stream().mapToInt(CompletableFuture::join).sum());
+		});
+		if (result == null) {
+			putAll(entries, evict);
+			return CompletableFuture.completedFuture(null);
+		}
+		return result.handleAsync((failures, error) -> {
+			if (error != null) {
+				log.trace("Redis exception. Cache puts are non-critical.", error);
+				failures = batch.size();
+			}
+			List<byte[]> keys = new ArrayList<>(batch.size());
+			for (byte[][] entry : batch) {
+				keys.add(entry[0]);
+			}
+			invalidateNearCaches(keys, error == null || !isSkipped(error));
+
+			batchPutCount.incrementAndGet();
+			batchPutTime.addAndGet(System.nanoTime() - start);
+			batchPutFailureCount.addAndGet(failures);
+			putCount.addAndGet(batch.size() - failures);
+			return null;
+		});
+	}
+
+	/**
+	 * Write the current version's value of a key with the store script, if evict is true the key is atomically replaced.
+	 */
+	private CompletableFuture<Void> putEntryAsync(RedisClusterAsyncCommands<byte[], byte[]> commands, byte[] keyBytes, byte[] valueBytes,
+			boolean evict) {
+		return STORE_VALUE_SCRIPT.<List<Object>>executeAsync(commands, ScriptOutputType.MULTI, new byte[][] {keyBytes},
+			getStoreArguments(valueBytes, evict ? STORE_REPLACE : STORE_PUT)).thenApply(result -> {
+				storeCompleted(result);
+				return null;
+			});
+	}
+
+	@Override
+	public CompletableFuture<Void> evictAsync(Object key) {
+		return evictAllAsync(Collections.singletonList(key));
+	}
+
+	/**
+	 * Non-blocking version of {@link #evictAll(Collection)}. Each key is removed with its own UNLINK (or DEL), the commands are sent
+	 * without waiting on a response so there is no need to group the keys by cluster slot.
+	 */
+	@Override
+	public <T, C extends Collection<T>> CompletableFuture<Void> evictAllAsync(C keys) {
+		if (keys.isEmpty()) {
+			return CompletableFuture.completedFuture(null);
+		}
+		final List<byte[]> keyBytesList = new ArrayList<>(keys.size());
+		for (Object key : keys) {
+			keyBytesList.add(computeKey(key));
+		}
+
+		CompletableFuture<Void> result = executeAsync(commands -> deleteAsync(commands, keyBytesList, unlinkSupported)
+			.handle((ignored, error) -> error)
+			.thenCompose(error -> {
+				if (error != null && RedisCacheUtils.hasErrorMessage(error, "unknown command")) {
+					log.info("The redis server does not support UNLINK, falling back to DEL.");
+					unlinkSupported = false;
+					return deleteAsync(commands, keyBytesList, false);
+				}
+				return error == null ? CompletableFuture.completedFuture(null) : failedFuture(error);
+			}));
+		if (result == null) {
+			evictAll(keys);
+			return CompletableFuture.completedFuture(null);
+		}
+		return result.handleAsync((ignored, error) -> {
+			if (error != null) {
+				log.trace("Redis exception. Unable to evict the keys.", error);
+			}
+			invalidateNearCaches(keyBytesList, error == null || !isSkipped(error));
+			return null;
+		});
+	}
+
+	private CompletableFuture<Void> deleteAsync(RedisClusterAsyncCommands<byte[], byte[]> commands, List<byte[]> keys, boolean unlink) {
+		List<CompletableFuture<Long>> deletes = new ArrayList<>(keys.size());
+		for (byte[] key : keys) {
+			deletes.add((unlink ? commands.unlink(key) : commands.del(key)).toCompletableFuture());
+		}
+		return allOf(deletes);
+	}
+
+	/**
+	 * Run an action against the native, asynchronous (Lettuce) commands of a connection. The connection is held until the future
+	 * returned by the action has completed. If the connection factory does not provide Lettuce connections, this method returns null
+	 * and the caller falls back to the blocking operation. This is decided before the call is reserved, so the fallback is only
+	 * recorded by the circuit breaker (and held by the bulkhead) once, as the blocking operation.
+	 */
+	@SuppressWarnings("unchecked")
+	private <T> CompletableFuture<T> executeAsync(Function<RedisClusterAsyncCommands<byte[], byte[]>, CompletableFuture<T>> action) {
+		if (!(redisOperations instanceof RedisAccessor)) {
+			return null;
+		}
+		//The native connection of a Lettuce connection (standalone or cluster) provides the asynchronous commands.
+		final RedisConnectionFactory connectionFactory = ((RedisAccessor) redisOperations).getConnectionFactory();
+		if (!(connectionFactory instanceof LettuceConnectionFactory)) {
+			return null;
+		}
+		final Semaphore permits;
+		try {
+			permits = acquireRedis();
+		} catch (RedisConnectionFailureException e) {
+			return failedFuture(e);
+		}
+		final long start = System.nanoTime();
+		RedisConnection connection = null;
+		Throwable error = null;
+		//Once the future has been returned, it closes the connection and releases the call when it completes.
+		boolean handedOff = false;
+		try {
+			connection = connectionFactory.getConnection();
+			final RedisConnection heldConnection = connection;
+			CompletableFuture<T> result = action.apply((RedisClusterAsyncCommands<byte[], byte[]>) connection.getNativeConnection())
+				.whenComplete((value, failure) -> {
+					heldConnection.close();
+					releaseRedis(permits, failure, System.nanoTime() - start);
+				});
+			handedOff = true;
+			return result;
+		} catch (RuntimeException e) {
+			error = e;
+			return failedFuture(e);
+		} catch (Error e) {
+			error = e;
+			throw e;
+		} finally {
+			if (!handedOff) {
+				if (connection != null) {
+					connection.close();
+				}
+				releaseRedis(permits, error, System.nanoTime() - start);
+			}
+		}
+	}
+
+	private <T> T execute(RedisCallback<T> callback) {
+		return callRedis(() -> redisOperations.execute(callback));
+	}
+
+	private List<Object> executePipelined(RedisCallback<?> callback, RedisSerializer<?> resultSerializer) {
+		return callRedis(() -> redisOperations.executePipelined(callback, resultSerializer));
+	}
+
+	/**
+	 * Make a call to redis through the bulkhead and the circuit breaker. If the cache already has the maximum number of operations in
+	 * flight or the breaker is open, the call is not made and an exception is thrown instead, which is handled like any other
+	 * connection failure.
+	 */
+	<T> T callRedis(Supplier<T> call) {
+		return callRedis(call, true);
+	}
+
+	private <T> T callRedis(Supplier<T> call, boolean recordLatency) {
+		if (circuitBreaker == null && bulkhead == null) {
+			return call.get();
+		}
+		Semaphore permits = acquireRedis();
+		long start = System.nanoTime();
+		Throwable error = null;
+		try {
+			return call.get();
+		} catch (Throwable e) {
+			//Any failure (even an Error) must release the call, or a half open circuit breaker would wait on the probe forever.
+			error = e;
+			throw e;
+		} finally {
+			releaseRedis(permits, error, recordLatency ? System.nanoTime() - start : 0);
+		}
+	}
+
+	/**
+	 * Reserve a call to redis: a permit of the bulkhead and the permission of the circuit breaker. Every reservation must be followed by
+	 * a call to {@link #releaseRedis(Semaphore, Throwable, long)} once the call has completed. Rejected calls are counted.
+	 *
+	 * @return The bulkhead the permit was acquired from (null if the operations are not limited), it must be passed to the release.
+	 * @throws RedisBulkheadFullException If the cache already has the maximum number of operations in flight.
+	 * @throws RedisCircuitOpenException If the circuit breaker is open.
+	 */
+	Semaphore acquireRedis() {
+		Semaphore permits = bulkhead;
+		if (permits != null && !permits.tryAcquire()) {
+			bulkheadRejectionCount.incrementAndGet();
+			throw new RedisBulkheadFullException(getName());
+		}
+		if (circuitBreaker != null && !circuitBreaker.tryAcquire()) {
+			if (permits != null) {
+				permits.release();
+			}
+			circuitRejectionCount.incrementAndGet();
+			throw new RedisCircuitOpenException();
+		}
+		return permits;
+	}
+
+	/**
+	 * Complete a call reserved by {@link #acquireRedis()}, the outcome of the call is recorded by the circuit breaker.
+	 *
+	 * @param permits The bulkhead returned by {@link #acquireRedis()}.
+	 * @param error The error raised by the call or null if it succeeded.
+	 * @param durationNanos How long the call took, zero if the latency of the call should not be taken into account.
+	 */
+	void releaseRedis(Semaphore permits, Throwable error, long durationNanos) {
+		if (circuitBreaker != null) {
+			circuitBreaker.onComplete(error, durationNanos);
+		}
+		if (permits != null) {
+			permits.release();
+		}
+	}
+
+	private static CompletableFuture<Void> allOf(Collection<? extends CompletableFuture<?>> futures) {
+		return CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[0]));
+	}
+
+	private static <T> CompletableFuture<T> failedFuture(Throwable error) {
+		CompletableFuture<T> future = new CompletableFuture<>();
+		future.completeExceptionally(error);
+		return future;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see org.springframework.cache.Cache#getName()
+	 */
+	@Override
+	public String getName() {
+		return cacheMetadata.getCacheName();
+	}
+
+	/**
+	 * {@inheritDoc} This implementation simply returns the RedisTemplate used for configuring the cache, giving access to
+	 * the underlying Redis store.
+	 */
+	@Override
+	public Object getNativeCache() {
+		return redisOperations;
+	}
+
+	/**
+	 * Metadata required to maintain {@link RedisCache}. Keeps track of additional data structures required for processing
+	 * cache operations.
+	 *
+	 * @author Christoph Strobl
+	 * @since 1.5
+	 */
+	static class RedisCacheMetadata {
+
+		private final String cacheName;
+		private final byte[] keyPrefix;
+		private long defaultExpiration = 0;
+
+		/**
+		 * @param cacheName must not be {@literal null} or empty.
+		 * @param keyPrefix can be {@literal null}.
+		 */
+		public RedisCacheMetadata(String cacheName, byte[] keyPrefix) {
+
+			Assert.hasText(cacheName, "CacheName must not be null or empty!");
+			this.cacheName = cacheName;
+			this.keyPrefix = keyPrefix;
+
+		}
+
+		/**
+		 * @return true if the {@link RedisCache} uses a prefix for key ranges.
+		 */
+		public boolean usesKeyPrefix() {
+			return (keyPrefix != null && keyPrefix.length > 0);
+		}
+
+		/**
+		 * Get the binary representation of the key prefix.
+		 *
+		 * @return never {@literal null}.
+		 */
 		public byte[] getKeyPrefix() {
 			return this.keyPrefix;
 		}
@@ -388,61 +2172,552 @@ public class UnifiedRedisCache implements Cache {
 	}
 
 
-	static class RedisCacheCleanByPrefixCallback implements RedisCallback<Void> {
+	/**
+	 * Handles a batch of keys found by a {@link ScanByPrefixCallback}.
+	 */
+	interface KeyBatchHandler {
+
+		/**
+		 * @return The number of keys that were handled.
+		 */
+		long handle(RedisConnection connection, List<byte[]> keys);
+	}
+
+	/**
+	 * Walks all keys that start with a prefix, in batches. The keyspace is walked incrementally with SCAN (MATCH on the prefix and a
+	 * configurable COUNT), so redis is never blocked for more than a single SCAN command. When connected to a cluster, every master node
+	 * is scanned (in parallel when the cache has a scan executor), so the handler must be thread safe.
+	 */
+	class ScanByPrefixCallback implements RedisCallback<Long> {
 
-		private static final byte[] REMOVE_KEYS_BY_PATTERN_LUA = new StringRedisSerializer().serialize(
-				"local keys = redis.call('KEYS', ARGV[1]); local keysCount = table.getn(keys); if(keysCount > 0) then for _, key in ipairs(keys) do redis.call('del', key); end; end; return keysCount;");
-		private static final byte[] WILD_CARD = new StringRedisSerializer().serialize("*");
-		private final RedisCacheMetadata metadata;
+		private final ScanOptions scanOptions;
+		private final KeyBatchHandler handler;
 
-		public RedisCacheCleanByPrefixCallback(RedisCacheMetadata metadata) {
-			this.metadata = metadata;
+		public ScanByPrefixCallback(byte[] keyPrefix, KeyBatchHandler handler) {
+			String pattern = escapeGlob(new StringRedisSerializer().deserialize(keyPrefix)) + "*";
+			this.scanOptions = ScanOptions.scanOptions().match(pattern).count(scanCount).build();
+			this.handler = handler;
 		}
 
 		@Override
-		public Void doInRedis(RedisConnection connection) {
-			byte[] prefixToUse = Arrays.copyOf(metadata.getKeyPrefix(), metadata.getKeyPrefix().length + WILD_CARD.length);
-			System.arraycopy(WILD_CARD, 0, prefixToUse, metadata.getKeyPrefix().length, WILD_CARD.length);
+		public Long doInRedis(RedisConnection connection) {
 
-			if (isClusterConnection(connection)) {
+			if (!RedisCacheUtils.isClusterConnection(connection)) {
+				return scan(connection, connection.scan(scanOptions));
+			}
 
-				// load keys to the client because currently Redis Cluster connections do not allow eval of lua scripts.
-				Set<byte[]> keys = connection.keys(prefixToUse);
-				if (!keys.isEmpty()) {
-					connection.del(keys.toArray(new byte[keys.size()][]));
+			List<RedisClusterNode> masters = new ArrayList<>();
+			for (RedisClusterNode node : ((RedisClusterConnection) connection).clusterGetNodes()) {
+				if (node.isMaster()) {
+					masters.add(node);
 				}
-			} else {
-				connection.eval(REMOVE_KEYS_BY_PATTERN_LUA, ReturnType.INTEGER, 0, prefixToUse);
+			}
+			if (masters.isEmpty()) {
+				return 0L;
 			}
 
-			return null;
-		}
-		private static boolean isClusterConnection(RedisConnection connection) {
+			ExecutorService executor = scanExecutor;
+			if (executor == null) {
+				long handled = 0;
+				for (RedisClusterNode node : masters) {
+					handled += scan(connection, ((RedisClusterConnection) connection).scan(node, scanOptions));
+				}
+				return handled;
+			}
 
-			while (connection instanceof DecoratedRedisConnection) {
-				connection = ((DecoratedRedisConnection) connection).getDelegate();
+			//Each node is scanned on a thread of the executor with its own connection, connections are not thread safe.
+			List<Future<Long>> results = new ArrayList<>(masters.size());
+			try {
+				for (final RedisClusterNode node : masters) {
+					results.add(executor.submit(() -> redisOperations.execute((RedisCallback<Long>)
+						nodeConnection -> scan(nodeConnection, ((RedisClusterConnection) nodeConnection).scan(node, scanOptions)))));
+				}
+				long handled = 0;
+				for (Future<Long> result : results) {
+					handled += result.get();
+				}
+				return handled;
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new RedisSystemException("Interrupted while scanning cache [" + getName() + "]", e);
+			} catch (ExecutionException e) {
+				if (e.getCause() instanceof RuntimeException) {
+					throw (RuntimeException) e.getCause();
+				}
+				throw new RedisSystemException("Unable to scan cache [" + getName() + "]", e.getCause());
+			} finally {
+				//The scans of the other nodes are abandoned if one of them failed, the executor is shared.
+				for (Future<Long> result : results) {
+					result.cancel(true);
+				}
 			}
+		}
 
-			return connection instanceof RedisClusterConnection;
+		private long scan(RedisConnection connection, Cursor<byte[]> cursor) {
+			long handled = 0;
+			List<byte[]> batch = new ArrayList<>(batchSize);
+			try (Cursor<byte[]> keys = cursor) {
+				while (keys.hasNext()) {
+					batch.add(keys.next());
+					if (batch.size() >= batchSize) {
+						handled += handler.handle(connection, batch);
+						batch.clear();
+					}
+				}
+			} catch (IOException e) {
+				log.trace("Unable to close the scan cursor.", e);
+			}
+			if (!batch.isEmpty()) {
+				handled += handler.handle(connection, batch);
+			}
+			return handled;
 		}
 
+		private String escapeGlob(String value) {
+			StringBuilder escaped = new StringBuilder(value.length());
+			for (char character : value.toCharArray()) {
+				if (character == '*' || character == '?' || character == '[' || character == ']' || character == '\\') {
+					escaped.append('\\');
+				}
+				escaped.append(character);
+			}
+			return escaped.toString();
+		}
 	}
 
 
 	public long getHitCount() {
-		return hitCount;
+		return hitCount.get();
 	}
 
 	public long getMissCount() {
-		return missCount;
+		return missCount.get();
 	}
 
 	public long getPutCount() {
-		return putCount;
+		return putCount.get();
+	}
+
+	/**
+	 * @return The number of hits that returned a cached null value, these are included in the hit count.
+	 */
+	public long getNegativeHitCount() {
+		return negativeHitCount.get();
 	}
 
 	public long getPromotionCount() {
-		return promotionCount;
+		return promotionCount.get();
+	}
+
+	public long getBatchPutCount() {
+		return batchPutCount.get();
+	}
+
+	/**
+	 * @return The total time, in nanoseconds, spent writing batches of entries to redis.
+	 */
+	public long getBatchPutTime() {
+		return batchPutTime.get();
+	}
+
+	public long getBatchPutFailureCount() {
+		return batchPutFailureCount.get();
+	}
+
+	/**
+	 * @return The number of calls to get(key, valueLoader) that waited on a load already in progress rather than loading the value.
+	 */
+	public long getCoalescedLoadCount() {
+		return coalescedLoadCount.get();
+	}
+
+	/**
+	 * @return The number of calls to get(key, valueLoader) that gave up waiting on a load in progress and loaded the value themselves.
+	 */
+	public long getLoadTimeoutCount() {
+		return loadTimeoutCount.get();
+	}
+
+	/**
+	 * @return The number of loads that waited on the lease of another instance and then read the value it loaded.
+	 */
+	public long getLeaseWaitCount() {
+		return leaseWaitCount.get();
+	}
+
+	/**
+	 * @return The number of loads that waited on the lease of another instance but had to load the value themselves.
+	 */
+	public long getLeaseFallbackCount() {
+		return leaseFallbackCount.get();
+	}
+
+	/**
+	 * @return true while the cache is being cleared.
+	 */
+	public boolean isClearInProgress() {
+		return clearsInProgress.get() > 0;
+	}
+
+	/**
+	 * @return The total number of keys removed by clearing the cache, this is updated while a clear is in progress.
+	 */
+	public long getClearedKeyCount() {
+		return clearedKeyCount.get();
+	}
+
+	public CacheGeneration getGeneration() {
+		return generation;
+	}
+
+	/**
+	 * Enable generations for this cache, the generation is included in the key prefix and clearing the cache only increments the
+	 * generation.
+	 *
+	 * @param generation The generation of this cache.
+	 */
+	public void setGeneration(CacheGeneration generation) {
+		this.generation = generation;
+	}
+
+	public IncompatibleVersions getIncompatibleVersions() {
+		return incompatibleVersions;
+	}
+
+	/**
+	 * Remember the older versions whose values are incompatible with the current version, so they are no longer read.
+	 *
+	 * @param incompatibleVersions The incompatible versions of this cache, shared with the other instances by the cache manager.
+	 */
+	public void setIncompatibleVersions(IncompatibleVersions incompatibleVersions) {
+		this.incompatibleVersions = incompatibleVersions;
+	}
+
+	public ModelFingerprint getModelFingerprint() {
+		return modelFingerprint;
+	}
+
+	/**
+	 * Let the get script promote the values of older versions that published the same fingerprint of the cached models, the values
+	 * are promoted by redis without being checked by the application first.
+	 *
+	 * @param modelFingerprint The fingerprint of the models of this cache, published by the cache manager.
+	 */
+	public void setModelFingerprint(ModelFingerprint modelFingerprint) {
+		this.modelFingerprint = modelFingerprint;
+	}
+
+	public VersionRegistry getVersionRegistry() {
+		return versionRegistry;
+	}
+
+	/**
+	 * Promote the values of the older versions published into the registry, for versions that are not integers.
+	 *
+	 * @param versionRegistry The registry of the versions of this cache, published by the cache manager.
+	 */
+	public void setVersionRegistry(VersionRegistry versionRegistry) {
+		this.versionRegistry = versionRegistry;
+	}
+
+	public HotKeys getHotKeys() {
+		return hotKeys;
+	}
+
+	/**
+	 * @param hotKeys The hot key ranking of this cache, the cache manager flushes the sampled hits periodically.
+	 */
+	public void setHotKeys(HotKeys hotKeys) {
+		this.hotKeys = hotKeys;
+	}
+
+	/**
+	 * @return The number of near cache invalidations that could not be published, the other instances kept serving the previous value
+	 *         until it aged out of their near cache.
+	 */
+	public long getDroppedInvalidationCount() {
+		return droppedInvalidationCount.get();
+	}
+
+	void invalidationDropped() {
+		droppedInvalidationCount.incrementAndGet();
+	}
+
+	public NearCache getNearCache() {
+		return nearCache;
+	}
+
+	/**
+	 * Enable a near cache in front of redis for this cache.
+	 *
+	 * @param nearCache The near cache.
+	 * @param nearCacheInvalidator Used to invalidate the near caches of the other instances when this cache is changed.
+	 */
+	public void setNearCache(NearCache nearCache, NearCacheInvalidator nearCacheInvalidator) {
+		Assert.notNull(nearCacheInvalidator, "A near cache invalidator is required when using a near cache.");
+		this.nearCache = nearCache;
+		this.nearCacheInvalidator = nearCacheInvalidator;
+	}
+
+	public boolean isBloomFilterEnabled() {
+		return useBloomFilter;
+	}
+
+	/**
+	 * @return The bloom filter in use, null if it is not enabled or has not yet been built.
+	 */
+	public KeyBloomFilter getBloomFilter() {
+		return bloomFilter;
+	}
+
+	/**
+	 * @return The number of lookups that were a miss without calling redis because the bloom filter showed the key was never written.
+	 */
+	public long getBloomFilterSkipCount() {
+		return bloomFilterSkipCount.get();
+	}
+
+	/**
+	 * Enable a bloom filter of the keys that have been written to this cache, a lookup of a key that is not in the filter is a miss
+	 * without calling redis. The filter is only used once it has been built by {@link #rebuildBloomFilter()}, which should then be
+	 * called periodically. The cache must use a key prefix, so its keys can be scanned.
+	 *
+	 * @param expectedInsertions The number of keys the filter is expected to hold.
+	 * @param falsePositiveProbability The target probability that a key that was never written is looked up in redis anyway.
+	 * @param maximumMemory The maximum size of the filter in bytes.
+	 */
+	public void setBloomFilter(long expectedInsertions, double falsePositiveProbability, long maximumMemory) {
+		Assert.isTrue(cacheMetadata.usesKeyPrefix(), "A bloom filter requires the cache to use a key prefix.");
+		Assert.isTrue(expectedInsertions > 0 && maximumMemory > 0, "The expected insertions and maximum memory must be greater than zero.");
+		Assert.isTrue(falsePositiveProbability > 0 && falsePositiveProbability < 1, "The false positive probability must be between 0 and 1.");
+		this.useBloomFilter = true;
+		this.bloomFilterExpectedInsertions = expectedInsertions;
+		this.bloomFilterFalsePositiveProbability = falsePositiveProbability;
+		this.bloomFilterMaximumMemory = maximumMemory;
+	}
+
+	public int getScanCount() {
+		return scanCount;
+	}
+
+	/**
+	 * Set the COUNT hint passed to each SCAN command when clearing the cache or rebuilding its bloom filter. Larger values mean fewer
+	 * round trips but each SCAN command will hold redis for a little longer.
+	 *
+	 * @param scanCount The scan count, must be greater than zero.
+	 */
+	public void setScanCount(int scanCount) {
+		Assert.isTrue(scanCount > 0, "The scan count must be greater than zero.");
+		this.scanCount = scanCount;
+	}
+
+	public ExecutorService getScanExecutor() {
+		return scanExecutor;
+	}
+
+	/**
+	 * @param scanExecutor Scans the master nodes of a cluster in parallel, null to scan the nodes one after the other. The executor is
+	 * not shut down by the cache.
+	 */
+	public void setScanExecutor(ExecutorService scanExecutor) {
+		this.scanExecutor = scanExecutor;
+	}
+
+	public Duration getLoadTimeout() {
+		return loadTimeout;
+	}
+
+	/**
+	 * Set how long a call to get(key, valueLoader) waits on a load of the same key that is already in progress. Once the timeout
+	 * has elapsed, the caller loads the value itself.
+	 *
+	 * @param loadTimeout The load timeout.
+	 */
+	public void setLoadTimeout(Duration loadTimeout) {
+		Assert.notNull(loadTimeout, "The load timeout must not be null.");
+		this.loadTimeout = loadTimeout;
+	}
+
+	public boolean isCacheNullValues() {
+		return cacheNullValues;
+	}
+
+	/**
+	 * @param cacheNullValues Whether null values are cached, if not a put of a null value is rejected.
+	 * @param nullValueTimeToLive The time to live of a key holding a null value, this is capped by the time to live of the cache. Zero
+	 * (or null) to use the time to live of the cache.
+	 */
+	public void setNullValues(boolean cacheNullValues, Duration nullValueTimeToLive) {
+		this.cacheNullValues = cacheNullValues;
+		this.nullValueExpiration = nullValueTimeToLive != null ? nullValueTimeToLive.getSeconds() : 0;
+	}
+
+	public boolean isDeduplicatePayloads() {
+		return deduplicatePayloads;
+	}
+
+	/**
+	 * @param deduplicatePayloads Whether identical payloads of different versions of a key are only stored once, the version fields then
+	 * hold a reference to the payload and a promotion only writes the reference.
+	 */
+	public void setDeduplicatePayloads(boolean deduplicatePayloads) {
+		this.deduplicatePayloads = deduplicatePayloads;
+	}
+
+	public int getRetainedVersions() {
+		return retainedVersions;
+	}
+
+	/**
+	 * @param retainedVersions The number of older versions whose values are kept in each key besides the current version's value,
+	 * negative to keep the values of all versions. Only numeric versions are pruned, and only those older than the current version.
+	 */
+	public void setRetainedVersions(int retainedVersions) {
+		this.retainedVersions = retainedVersions;
+		this.retainedVersionsBytes = versionSerializer.serialize(String.valueOf(retainedVersions));
+	}
+
+	/**
+	 * @return The number of values of stale versions that were pruned.
+	 */
+	public long getPrunedVersionCount() {
+		return prunedVersionCount.get();
+	}
+
+	/**
+	 * @return The size of the values of stale versions that were pruned, including the payloads that were no longer referenced.
+	 */
+	public long getPrunedVersionBytes() {
+		return prunedVersionBytes.get();
+	}
+
+	public boolean isFieldTimeToLive() {
+		return fieldTimeToLive;
+	}
+
+	/**
+	 * @param fieldTimeToLive Whether each version's value of a key has its own time to live, rather than a write extending the time to
+	 * live of the values of all versions. The values are expired with HEXPIRE, servers that do not support HEXPIRE (before Redis 7.4)
+	 * store the expiration time of each value next to it instead: expired values are ignored when read and pruned when the key is
+	 * written or swept.
+	 */
+	public void setFieldTimeToLive(boolean fieldTimeToLive) {
+		this.fieldTimeToLive = fieldTimeToLive;
+	}
+
+	public RedisCircuitBreaker getCircuitBreaker() {
+		return circuitBreaker;
+	}
+
+	/**
+	 * @return The number of calls to redis made by this cache that were skipped because the circuit breaker was open.
+	 */
+	public long getCircuitRejectionCount() {
+		return circuitRejectionCount.get();
+	}
+
+	public int getMaxConcurrentOperations() {
+		return maxConcurrentOperations;
+	}
+
+	/**
+	 * Limit the number of redis operations of this cache that are in flight at once. Once the limit is reached, further operations are
+	 * not queued: gets are a miss and puts/evictions are dropped.
+	 *
+	 * @param maxConcurrentOperations The maximum number of operations in flight, zero (or less) for no limit.
+	 */
+	public synchronized void setMaxConcurrentOperations(int maxConcurrentOperations) {
+		//The operations in flight release their permits to the semaphore they acquired them from, so they never inflate the new limit.
+		this.bulkhead = maxConcurrentOperations > 0 ? new Semaphore(maxConcurrentOperations) : null;
+		this.maxConcurrentOperations = Math.max(0, maxConcurrentOperations);
+	}
+
+	/**
+	 * @return The number of redis operations of this cache that are in flight, only tracked when the operations are limited. Just
+	 *         after the limit has been changed, the operations still in flight under the previous limit are not included.
+	 */
+	public synchronized int getActiveOperations() {
+		Semaphore current = bulkhead;
+		return current != null ? maxConcurrentOperations - current.availablePermits() : 0;
+	}
+
+	/**
+	 * @return The number of calls to redis that were skipped because the cache had the maximum number of operations in flight.
+	 */
+	public long getBulkheadRejectionCount() {
+		return bulkheadRejectionCount.get();
+	}
+
+	/**
+	 * @param circuitBreaker The circuit breaker that guards the calls to redis, null to always call redis.
+	 */
+	public void setCircuitBreaker(RedisCircuitBreaker circuitBreaker) {
+		this.circuitBreaker = circuitBreaker;
+	}
+
+	public GetBatcher getGetBatcher() {
+		return getBatcher;
+	}
+
+	/**
+	 * Send concurrent single key lookups to redis in pipelined batches, rather than one at a time. This replaces (and shuts down) any
+	 * existing batcher.
+	 *
+	 * @param window How long a lookup may wait for other lookups to join its batch, zero (or null) disables batching.
+	 * @param maxBatchSize The maximum number of lookups in a single batch.
+	 * @param timeout How long a lookup waits for its batch before it is made directly instead.
+	 */
+	public synchronized void setGetBatching(Duration window, int maxBatchSize, Duration timeout) {
+		Assert.isTrue(maxBatchSize > 0, "The maximum batch size must be greater than zero.");
+		Assert.isTrue(timeout != null && !timeout.isZero() && !timeout.isNegative(), "The batch timeout must be greater than zero.");
+		shutdown();
+		if (window != null && !window.isZero() && !window.isNegative()) {
+			getBatcher = new GetBatcher(getName(), window, maxBatchSize, timeout, this::fetchBatch);
+		}
+	}
+
+	/**
+	 * Release any resources (threads) held by the cache.
+	 */
+	public synchronized void shutdown() {
+		GetBatcher batcher = getBatcher;
+		if (batcher != null) {
+			getBatcher = null;
+			batcher.shutdown();
+		}
+	}
+
+	public boolean isUseLoadLeases() {
+		return useLoadLeases;
+	}
+
+	/**
+	 * Use a cluster wide lease when loading a missing key via get(key, valueLoader), so only one instance runs the value loader.
+	 *
+	 * @param useLoadLeases Whether to use load leases.
+	 * @param loadLeaseTime How long a lease is held before it expires, this should be longer than a typical load.
+	 * @param loadLeasePollInterval How often an instance waiting on the lease of another instance checks if it has been released.
+	 */
+	public void setLoadLeases(boolean useLoadLeases, Duration loadLeaseTime, Duration loadLeasePollInterval) {
+		Assert.notNull(loadLeaseTime, "The load lease time must not be null.");
+		Assert.notNull(loadLeasePollInterval, "The load lease poll interval must not be null.");
+		this.useLoadLeases = useLoadLeases;
+		this.loadLeaseTime = loadLeaseTime;
+		this.loadLeasePollInterval = loadLeasePollInterval;
+	}
+
+	public int getBatchSize() {
+		return batchSize;
+	}
+
+	/**
+	 * Set the maximum number of entries that are sent to redis in a single pipeline by the bulk operations.
+	 *
+	 * @param batchSize The batch size, must be greater than zero.
+	 */
+	public void setBatchSize(int batchSize) {
+		Assert.isTrue(batchSize > 0, "The batch size must be greater than zero.");
+		this.batchSize = batchSize;
 	}
 
 
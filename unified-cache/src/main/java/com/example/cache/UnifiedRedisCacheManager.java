@@ -1,26 +1,47 @@
 package com.example.cache;
 
+import java.time.Duration;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 import org.apache.commons.lang3.StringUtils;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.springframework.beans.factory.DisposableBean;
 import org.springframework.boot.actuate.metrics.cache.CacheMetricsRegistrar;
 import org.springframework.cache.Cache;
 import org.springframework.cache.transaction.AbstractTransactionSupportingCacheManager;
 import org.springframework.cache.transaction.TransactionAwareCacheDecorator;
+import org.springframework.data.redis.core.RedisCallback;
 import org.springframework.data.redis.core.RedisOperations;
 import org.springframework.data.redis.serializer.StringRedisSerializer;
 import org.springframework.util.Assert;
 
 import com.example.cache.config.CacheSettings;
+import com.example.cache.config.CacheSettings.BloomFilterSettings;
+import com.example.cache.config.CacheSettings.CircuitBreakerSettings;
+import com.example.cache.config.CacheSettings.HotKeySettings;
+import com.example.cache.config.CacheSettings.NearCacheSettings;
+import com.example.cache.config.CacheSettings.NearCacheType;
 import com.example.cache.config.CacheSettings.Redis;
 
 
-public class UnifiedRedisCacheManager extends AbstractTransactionSupportingCacheManager {
-	
+public class UnifiedRedisCacheManager extends AbstractTransactionSupportingCacheManager implements DisposableBean {
+
+	private final Log log = LogFactory.getLog(UnifiedRedisCacheManager.class);
+
 	private final RedisOperations<? extends Object, ? extends Object> redisOperations;
 	private final String applicationVersion;
 
@@ -43,6 +64,90 @@ public class UnifiedRedisCacheManager extends AbstractTransactionSupportingCache
 	//List of specific cache TTL overrides.
 	private Map<String, Long> expires = null;
 
+	//Whether null values are cached and how long a cached null value lives.
+	private final boolean cacheNullValues;
+	private final Duration nullValueTimeToLive;
+
+	//Whether identical payloads of different versions of a key are only stored once.
+	private final boolean deduplicatePayloads;
+
+	//The number of older versions whose values are kept in each key (negative to keep all) and how often the keys are swept.
+	private final int retainedVersions;
+	private final Duration versionSweepInterval;
+
+	//Whether each version's value in a key has its own time to live.
+	private final boolean fieldTimeToLive;
+
+	//The maximum number of entries sent to redis in a single pipeline by the bulk operations.
+	private final int batchSize;
+
+	//The COUNT hint passed to each SCAN command when clearing a cache.
+	private final int scanCount;
+
+	//Concurrent single key lookups are batched when the window is greater than zero.
+	private final Duration getBatchWindow;
+	private final int getBatchSize;
+	private final Duration getBatchTimeout;
+
+	//How long a load waits on a load of the same key that is already in progress.
+	private final Duration loadTimeout;
+
+	//Whether only the instance holding a cluster wide lease loads a missing key.
+	private final boolean useLoadLeases;
+	private final Duration loadLeaseTime;
+	private final Duration loadLeasePollInterval;
+
+	//When enabled, each cache's key prefix includes a generation that is stored in redis, see CacheGeneration.
+	private final boolean useGenerations;
+	private final Duration generationRefreshInterval;
+	private final Map<String, CacheGeneration> generations = new ConcurrentHashMap<>();
+
+	//When enabled, each cache remembers the older versions whose values are incompatible, shared through a registry in redis.
+	private final boolean rememberIncompatibleVersions;
+	private final Map<String, IncompatibleVersions> incompatibleVersions = new ConcurrentHashMap<>();
+
+	//Caches with known models publish the fingerprint of their models into a registry in redis, see ModelFingerprint.
+	private final Map<String, List<Class<?>>> models;
+	private final Map<String, ModelFingerprint> modelFingerprints = new ConcurrentHashMap<>();
+	private final Duration versionRegistryRefreshInterval;
+
+	//Orders the application versions. Versions that are not integers are published into a registry in redis, see VersionRegistry.
+	private VersionComparator versionComparator;
+	private final Map<String, VersionRegistry> versionRegistries = new ConcurrentHashMap<>();
+
+	//Refreshes the generations, incompatible versions, model fingerprints and version registries of the caches.
+	private ScheduledExecutorService refresher;
+
+	//Caches that have a near cache in front of redis and the invalidator used to keep the near caches consistent across instances.
+	private final Map<String, NearCacheSettings> nearCaches;
+	private NearCacheInvalidator nearCacheInvalidator;
+
+	//Caches that keep a bloom filter of their keys.
+	private final Map<String, BloomFilterSettings> bloomFilters;
+
+	//The thread that periodically scans the keys of the caches, to rebuild their bloom filters and sweep their stale versions.
+	private ScheduledExecutorService keyScanner;
+
+	//The thread that periodically flushes the sampled hits of the caches into their hot key rankings. It is not the key scanner, so a
+	//long scan does not hold back the flushes (the sampled hits are held in memory until they are flushed).
+	private ScheduledExecutorService hotKeyFlusher;
+
+	//The threads that scan the master nodes of a cluster in parallel, shared by all of the caches. The threads are only started on use.
+	private static final int CLUSTER_SCAN_THREADS = 8;
+	private ExecutorService clusterScanner;
+
+	//Caches that keep a ranking of their hot keys, the top keys are fetched as the application starts (see prewarm).
+	private final Map<String, HotKeySettings> hotKeys;
+	private volatile boolean prewarming = false;
+	private final Map<String, Integer> prewarmedKeys = new ConcurrentHashMap<>();
+
+	//The default limit of redis operations in flight per cache and the limits of specific caches.
+	private final int defaultMaxConcurrentOperations;
+	private final Map<String, Integer> maxConcurrentOperations;
+
+	//When enabled, a single circuit breaker guards the calls to redis made by all of the caches.
+	private final RedisCircuitBreaker circuitBreaker;
+
 	public UnifiedRedisCacheManager(RedisOperations<? extends Object, ? extends Object> redisOperations, CacheMetricsRegistrar registrar, CacheSettings cacheSettings,
 			String applicationVersion) {
 
@@ -71,13 +176,453 @@ public class UnifiedRedisCacheManager extends AbstractTransactionSupportingCache
 			}
 		}
 		expires = cacheSettings.getExpirations();
+		cacheNullValues = redisProperties.isCacheNullValues();
+		nullValueTimeToLive = redisProperties.getNullValueTimeToLive();
+		deduplicatePayloads = redisProperties.isDeduplicatePayloads();
+		retainedVersions = redisProperties.getRetainedVersions();
+		versionSweepInterval = redisProperties.getVersionSweepInterval();
+		fieldTimeToLive = redisProperties.isFieldTimeToLive();
+		batchSize = redisProperties.getBatchSize();
+		scanCount = redisProperties.getScanCount();
+		getBatchWindow = redisProperties.getGetBatchWindow();
+		getBatchSize = redisProperties.getGetBatchSize();
+		getBatchTimeout = redisProperties.getGetBatchTimeout();
+		loadTimeout = redisProperties.getLoadTimeout();
+		useLoadLeases = redisProperties.isUseLoadLeases();
+		loadLeaseTime = redisProperties.getLoadLeaseTime();
+		loadLeasePollInterval = redisProperties.getLoadLeasePollInterval();
+
+		if (redisProperties.isUseGenerations() && !useCacheNamePrefix) {
+			log.warn("Cache generations require the key prefix, generations will not be used.");
+		}
+		useGenerations = redisProperties.isUseGenerations() && useCacheNamePrefix;
+		generationRefreshInterval = redisProperties.getGenerationRefreshInterval();
+		rememberIncompatibleVersions = redisProperties.isRememberIncompatibleVersions();
+		models = cacheSettings.getModels();
+		versionRegistryRefreshInterval = redisProperties.getVersionRegistryRefreshInterval();
+		versionComparator = VersionComparator.forOrdering(redisProperties.getVersionOrdering());
+		nearCaches = cacheSettings.getNearCaches();
+		bloomFilters = cacheSettings.getBloomFilters();
+		hotKeys = cacheSettings.getHotKeys();
+		defaultMaxConcurrentOperations = redisProperties.getMaxConcurrentOperations();
+		maxConcurrentOperations = cacheSettings.getMaxConcurrentOperations();
+
+		CircuitBreakerSettings breakerSettings = redisProperties.getCircuitBreaker();
+		if (breakerSettings.isEnabled()) {
+			circuitBreaker = new RedisCircuitBreaker(breakerSettings.getSlidingWindowSize(), breakerSettings.getMinimumNumberOfCalls(),
+				breakerSettings.getFailureRateThreshold(), breakerSettings.getSlowCallDuration(), breakerSettings.getSlowCallRateThreshold(),
+				breakerSettings.getWaitDurationInOpenState(), breakerSettings.getPermittedCallsInHalfOpenState());
+		} else {
+			circuitBreaker = null;
+		}
 	}
 
 	protected UnifiedRedisCache createCache(String cacheName) {
 	
 		long expiration = computeExpiration(cacheName);
-		return new UnifiedRedisCache(cacheName, useCacheNamePrefix?computeCacheNamePrefix(cacheName):null, redisOperations, expiration,
-			applicationVersion);
+		UnifiedRedisCache cache = new UnifiedRedisCache(cacheName, useCacheNamePrefix?computeCacheNamePrefix(cacheName):null, redisOperations, expiration,
+			applicationVersion, versionComparator);
+		if (cache.applicationVersion == null) {
+			log.warn("The application version [" + applicationVersion + "] can not be ordered, the values of older versions will not be promoted for cache ["
+				+ cacheName + "].");
+		}
+		cache.setBatchSize(batchSize);
+		cache.setNullValues(cacheNullValues, nullValueTimeToLive);
+		cache.setDeduplicatePayloads(deduplicatePayloads);
+		cache.setFieldTimeToLive(fieldTimeToLive);
+		cache.setScanCount(scanCount);
+		cache.setScanExecutor(getClusterScanner());
+		cache.setGetBatching(getBatchWindow, getBatchSize, getBatchTimeout);
+		cache.setLoadTimeout(loadTimeout);
+		cache.setLoadLeases(useLoadLeases, loadLeaseTime, loadLeasePollInterval);
+		cache.setCircuitBreaker(circuitBreaker);
+		cache.setMaxConcurrentOperations(computeMaxConcurrentOperations(cacheName));
+		if (useGenerations) {
+			cache.setGeneration(generations.computeIfAbsent(cacheName, this::createGeneration));
+			if (expiration <= 0) {
+				//The keys of the generations retired by a clear never expire, they are removed once every instance has had the time to
+				//refresh its generation.
+				long interval = generationRefreshInterval.toMillis();
+				Duration delay = generationRefreshInterval.multipliedBy(2);
+				getKeyScanner().scheduleWithFixedDelay(() -> cache.removeRetiredGenerations(delay), interval, interval, TimeUnit.MILLISECONDS);
+			}
+		}
+		if (rememberIncompatibleVersions && cache.applicationVersion != null) {
+			cache.setIncompatibleVersions(incompatibleVersions.computeIfAbsent(cacheName, name -> createIncompatibleVersions(name, expiration)));
+		}
+		List<Class<?>> cacheModels = models != null ? models.get(cacheName) : null;
+		if (cacheModels != null && !cacheModels.isEmpty() && cache.applicationVersion != null) {
+			Set<String> openTypes = ModelFingerprint.getOpenTypes(cacheModels);
+			if (openTypes.isEmpty()) {
+				cache.setModelFingerprint(modelFingerprints.computeIfAbsent(cacheName, name -> createModelFingerprint(name, cacheModels, expiration)));
+			} else {
+				//The fingerprint would not cover the subtypes a value may hold, the values of older versions are checked by the application.
+				log.warn("The models of cache [" + cacheName + "] are not closed, values may hold subtypes of " + openTypes
+					+ ". The values of older versions will not be promoted by redis.");
+			}
+		}
+		if (!versionComparator.isNumeric() && cache.applicationVersion != null) {
+			cache.setVersionRegistry(versionRegistries.computeIfAbsent(cacheName, name -> createVersionRegistry(name, expiration)));
+		}
+		NearCacheSettings nearCacheSettings = nearCaches != null ? nearCaches.get(cacheName) : null;
+		if (nearCacheSettings != null) {
+			if (nearCacheInvalidator == null) {
+				log.warn("There is no near cache invalidator, a near cache will not be used for cache [" + cacheName + "].");
+			} else {
+				cache.setNearCache(createNearCache(nearCacheSettings), nearCacheInvalidator);
+				nearCacheInvalidator.register(cache);
+			}
+		}
+		BloomFilterSettings bloomFilterSettings = bloomFilters != null ? bloomFilters.get(cacheName) : null;
+		if (bloomFilterSettings != null) {
+			if (!useCacheNamePrefix) {
+				log.warn("A bloom filter requires the key prefix, a bloom filter will not be used for cache [" + cacheName + "].");
+			} else {
+				cache.setBloomFilter(bloomFilterSettings.getExpectedInsertions(), bloomFilterSettings.getFalsePositiveProbability(),
+					bloomFilterSettings.getMaximumMemory().toBytes());
+				//The filter is first built in the background, until then every lookup is sent to redis.
+				long interval = bloomFilterSettings.getRebuildInterval().toMillis();
+				getKeyScanner().scheduleWithFixedDelay(cache::rebuildBloomFilter, 0, interval, TimeUnit.MILLISECONDS);
+			}
+		}
+		HotKeySettings hotKeySettings = hotKeys != null ? hotKeys.get(cacheName) : null;
+		if (hotKeySettings != null) {
+			cache.setHotKeys(new HotKeys(computeRegistryKey(cacheName, "hot-keys"), hotKeySettings.getSampleRate(), hotKeySettings.getMaximumKeys(),
+				hotKeySettings.getDecayInterval().toMillis(), expiration));
+			long interval = hotKeySettings.getFlushInterval().toMillis();
+			getHotKeyFlusher().scheduleWithFixedDelay(cache::flushHotKeys, interval, interval, TimeUnit.MILLISECONDS);
+		}
+		if ((retainedVersions >= 0 || fieldTimeToLive) && cache.applicationVersion != null) {
+			cache.setRetainedVersions(retainedVersions);
+			if (!useCacheNamePrefix) {
+				log.warn("Sweeping stale versions requires the key prefix, only the keys that are written will be pruned for cache [" + cacheName + "].");
+			} else {
+				long interval = versionSweepInterval.toMillis();
+				getKeyScanner().scheduleWithFixedDelay(cache::sweepVersions, interval, interval, TimeUnit.MILLISECONDS);
+			}
+		}
+		return cache;
+	}
+
+	private synchronized ScheduledExecutorService getKeyScanner() {
+		if (keyScanner == null) {
+			keyScanner = Executors.newSingleThreadScheduledExecutor(runnable -> {
+				Thread thread = new Thread(runnable, "cache-key-scanner");
+				thread.setDaemon(true);
+				return thread;
+			});
+		}
+		return keyScanner;
+	}
+
+	private synchronized ScheduledExecutorService getHotKeyFlusher() {
+		if (hotKeyFlusher == null) {
+			hotKeyFlusher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+				Thread thread = new Thread(runnable, "cache-hot-key-flusher");
+				thread.setDaemon(true);
+				return thread;
+			});
+		}
+		return hotKeyFlusher;
+	}
+
+	private synchronized ExecutorService getClusterScanner() {
+		if (clusterScanner == null) {
+			ThreadPoolExecutor executor = new ThreadPoolExecutor(CLUSTER_SCAN_THREADS, CLUSTER_SCAN_THREADS, 60, TimeUnit.SECONDS,
+				new LinkedBlockingQueue<>(), runnable -> {
+					Thread thread = new Thread(runnable, "cache-cluster-scanner");
+					thread.setDaemon(true);
+					return thread;
+				});
+			executor.allowCoreThreadTimeOut(true);
+			clusterScanner = executor;
+		}
+		return clusterScanner;
+	}
+
+	private NearCache createNearCache(NearCacheSettings nearCacheSettings) {
+		if (nearCacheSettings.getType() == NearCacheType.OFF_HEAP) {
+			return new OffHeapNearCache(nearCacheSettings.getMaximumMemory().toBytes(), nearCacheSettings.getTimeToLive(),
+				redisOperations.getValueSerializer());
+		}
+		return new HeapNearCache(nearCacheSettings.getMaximumSize(), nearCacheSettings.getTimeToLive());
+	}
+
+	private CacheGeneration createGeneration(String cacheName) {
+		CacheGeneration generation = new CacheGeneration(computeCacheNamePrefix(cacheName), computeRegistryKey(cacheName, "generation"), keyDelimiter);
+		try {
+			generation.update(redisOperations.execute((RedisCallback<byte[]>) connection -> connection.get(generation.getGenerationKey())));
+		} catch (RuntimeException e) {
+			log.warn("Unable to read the generation of cache [" + cacheName + "], it will be refreshed later.", e);
+		}
+		return generation;
+	}
+
+	private IncompatibleVersions createIncompatibleVersions(String cacheName, long expiration) {
+		final byte[] registryKey = computeRegistryKey(cacheName, "incompatible-version-pairs");
+		IncompatibleVersions versions = new IncompatibleVersions(registryKey, expiration);
+		try {
+			versions.update(redisOperations.execute((RedisCallback<Set<byte[]>>) connection -> connection.zRange(registryKey, 0, -1)));
+		} catch (RuntimeException e) {
+			log.warn("Unable to read the incompatible versions of cache [" + cacheName + "], they will be refreshed later.", e);
+		}
+		return versions;
+	}
+
+	private ModelFingerprint createModelFingerprint(String cacheName, List<Class<?>> cacheModels, long expiration) {
+		ModelFingerprint fingerprint = new ModelFingerprint(computeRegistryKey(cacheName, "model-fingerprints"), applicationVersion, cacheModels, expiration);
+		log.info("The fingerprint of the models of cache [" + cacheName + "] is [" + cacheNamePrefixSerializer.deserialize(fingerprint.getFingerprint()) + "].");
+		publishModelFingerprint(cacheName, fingerprint);
+		return fingerprint;
+	}
+
+	/**
+	 * Publish the fingerprint of the current version (this also extends the time to live of the registry) and read the fingerprints
+	 * of the other versions.
+	 */
+	private void publishModelFingerprint(String cacheName, final ModelFingerprint fingerprint) {
+		try {
+			fingerprint.update(redisOperations.execute((RedisCallback<Map<byte[], byte[]>>) connection -> {
+				connection.hSet(fingerprint.getRegistryKey(), fingerprint.getCurrentVersionBytes(), fingerprint.getFingerprint());
+				if (fingerprint.getExpiration() > 0) {
+					connection.expire(fingerprint.getRegistryKey(), fingerprint.getExpiration());
+				}
+				return connection.hGetAll(fingerprint.getRegistryKey());
+			}));
+		} catch (RuntimeException e) {
+			log.warn("Unable to publish the model fingerprint of cache [" + cacheName + "], it will be published later.", e);
+		}
+	}
+
+	void refreshModelFingerprints() {
+		for (Map.Entry<String, ModelFingerprint> entry : modelFingerprints.entrySet()) {
+			publishModelFingerprint(entry.getKey(), entry.getValue());
+		}
+	}
+
+	private VersionRegistry createVersionRegistry(String cacheName, long expiration) {
+		VersionRegistry registry = new VersionRegistry(computeRegistryKey(cacheName, "versions"), applicationVersion, versionComparator, expiration);
+		publishVersion(cacheName, registry);
+		return registry;
+	}
+
+	/**
+	 * Publish the current version (this also extends the time to live of the registry) and read the other versions.
+	 */
+	private void publishVersion(String cacheName, final VersionRegistry registry) {
+		try {
+			registry.update(redisOperations.execute((RedisCallback<Map<byte[], byte[]>>) connection -> {
+				connection.hSet(registry.getRegistryKey(), registry.getCurrentVersionBytes(), registry.getPublication());
+				if (registry.getExpiration() > 0) {
+					connection.expire(registry.getRegistryKey(), registry.getExpiration());
+				}
+				return connection.hGetAll(registry.getRegistryKey());
+			}));
+		} catch (RuntimeException e) {
+			log.warn("Unable to publish the version of cache [" + cacheName + "], it will be published later.", e);
+		}
+	}
+
+	void refreshVersionRegistries() {
+		for (Map.Entry<String, VersionRegistry> entry : versionRegistries.entrySet()) {
+			publishVersion(entry.getKey(), entry.getValue());
+		}
+	}
+
+	/**
+	 * @return The key of a registry shared by all versions of a cache, the registry name is marked so it can never be a cache key.
+	 */
+	private byte[] computeRegistryKey(String cacheName, String registryName) {
+		String name = UnifiedRedisCache.REGISTRY_MARKER.concat(registryName);
+		return useCacheNamePrefix ? cacheNamePrefixSerializer.serialize(cacheName.concat(keyDelimiter).concat(name))
+			: cacheNamePrefixSerializer.serialize(cacheName.concat(":").concat(name));
+	}
+
+	/**
+	 * Share the incompatible versions found by this instance with the other instances (by adding them to the registry of each cache)
+	 * and read the incompatible versions found by the other instances. The pairs that are older than the time to live of the cache, and
+	 * all but the newest pairs, are removed from the registry first.
+	 */
+	void refreshIncompatibleVersions() {
+		for (final IncompatibleVersions versions : incompatibleVersions.values()) {
+			final List<byte[]> pendingPairs = versions.getPendingPairs();
+			try {
+				Set<byte[]> pairs = redisOperations.execute((RedisCallback<Set<byte[]>>) connection -> {
+					long now = System.currentTimeMillis();
+					for (byte[] pair : pendingPairs) {
+						connection.zAdd(versions.getRegistryKey(), now, pair);
+					}
+					if (versions.getExpiration() > 0) {
+						if (!pendingPairs.isEmpty()) {
+							connection.expire(versions.getRegistryKey(), versions.getExpiration());
+						}
+						connection.zRemRangeByScore(versions.getRegistryKey(), Double.NEGATIVE_INFINITY,
+							now - TimeUnit.SECONDS.toMillis(versions.getExpiration()));
+					}
+					connection.zRemRange(versions.getRegistryKey(), 0, -IncompatibleVersions.MAXIMUM_PAIRS - 1);
+					return connection.zRange(versions.getRegistryKey(), 0, -1);
+				});
+				versions.published(pendingPairs);
+				versions.update(pairs);
+			} catch (RuntimeException e) {
+				log.trace("Unable to refresh the incompatible versions.", e);
+			}
+		}
+	}
+
+	/**
+	 * Read the current generation of every cache from redis in a single round trip. This is called periodically so that all instances
+	 * move to the new generation of a cache shortly after it has been cleared, without adding any work to the cache operations.
+	 */
+	void refreshGenerations() {
+		List<CacheGeneration> cacheGenerations = new ArrayList<>(generations.values());
+		if (cacheGenerations.isEmpty()) {
+			return;
+		}
+		final byte[][] generationKeys = new byte[cacheGenerations.size()][];
+		for (int index = 0; index < generationKeys.length; index++) {
+			generationKeys[index] = cacheGenerations.get(index).getGenerationKey();
+		}
+		try {
+			List<byte[]> values = redisOperations.execute((RedisCallback<List<byte[]>>) connection -> connection.mGet(generationKeys));
+			for (int index = 0; index < generationKeys.length && index < values.size(); index++) {
+				cacheGenerations.get(index).update(values.get(index));
+			}
+		} catch (RuntimeException e) {
+			log.trace("Unable to refresh the cache generations.", e);
+		}
+	}
+
+	/**
+	 * @return The circuit breaker shared by all of the caches, null if the circuit breaker is not enabled.
+	 */
+	public RedisCircuitBreaker getCircuitBreaker() {
+		return circuitBreaker;
+	}
+
+	/**
+	 * Set the invalidator used to keep near caches consistent across all instances, near caches are only enabled if this is set.
+	 */
+	public void setNearCacheInvalidator(NearCacheInvalidator nearCacheInvalidator) {
+		this.nearCacheInvalidator = nearCacheInvalidator;
+	}
+
+	public VersionComparator getVersionComparator() {
+		return versionComparator;
+	}
+
+	/**
+	 * Set the comparator that orders the application versions, in place of the built-in ordering of the settings. This must be set
+	 * before the caches are created.
+	 */
+	public void setVersionComparator(VersionComparator versionComparator) {
+		this.versionComparator = versionComparator;
+	}
+
+	@Override
+	public void afterPropertiesSet() {
+		super.afterPropertiesSet();
+		boolean useModelFingerprints = models != null && !models.isEmpty();
+		if (useGenerations || rememberIncompatibleVersions || useModelFingerprints || !versionComparator.isNumeric()) {
+			refresher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+				Thread thread = new Thread(runnable, "cache-refresher");
+				thread.setDaemon(true);
+				return thread;
+			});
+		}
+		if (useGenerations) {
+			long interval = generationRefreshInterval.toMillis();
+			refresher.scheduleWithFixedDelay(this::refreshGenerations, interval, interval, TimeUnit.MILLISECONDS);
+		}
+		if (rememberIncompatibleVersions) {
+			long interval = versionRegistryRefreshInterval.toMillis();
+			refresher.scheduleWithFixedDelay(this::refreshIncompatibleVersions, interval, interval, TimeUnit.MILLISECONDS);
+		}
+		if (useModelFingerprints) {
+			long interval = versionRegistryRefreshInterval.toMillis();
+			refresher.scheduleWithFixedDelay(this::refreshModelFingerprints, interval, interval, TimeUnit.MILLISECONDS);
+		}
+		if (!versionComparator.isNumeric()) {
+			long interval = versionRegistryRefreshInterval.toMillis();
+			refresher.scheduleWithFixedDelay(this::refreshVersionRegistries, interval, interval, TimeUnit.MILLISECONDS);
+		}
+		if (hotKeys != null && !hotKeys.isEmpty()) {
+			prewarming = true;
+			Thread prewarmer = new Thread(this::prewarm, "cache-prewarmer");
+			prewarmer.setDaemon(true);
+			prewarmer.start();
+		}
+	}
+
+	/**
+	 * Fetch the top keys of the hot key ranking of each cache that has one, within the budget (in keys and time) of the cache. The
+	 * values of the older versions are promoted, so a new version does not start on cold keys. The application is not ready (see
+	 * CachePrewarmHealthIndicator) until this has completed.
+	 */
+	void prewarm() {
+		try {
+			for (Map.Entry<String, HotKeySettings> entry : hotKeys.entrySet()) {
+				Cache cache = getCache(entry.getKey());
+				if (cache instanceof TransactionAwareCacheDecorator) {
+					cache = ((TransactionAwareCacheDecorator) cache).getTargetCache();
+				}
+				if (!(cache instanceof UnifiedRedisCache) || entry.getValue().getPrewarmKeys() <= 0) {
+					continue;
+				}
+				UnifiedRedisCache unifiedCache = (UnifiedRedisCache) cache;
+				long promotionsBefore = unifiedCache.getPromotionCount();
+				long start = System.currentTimeMillis();
+				int keys = unifiedCache.prewarm(entry.getValue().getPrewarmKeys(), entry.getValue().getPrewarmTimeout());
+				prewarmedKeys.put(entry.getKey(), keys);
+				log.info("Pre-warmed [" + keys + "] hot keys of cache [" + entry.getKey() + "] in [" + (System.currentTimeMillis() - start)
+					+ "ms], promoted [" + (unifiedCache.getPromotionCount() - promotionsBefore) + "] values.");
+			}
+		} catch (RuntimeException e) {
+			log.warn("Unable to pre-warm the hot keys of the caches.", e);
+		} finally {
+			prewarming = false;
+		}
+	}
+
+	/**
+	 * @return true until the hot keys of the caches have been pre-warmed.
+	 */
+	public boolean isPrewarming() {
+		return prewarming;
+	}
+
+	/**
+	 * @return The number of hot keys that had a value (per cache) when the caches were pre-warmed.
+	 */
+	public Map<String, Integer> getPrewarmedKeys() {
+		return Collections.unmodifiableMap(prewarmedKeys);
+	}
+
+	@Override
+	public void destroy() {
+		if (refresher != null) {
+			refresher.shutdownNow();
+		}
+		synchronized (this) {
+			if (keyScanner != null) {
+				keyScanner.shutdownNow();
+			}
+			if (hotKeyFlusher != null) {
+				hotKeyFlusher.shutdownNow();
+			}
+			if (clusterScanner != null) {
+				clusterScanner.shutdownNow();
+			}
+		}
+		for (String cacheName : getCacheNames()) {
+			Cache cache = getCache(cacheName);
+			if (cache instanceof TransactionAwareCacheDecorator) {
+				cache = ((TransactionAwareCacheDecorator) cache).getTargetCache();
+			}
+			if (cache instanceof UnifiedRedisCache) {
+				((UnifiedRedisCache) cache).shutdown();
+			}
+		}
 	}
 
 	private byte[] computeCacheNamePrefix(String cacheName) {
@@ -92,6 +637,14 @@ public class UnifiedRedisCacheManager extends AbstractTransactionSupportingCache
 		return (expiration != null ? expiration.longValue() : defaultTimeToLive);
 	}
 
+	protected int computeMaxConcurrentOperations(String name) {
+		Integer limit = null;
+		if (maxConcurrentOperations != null) {
+			limit = maxConcurrentOperations.get(name);
+		}
+		return (limit != null ? limit.intValue() : defaultMaxConcurrentOperations);
+	}
+
 	/*
 	 * (non-Javadoc)
 	 * @see org.springframework.cache.support.AbstractCacheManager#loadCaches()
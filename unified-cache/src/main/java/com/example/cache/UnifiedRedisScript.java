@@ -0,0 +1,160 @@
+package com.example.cache;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.redis.connection.ReactiveRedisConnection;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.connection.RedisPipelineException;
+import org.springframework.data.redis.connection.ReturnType;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.RedisOperations;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.serializer.StringRedisSerializer;
+
+import io.lettuce.core.ScriptOutputType;
+import io.lettuce.core.cluster.api.async.RedisClusterAsyncCommands;
+import reactor.core.publisher.Flux;
+
+/**
+ * A lua script used by the unified cache. The script source is loaded once from the classpath (relative to this package) and the
+ * script is invoked via its SHA1 digest (EVALSHA) so the body of the script is not sent to Redis on every call. If Redis does not
+ * (or no longer) have the script in its script cache, the script is sent once via EVAL, which also loads it into the script cache.
+ */
+public final class UnifiedRedisScript {
+
+	private final String name;
+	private final String script;
+	private final byte[] scriptBytes;
+	private final String sha1;
+
+	private UnifiedRedisScript(String name, DefaultRedisScript<?> script) {
+		this.name = name;
+		this.script = script.getScriptAsString();
+		this.scriptBytes = new StringRedisSerializer().serialize(this.script);
+		this.sha1 = script.getSha1();
+	}
+
+	/**
+	 * Load a script from the "scripts" folder that lives along side of this class on the classpath.
+	 *
+	 * @param name The file name of the script.
+	 * @return The script
+	 */
+	public static UnifiedRedisScript load(String name) {
+		DefaultRedisScript<Object> script = new DefaultRedisScript<>();
+		script.setLocation(new ClassPathResource("scripts/" + name, UnifiedRedisScript.class));
+		return new UnifiedRedisScript(name, script);
+	}
+
+	/**
+	 * Execute the script via EVALSHA, falling back to EVAL if the script has not yet been loaded into Redis.
+	 *
+	 * @param connection The connection to use.
+	 * @param returnType The expected return type of the script.
+	 * @param numKeys The number of arguments that are keys.
+	 * @param keysAndArgs The keys followed by the arguments.
+	 * @return The result of the script.
+	 */
+	public <T> T execute(RedisConnection connection, ReturnType returnType, int numKeys, byte[]... keysAndArgs) {
+		try {
+			return connection.evalSha(sha1, returnType, numKeys, keysAndArgs);
+		} catch (DataAccessException e) {
+			if (!RedisCacheUtils.hasErrorMessage(e, "NOSCRIPT")) {
+				throw e;
+			}
+			return connection.eval(scriptBytes, returnType, numKeys, keysAndArgs);
+		}
+	}
+
+	/**
+	 * Execute the script once for each entry of keys and arguments, sending all of the calls to Redis in a single pipeline. The
+	 * results are returned in the same order as the entries, without being deserialized. If the script has not yet been loaded into
+	 * Redis, the calls are executed one at a time instead (which will load the script) rather than failing the whole batch.
+	 *
+	 * @param redisOperations The redis operations used to execute the pipeline.
+	 * @param returnType The expected return type of the script.
+	 * @param numKeys The number of arguments (in each entry) that are keys.
+	 * @param keysAndArgs A list of entries, each holding the keys followed by the arguments.
+	 * @return The raw result of each script invocation.
+	 */
+	public List<Object> executePipelined(RedisOperations<?, ?> redisOperations, ReturnType returnType, int numKeys, List<byte[][]> keysAndArgs) {
+		try {
+			return redisOperations.executePipelined((RedisCallback<Object>) connection -> {
+				for (byte[][] entry : keysAndArgs) {
+					connection.evalSha(sha1, returnType, numKeys, entry);
+				}
+				return null;
+			}, null);
+		} catch (RedisPipelineException e) {
+			if (!RedisCacheUtils.hasErrorMessage(e, "NOSCRIPT")) {
+				throw e;
+			}
+			return redisOperations.execute((RedisCallback<List<Object>>) connection -> {
+				List<Object> results = new ArrayList<>(keysAndArgs.size());
+				for (byte[][] entry : keysAndArgs) {
+					results.add(execute(connection, returnType, numKeys, entry));
+				}
+				return results;
+			});
+		}
+	}
+
+	/**
+	 * Execute the script on a native (Lettuce) asynchronous connection via EVALSHA, falling back to EVAL if the script has not yet been
+	 * loaded into Redis. The result is not deserialized.
+	 *
+	 * @param commands The native asynchronous commands.
+	 * @param outputType The expected output of the script.
+	 * @param keys The keys.
+	 * @param args The arguments.
+	 * @return A future of the result of the script.
+	 */
+	public <T> CompletableFuture<T> executeAsync(RedisClusterAsyncCommands<byte[], byte[]> commands, ScriptOutputType outputType,
+			byte[][] keys, byte[]... args) {
+		CompletableFuture<T> result = new CompletableFuture<>();
+		commands.<T>evalsha(sha1, outputType, keys, args).whenComplete((value, error) -> {
+			if (error == null) {
+				result.complete(value);
+			} else if (RedisCacheUtils.hasErrorMessage(error, "NOSCRIPT")) {
+				commands.<T>eval(script, outputType, keys, args).whenComplete((evalValue, evalError) -> {
+					if (evalError == null) {
+						result.complete(evalValue);
+					} else {
+						result.completeExceptionally(evalError);
+					}
+				});
+			} else {
+				result.completeExceptionally(error);
+			}
+		});
+		return result;
+	}
+
+	/**
+	 * Execute the script on a reactive connection via EVALSHA, falling back to EVAL if the script has not yet been loaded into Redis.
+	 *
+	 * @param connection The reactive connection.
+	 * @param returnType The expected return type of the script.
+	 * @param numKeys The number of arguments that are keys.
+	 * @param keysAndArgs The keys followed by the arguments.
+	 * @return The result of the script.
+	 */
+	public <T> Flux<T> executeReactive(ReactiveRedisConnection connection, ReturnType returnType, int numKeys, ByteBuffer... keysAndArgs) {
+		return connection.scriptingCommands().<T>evalSha(sha1, returnType, numKeys, keysAndArgs)
+			.onErrorResume(e -> RedisCacheUtils.hasErrorMessage(e, "NOSCRIPT"),
+				e -> connection.scriptingCommands().eval(ByteBuffer.wrap(scriptBytes), returnType, numKeys, keysAndArgs));
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	public String getSha1() {
+		return sha1;
+	}
+}
@@ -0,0 +1,242 @@
+package com.example.cache;
+
+import java.util.Comparator;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import com.example.cache.config.CacheSettings.VersionOrdering;
+
+/**
+ * Orders the versions of the application, a value cached by an older version can be promoted to a newer version. A version that
+ * can not be parsed is not ordered: a cache whose current version is not ordered does not promote values, and such versions are
+ * never promoted from.
+ *
+ * The parsed versions are cached (the versions of an application are few), so a version string is only parsed once.
+ */
+public abstract class VersionComparator implements Comparator<String> {
+
+	/**
+	 * Integer versions ("42"), ordered numerically. The get script orders integer versions itself, no registry of versions is needed.
+	 */
+	public static final VersionComparator INTEGER = new VersionComparator() {
+
+		@Override
+		protected Comparable<?> parse(String version) {
+			try {
+				return Long.parseLong(version);
+			} catch (NumberFormatException e) {
+				return null;
+			}
+		}
+
+		@Override
+		public boolean isNumeric() {
+			return true;
+		}
+	};
+
+	/**
+	 * Semantic versions ("1.4.2", "2.0.0-rc.1", "v1.4.2+build.7"), ordered by semantic version precedence: a pre-release is older than
+	 * the release and build metadata is ignored. Missing minor and patch versions are zero.
+	 */
+	public static final VersionComparator SEMANTIC = new VersionComparator() {
+
+		@Override
+		protected Comparable<?> parse(String version) {
+			return SemanticVersion.parse(version);
+		}
+	};
+
+	/**
+	 * Build ids that start with a timestamp ("20241016", "2024-10-16T15:30:00Z", "20241016.153000-42"), ordered by the timestamp and
+	 * then by the optional build number that follows it.
+	 */
+	public static final VersionComparator BUILD_TIMESTAMP = new VersionComparator() {
+
+		@Override
+		protected Comparable<?> parse(String version) {
+			return BuildTimestamp.parse(version);
+		}
+	};
+
+	//Limits the cache of parsed versions, in case versions are read from an unbounded source.
+	private static final int MAXIMUM_PARSED_VERSIONS = 1000;
+
+	private final ConcurrentMap<String, Optional<Comparable<?>>> parsedVersions = new ConcurrentHashMap<>();
+
+	public static VersionComparator forOrdering(VersionOrdering ordering) {
+		switch (ordering) {
+			case SEMANTIC:
+				return SEMANTIC;
+			case BUILD_TIMESTAMP:
+				return BUILD_TIMESTAMP;
+			default:
+				return INTEGER;
+		}
+	}
+
+	/**
+	 * @param version A version of the application.
+	 * @return The parsed version, or null if the version can not be ordered by this comparator.
+	 */
+	protected abstract Comparable<?> parse(String version);
+
+	/**
+	 * @return true if the versions are integers, the get script then orders the versions found in each key itself.
+	 */
+	public boolean isNumeric() {
+		return false;
+	}
+
+	/**
+	 * @return true if the version can be ordered by this comparator.
+	 */
+	public boolean isOrdered(String version) {
+		return getParsedVersion(version) != null;
+	}
+
+	/**
+	 * Versions that can not be ordered are older than any version that can.
+	 */
+	@Override
+	@SuppressWarnings({"unchecked", "rawtypes"})
+	public int compare(String first, String second) {
+		Comparable firstVersion = getParsedVersion(first);
+		Comparable secondVersion = getParsedVersion(second);
+		if (firstVersion == null || secondVersion == null) {
+			return firstVersion == null ? (secondVersion == null ? 0 : -1) : 1;
+		}
+		return firstVersion.compareTo(secondVersion);
+	}
+
+	private Comparable<?> getParsedVersion(String version) {
+		if (version == null) {
+			return null;
+		}
+		Optional<Comparable<?>> parsed = parsedVersions.get(version);
+		if (parsed == null) {
+			parsed = Optional.ofNullable(parse(version));
+			if (parsedVersions.size() >= MAXIMUM_PARSED_VERSIONS) {
+				parsedVersions.clear();
+			}
+			parsedVersions.put(version, parsed);
+		}
+		return parsed.orElse(null);
+	}
+
+	static final class SemanticVersion implements Comparable<SemanticVersion> {
+
+		private static final Pattern PATTERN = Pattern.compile("v?(\\d+)(?:\\.(\\d+))?(?:\\.(\\d+))?(?:-([0-9A-Za-z.-]+))?(?:\\+[0-9A-Za-z.-]+)?");
+
+		private final long[] release;
+		private final String[] preRelease;
+
+		private SemanticVersion(long[] release, String[] preRelease) {
+			this.release = release;
+			this.preRelease = preRelease;
+		}
+
+		static SemanticVersion parse(String version) {
+			Matcher matcher = PATTERN.matcher(version);
+			if (!matcher.matches()) {
+				return null;
+			}
+			try {
+				long[] release = new long[3];
+				for (int index = 0; index < 3; index++) {
+					String number = matcher.group(index + 1);
+					release[index] = number != null ? Long.parseLong(number) : 0;
+				}
+				String preRelease = matcher.group(4);
+				return new SemanticVersion(release, preRelease != null ? preRelease.split("\\.") : new String[0]);
+			} catch (NumberFormatException e) {
+				return null;
+			}
+		}
+
+		@Override
+		public int compareTo(SemanticVersion other) {
+			for (int index = 0; index < 3; index++) {
+				int result = Long.compare(release[index], other.release[index]);
+				if (result != 0) {
+					return result;
+				}
+			}
+			//A pre-release is older than the release itself.
+			if (preRelease.length == 0 || other.preRelease.length == 0) {
+				return Integer.compare(other.preRelease.length, preRelease.length);
+			}
+			for (int index = 0; index < preRelease.length && index < other.preRelease.length; index++) {
+				int result = compareIdentifiers(preRelease[index], other.preRelease[index]);
+				if (result != 0) {
+					return result;
+				}
+			}
+			return Integer.compare(preRelease.length, other.preRelease.length);
+		}
+
+		//Numeric identifiers are compared numerically and are older than alphanumeric identifiers, which are compared lexically.
+		private static int compareIdentifiers(String first, String second) {
+			boolean firstNumeric = isNumber(first);
+			boolean secondNumeric = isNumber(second);
+			if (firstNumeric && secondNumeric) {
+				return first.length() != second.length() ? Integer.compare(first.length(), second.length()) : first.compareTo(second);
+			}
+			if (firstNumeric || secondNumeric) {
+				return firstNumeric ? -1 : 1;
+			}
+			return first.compareTo(second);
+		}
+
+		private static boolean isNumber(String identifier) {
+			for (int index = 0; index < identifier.length(); index++) {
+				if (!Character.isDigit(identifier.charAt(index))) {
+					return false;
+				}
+			}
+			return !identifier.isEmpty();
+		}
+	}
+
+	static final class BuildTimestamp implements Comparable<BuildTimestamp> {
+
+		private static final Pattern PATTERN = Pattern.compile(
+			"\\D*(\\d{4})-?(\\d{2})-?(\\d{2})(?:[T._-]?(\\d{2}):?(\\d{2})(?::?(\\d{2}))?)?Z?(?:[._+-](\\d+))?");
+
+		private final long timestamp;
+		private final long buildNumber;
+
+		private BuildTimestamp(long timestamp, long buildNumber) {
+			this.timestamp = timestamp;
+			this.buildNumber = buildNumber;
+		}
+
+		static BuildTimestamp parse(String version) {
+			Matcher matcher = PATTERN.matcher(version);
+			if (!matcher.matches()) {
+				return null;
+			}
+			try {
+				//The timestamp as yyyyMMddHHmmss, missing time fields are zero.
+				long timestamp = 0;
+				for (int group = 1; group <= 6; group++) {
+					String field = matcher.group(group);
+					timestamp = timestamp * (group == 1 ? 1 : 100) + (field != null ? Long.parseLong(field) : 0);
+				}
+				String buildNumber = matcher.group(7);
+				return new BuildTimestamp(timestamp, buildNumber != null ? Long.parseLong(buildNumber) : 0);
+			} catch (NumberFormatException e) {
+				return null;
+			}
+		}
+
+		@Override
+		public int compareTo(BuildTimestamp other) {
+			int result = Long.compare(timestamp, other.timestamp);
+			return result != 0 ? result : Long.compare(buildNumber, other.buildNumber);
+		}
+	}
+}
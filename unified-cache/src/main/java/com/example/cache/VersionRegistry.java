@@ -0,0 +1,96 @@
+package com.example.cache;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import org.springframework.data.redis.serializer.StringRedisSerializer;
+
+/**
+ * The versions of the application that use a cache, when the versions are not integers (the get script can only order integer
+ * versions itself). Each version publishes itself into a registry (a hash of version to the time it last published) in redis, the
+ * versions older than the current version are ordered by the version comparator and passed to the get script, newest first, as the
+ * versions a value can be promoted from.
+ *
+ * Only the newest MAXIMUM_OLDER_VERSIONS older versions are passed to the script. The registry shares the key prefix of the cache,
+ * so clearing the cache also clears the registry: the running versions publish themselves again at the next refresh.
+ */
+public class VersionRegistry {
+
+	static final int MAXIMUM_OLDER_VERSIONS = 10;
+
+	private static final StringRedisSerializer serializer = new StringRedisSerializer();
+	private static final byte[][] NO_VERSIONS = new byte[0][];
+
+	private final byte[] registryKey;
+	private final String currentVersion;
+	private final byte[] currentVersionBytes;
+	private final VersionComparator comparator;
+	private final long expiration;
+
+	private volatile byte[][] olderVersions = NO_VERSIONS;
+
+	/**
+	 * @param registryKey The key in redis of the hash of version to publication time, shared by all versions.
+	 * @param currentVersion The current application version.
+	 * @param comparator Orders the versions.
+	 * @param expiration The time to live (in seconds) of the registry, zero if it does not expire.
+	 */
+	public VersionRegistry(byte[] registryKey, String currentVersion, VersionComparator comparator, long expiration) {
+		this.registryKey = registryKey;
+		this.currentVersion = currentVersion;
+		this.currentVersionBytes = serializer.serialize(currentVersion);
+		this.comparator = comparator;
+		this.expiration = expiration;
+	}
+
+	public byte[] getRegistryKey() {
+		return registryKey;
+	}
+
+	public byte[] getCurrentVersionBytes() {
+		return currentVersionBytes;
+	}
+
+	public long getExpiration() {
+		return expiration;
+	}
+
+	/**
+	 * @return The value published for the current version: the current time.
+	 */
+	public byte[] getPublication() {
+		return serializer.serialize(String.valueOf(System.currentTimeMillis()));
+	}
+
+	/**
+	 * @return The versions older than the current version, newest first.
+	 */
+	public byte[][] getOlderVersions() {
+		return olderVersions;
+	}
+
+	/**
+	 * Update the older versions from the content of the registry.
+	 *
+	 * @param registry The registry (version to publication time) as read from redis, may be null.
+	 */
+	public void update(Map<byte[], byte[]> registry) {
+		if (registry == null) {
+			return;
+		}
+		List<String> versions = new ArrayList<>();
+		for (byte[] versionBytes : registry.keySet()) {
+			String version = serializer.deserialize(versionBytes);
+			if (comparator.isOrdered(version) && comparator.compare(version, currentVersion) < 0) {
+				versions.add(version);
+			}
+		}
+		versions.sort(comparator.reversed());
+		byte[][] updated = new byte[Math.min(versions.size(), MAXIMUM_OLDER_VERSIONS)][];
+		for (int index = 0; index < updated.length; index++) {
+			updated[index] = serializer.serialize(versions.get(index));
+		}
+		olderVersions = updated;
+	}
+}
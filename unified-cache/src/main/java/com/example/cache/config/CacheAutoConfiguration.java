@@ -1,21 +1,37 @@
 package com.example.cache.config;
 
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.actuate.metrics.cache.CacheMetricsRegistrar;
+import org.springframework.boot.autoconfigure.AutoConfigureAfter;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnBean;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnClass;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnExpression;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.data.redis.RedisAutoConfiguration;
 import org.springframework.boot.context.properties.EnableConfigurationProperties;
 import org.springframework.cache.CacheManager;
 import org.springframework.cache.annotation.EnableCaching;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.context.annotation.Lazy;
+import org.springframework.data.redis.connection.ReactiveRedisConnectionFactory;
 import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.core.ReactiveRedisTemplate;
 import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.data.redis.serializer.RedisSerializationContext;
 
+import com.example.cache.AsyncCacheHelper;
+import com.example.cache.AsyncCacheHelperImpl;
 import com.example.cache.CacheHelper;
 import com.example.cache.CacheHelperImpl;
+import com.example.cache.NearCacheInvalidator;
+import com.example.cache.ReactiveUnifiedRedisCacheManager;
 import com.example.cache.RedisJsonSerializer;
 import com.example.cache.UnifiedRedisCacheManager;
+import com.example.cache.VersionComparator;
 
 /**
  * This configuration is automatically added to the spring context when the dependency on this library is added to a project. 
@@ -81,6 +97,7 @@ import com.example.cache.UnifiedRedisCacheManager;
 @Configuration
 @EnableCaching
 @EnableConfigurationProperties({ CacheSettings.class})
+@AutoConfigureAfter(RedisAutoConfiguration.class)
 public class CacheAutoConfiguration {
 
 	@Bean
@@ -89,6 +106,12 @@ public class CacheAutoConfiguration {
 		return new CacheHelperImpl(cacheManager);
 	}
 
+	@Bean
+	public AsyncCacheHelper asyncCacheHelper(CacheHelper cacheHelper) {
+		//Expose an instance of the non-blocking cache helper.
+		return new AsyncCacheHelperImpl(cacheHelper);
+	}
+
 	//This caching library is only enabled when the cache type is set to Redis.	
 	@ConditionalOnExpression("'${spring.cache.type:redis}' == 'redis'")
 	protected static class CacheEnabledConfiguration {
@@ -109,11 +132,58 @@ public class CacheAutoConfiguration {
 			return template;
 		}
 
+		@Bean
+		public NearCacheInvalidator nearCacheInvalidator(RedisTemplate<?, ?> redisTemplate, CacheSettings cacheSettings) {
+			return new NearCacheInvalidator(redisTemplate, cacheSettings.getRedis().getNearCacheChannel());
+		}
+
+		//Near cache invalidations published by other instances are received via this container. The container only subscribes
+		//to the channel if at least one cache has a near cache.
+		@Bean
+		public RedisMessageListenerContainer cacheMessageListenerContainer(RedisConnectionFactory connectionFactory,
+				NearCacheInvalidator nearCacheInvalidator, CacheSettings cacheSettings) {
+			RedisMessageListenerContainer container = new RedisMessageListenerContainer();
+			container.setConnectionFactory(connectionFactory);
+			if (cacheSettings.getNearCaches() != null && !cacheSettings.getNearCaches().isEmpty()) {
+				container.addMessageListener(nearCacheInvalidator, new ChannelTopic(nearCacheInvalidator.getChannel()));
+			}
+			return container;
+		}
+
 		@Bean(name = {"cacheManager"})
 		public CacheManager cacheManager(RedisTemplate<?, ?> redisTemplate, @Lazy CacheMetricsRegistrar registrar, CacheSettings cacheSettings,
-				@Value("${info.build.version:1.0.0-SNAPSHOT}") String applicationVersion) {
-				
-			return new UnifiedRedisCacheManager(redisTemplate, registrar, cacheSettings, applicationVersion);
+				@Value("${info.build.version:1.0.0-SNAPSHOT}") String applicationVersion, NearCacheInvalidator nearCacheInvalidator,
+				ObjectProvider<VersionComparator> versionComparator) {
+
+			UnifiedRedisCacheManager cacheManager = new UnifiedRedisCacheManager(redisTemplate, registrar, cacheSettings, applicationVersion);
+			cacheManager.setNearCacheInvalidator(nearCacheInvalidator);
+			//A comparator bean replaces the built-in ordering of the versions.
+			versionComparator.ifAvailable(cacheManager::setVersionComparator);
+			return cacheManager;
+		}
+
+		//The instance is out of service until the hot keys of the caches have been pre-warmed, it is always up without hot keys.
+		@Bean
+		public CachePrewarmHealthIndicator cachePrewarmHealthIndicator(CacheManager cacheManager) {
+			return new CachePrewarmHealthIndicator((UnifiedRedisCacheManager) cacheManager);
+		}
+
+		//The state of the circuit breaker (when it is enabled) is published as a health indicator.
+		@Bean
+		@ConditionalOnProperty(name = "spring.cache.redis.circuit-breaker.enabled", havingValue = "true")
+		public RedisCircuitBreakerHealthIndicator redisCircuitBreakerHealthIndicator(CacheManager cacheManager) {
+			return new RedisCircuitBreakerHealthIndicator(((UnifiedRedisCacheManager) cacheManager).getCircuitBreaker());
+		}
+
+		//The reactive view of the caches is only available if project reactor is on the classpath and the redis connection factory
+		//supports reactive connections (Lettuce).
+		@Bean
+		@ConditionalOnClass(name = "reactor.core.publisher.Flux")
+		@ConditionalOnBean(ReactiveRedisConnectionFactory.class)
+		public ReactiveUnifiedRedisCacheManager reactiveCacheManager(CacheManager cacheManager, ReactiveRedisConnectionFactory connectionFactory) {
+			//The reactive cache only uses the raw connection, the serializers of the template are not used.
+			ReactiveRedisTemplate<String, String> reactiveTemplate = new ReactiveRedisTemplate<>(connectionFactory, RedisSerializationContext.string());
+			return new ReactiveUnifiedRedisCacheManager((UnifiedRedisCacheManager) cacheManager, reactiveTemplate);
 		}
 	}
 
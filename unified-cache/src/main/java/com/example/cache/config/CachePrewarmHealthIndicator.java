@@ -0,0 +1,31 @@
+package com.example.cache.config;
+
+import org.springframework.boot.actuate.health.AbstractHealthIndicator;
+import org.springframework.boot.actuate.health.Health;
+
+import com.example.cache.UnifiedRedisCacheManager;
+
+/**
+ * Reports whether the hot keys of the caches have been pre-warmed. The health is out of service while the top keys are fetched as the
+ * application starts, so the instance does not take traffic until the values of the older versions have been promoted. The number of
+ * hot keys that had a value (per cache) is included as a detail.
+ */
+public class CachePrewarmHealthIndicator extends AbstractHealthIndicator {
+
+	private final UnifiedRedisCacheManager cacheManager;
+
+	public CachePrewarmHealthIndicator(UnifiedRedisCacheManager cacheManager) {
+		super("The pre-warming of the caches could not be determined.");
+		this.cacheManager = cacheManager;
+	}
+
+	@Override
+	protected void doHealthCheck(Health.Builder builder) {
+		if (cacheManager.isPrewarming()) {
+			builder.outOfService();
+		} else {
+			builder.up();
+		}
+		builder.withDetail("prewarmedKeys", cacheManager.getPrewarmedKeys());
+	}
+}
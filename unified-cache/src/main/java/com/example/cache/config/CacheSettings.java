@@ -1,8 +1,12 @@
 package com.example.cache.config;
 
 import java.time.Duration;
+import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
+import org.springframework.util.unit.DataSize;
+
 import org.springframework.boot.context.properties.ConfigurationProperties;
 
 /**
@@ -17,6 +21,36 @@ public class CacheSettings {
 
 	private Map<String, Long> expirations;
 
+	/**
+	 * The maximum number of Redis operations in flight at once for specific caches (by name), overriding the default limit.
+	 */
+	private Map<String, Integer> maxConcurrentOperations = new HashMap<>();
+
+	/**
+	 * Caches (by name) that should have an in-process near cache in front of Redis.
+	 */
+	private Map<String, NearCacheSettings> nearCaches = new HashMap<>();
+
+	/**
+	 * Caches (by name) that should keep a bloom filter of their keys, so a lookup of a key that was never written skips Redis.
+	 */
+	private Map<String, BloomFilterSettings> bloomFilters = new HashMap<>();
+
+	/**
+	 * Caches (by name) that should keep a ranking of their hot keys in Redis, a new version of the application fetches the top keys
+	 * (promoting their values from the older versions) as it starts.
+	 */
+	private Map<String, HotKeySettings> hotKeys = new HashMap<>();
+
+	/**
+	 * The models (root types of the values) cached by specific caches (by name). Each version of the application publishes a
+	 * fingerprint of the serialVersionUIDs of the types reachable from the models, the values of an older version with the same
+	 * fingerprint are then promoted by Redis without being checked by the application. Only list the caches whose values are all
+	 * of the listed types. The fingerprint is only used if the graph of types is closed (final types, collections and maps of final
+	 * types), otherwise the values of older versions are checked by the application before they are promoted.
+	 */
+	private Map<String, List<Class<?>>> models = new HashMap<>();
+
 	private final Redis redis = new Redis();
 	public Map<String, Long> getExpirations() {
 		return expirations;
@@ -26,9 +60,283 @@ public class CacheSettings {
 		this.expirations = expirations;
 	}
 
+	public Map<String, Integer> getMaxConcurrentOperations() {
+		return maxConcurrentOperations;
+	}
+
+	public void setMaxConcurrentOperations(Map<String, Integer> maxConcurrentOperations) {
+		this.maxConcurrentOperations = maxConcurrentOperations;
+	}
+
+	public Map<String, NearCacheSettings> getNearCaches() {
+		return nearCaches;
+	}
+
+	public void setNearCaches(Map<String, NearCacheSettings> nearCaches) {
+		this.nearCaches = nearCaches;
+	}
+
+	public Map<String, BloomFilterSettings> getBloomFilters() {
+		return bloomFilters;
+	}
+
+	public void setBloomFilters(Map<String, BloomFilterSettings> bloomFilters) {
+		this.bloomFilters = bloomFilters;
+	}
+
+	public Map<String, HotKeySettings> getHotKeys() {
+		return hotKeys;
+	}
+
+	public void setHotKeys(Map<String, HotKeySettings> hotKeys) {
+		this.hotKeys = hotKeys;
+	}
+
+	public Map<String, List<Class<?>>> getModels() {
+		return models;
+	}
+
+	public void setModels(Map<String, List<Class<?>>> models) {
+		this.models = models;
+	}
+
 	public Redis getRedis() {
 		return this.redis;
 	}
+
+	/**
+	 * Near cache properties for a specific cache.
+	 */
+	public static class NearCacheSettings {
+
+		/**
+		 * Where the near cache holds its entries.
+		 */
+		private NearCacheType type = NearCacheType.HEAP;
+
+		/**
+		 * The maximum number of entries held in a heap near cache.
+		 */
+		private long maximumSize = 10000;
+
+		/**
+		 * The maximum amount of direct memory used by an off-heap near cache.
+		 */
+		private DataSize maximumMemory = DataSize.ofMegabytes(64);
+
+		/**
+		 * How long an entry is held in the near cache after it has been written.
+		 */
+		private Duration timeToLive = Duration.ofMinutes(1);
+
+		public NearCacheType getType() {
+			return type;
+		}
+
+		public void setType(NearCacheType type) {
+			this.type = type;
+		}
+
+		public long getMaximumSize() {
+			return maximumSize;
+		}
+
+		public void setMaximumSize(long maximumSize) {
+			this.maximumSize = maximumSize;
+		}
+
+		public DataSize getMaximumMemory() {
+			return maximumMemory;
+		}
+
+		public void setMaximumMemory(DataSize maximumMemory) {
+			this.maximumMemory = maximumMemory;
+		}
+
+		public Duration getTimeToLive() {
+			return timeToLive;
+		}
+
+		public void setTimeToLive(Duration timeToLive) {
+			this.timeToLive = timeToLive;
+		}
+	}
+
+	/**
+	 * Bloom filter properties for a specific cache. The filter is built from a scan of the cache's keys at startup and on every rebuild,
+	 * in between it learns of the keys written by this instance only. Keys written by other instances are a miss on this instance until
+	 * the next rebuild, so the filter suits caches where most lookups are for keys that do not exist.
+	 */
+	public static class BloomFilterSettings {
+
+		/**
+		 * The number of keys the filter is expected to hold.
+		 */
+		private long expectedInsertions = 1000000;
+
+		/**
+		 * The target probability that a key that was never written is looked up in Redis anyway.
+		 */
+		private double falsePositiveProbability = 0.01;
+
+		/**
+		 * The maximum size of the filter, a smaller filter has a higher false positive probability.
+		 */
+		private DataSize maximumMemory = DataSize.ofMegabytes(16);
+
+		/**
+		 * How often the filter is rebuilt from the keys in Redis, this drops evicted (and expired) keys.
+		 */
+		private Duration rebuildInterval = Duration.ofHours(1);
+
+		public long getExpectedInsertions() {
+			return expectedInsertions;
+		}
+
+		public void setExpectedInsertions(long expectedInsertions) {
+			this.expectedInsertions = expectedInsertions;
+		}
+
+		public double getFalsePositiveProbability() {
+			return falsePositiveProbability;
+		}
+
+		public void setFalsePositiveProbability(double falsePositiveProbability) {
+			this.falsePositiveProbability = falsePositiveProbability;
+		}
+
+		public DataSize getMaximumMemory() {
+			return maximumMemory;
+		}
+
+		public void setMaximumMemory(DataSize maximumMemory) {
+			this.maximumMemory = maximumMemory;
+		}
+
+		public Duration getRebuildInterval() {
+			return rebuildInterval;
+		}
+
+		public void setRebuildInterval(Duration rebuildInterval) {
+			this.rebuildInterval = rebuildInterval;
+		}
+	}
+
+	/**
+	 * Hot key properties for a specific cache. A fraction of the hits of every instance are sampled into a ranking (a decayed sorted
+	 * set) in Redis. As a new instance starts, it fetches the top keys of the ranking before it reports that it is ready.
+	 */
+	public static class HotKeySettings {
+
+		/**
+		 * The fraction of the hits that are sampled.
+		 */
+		private double sampleRate = 0.01;
+
+		/**
+		 * The maximum number of keys in the ranking.
+		 */
+		private int maximumKeys = 10000;
+
+		/**
+		 * How often each instance adds its sampled hits to the ranking.
+		 */
+		private Duration flushInterval = Duration.ofSeconds(10);
+
+		/**
+		 * A hit is worth half as much in the ranking once per interval, so the ranking follows the keys that are hot now.
+		 */
+		private Duration decayInterval = Duration.ofHours(1);
+
+		/**
+		 * The number of top keys fetched as an instance starts, zero to not pre-warm the cache.
+		 */
+		private int prewarmKeys = 1000;
+
+		/**
+		 * The time spent fetching the top keys as an instance starts, the remaining keys are not fetched once it has passed.
+		 */
+		private Duration prewarmTimeout = Duration.ofSeconds(10);
+
+		public double getSampleRate() {
+			return sampleRate;
+		}
+
+		public void setSampleRate(double sampleRate) {
+			this.sampleRate = sampleRate;
+		}
+
+		public int getMaximumKeys() {
+			return maximumKeys;
+		}
+
+		public void setMaximumKeys(int maximumKeys) {
+			this.maximumKeys = maximumKeys;
+		}
+
+		public Duration getFlushInterval() {
+			return flushInterval;
+		}
+
+		public void setFlushInterval(Duration flushInterval) {
+			this.flushInterval = flushInterval;
+		}
+
+		public Duration getDecayInterval() {
+			return decayInterval;
+		}
+
+		public void setDecayInterval(Duration decayInterval) {
+			this.decayInterval = decayInterval;
+		}
+
+		public int getPrewarmKeys() {
+			return prewarmKeys;
+		}
+
+		public void setPrewarmKeys(int prewarmKeys) {
+			this.prewarmKeys = prewarmKeys;
+		}
+
+		public Duration getPrewarmTimeout() {
+			return prewarmTimeout;
+		}
+
+		public void setPrewarmTimeout(Duration prewarmTimeout) {
+			this.prewarmTimeout = prewarmTimeout;
+		}
+	}
+
+	public enum NearCacheType {
+
+		/**
+		 * The deserialized values are held on the heap, a hit does not need to deserialize the value.
+		 */
+		HEAP,
+
+		/**
+		 * The serialized values are held in direct memory, this keeps the heap small but a hit deserializes the value.
+		 */
+		OFF_HEAP
+	}
+
+	public enum VersionOrdering {
+
+		/**
+		 * Integer versions ("42"), ordered numerically.
+		 */
+		INTEGER,
+
+		/**
+		 * Semantic versions ("1.4.2", "2.0.0-rc.1"), a pre-release is older than the release.
+		 */
+		SEMANTIC,
+
+		/**
+		 * Build ids that start with a timestamp ("20241016.153000", "2024-10-16T15:30:00Z"), optionally followed by a build number.
+		 */
+		BUILD_TIMESTAMP
+	}
 	
 	/**
 	 * Redis-specific cache properties.
@@ -45,6 +353,11 @@ public class CacheSettings {
 		 */
 		private boolean cacheNullValues = true;
 
+		/**
+		 * Time to live of a cached null value (a key that is known to have no value), capped by the time to live of the cache.
+		 */
+		private Duration nullValueTimeToLive = Duration.ofMinutes(1);
+
 		/**
 		 * Key prefix.
 		 */
@@ -55,6 +368,125 @@ public class CacheSettings {
 		 */
 		private boolean useKeyPrefix = true;
 
+		/**
+		 * The maximum number of entries sent to Redis in a single pipeline by the bulk cache operations.
+		 */
+		private int batchSize = 500;
+
+		/**
+		 * The COUNT hint passed to each SCAN command when clearing a cache.
+		 */
+		private int scanCount = 1000;
+
+		/**
+		 * How long a single key lookup waits for other concurrent lookups of the same cache so they can be sent to Redis as one
+		 * pipelined batch, for example 200us. Zero disables batching.
+		 */
+		private Duration getBatchWindow = Duration.ZERO;
+
+		/**
+		 * The maximum number of lookups in a single batch, a batch is sent as soon as it is full.
+		 */
+		private int getBatchSize = 100;
+
+		/**
+		 * How long a batched lookup waits for its batch to be fetched, after which the lookup is sent to Redis on its own.
+		 */
+		private Duration getBatchTimeout = Duration.ofSeconds(1);
+
+		/**
+		 * How long a cache lookup waits on a load of the same key (via @Cacheable(sync = true)) that is already in progress
+		 * before loading the value itself.
+		 */
+		private Duration loadTimeout = Duration.ofSeconds(10);
+
+		/**
+		 * Whether a cluster wide lease is taken when loading a missing key (via @Cacheable(sync = true)), so that only one
+		 * instance loads the value and the other instances wait for it.
+		 */
+		private boolean useLoadLeases = false;
+
+		/**
+		 * How long a load lease is held before it expires, this should be longer than a typical load.
+		 */
+		private Duration loadLeaseTime = Duration.ofSeconds(10);
+
+		/**
+		 * How often an instance waiting on the load lease of another instance checks if the lease has been released.
+		 */
+		private Duration loadLeasePollInterval = Duration.ofMillis(50);
+
+		/**
+		 * Whether each cache's key prefix includes a generation counter stored in Redis. Clearing a cache then only increments
+		 * the generation and the old keys age out via their time to live, the keys of a cache without a time to live are removed in
+		 * the background. Requires the key prefix.
+		 */
+		private boolean useGenerations = false;
+
+		/**
+		 * How often each instance checks Redis for a new generation of its caches.
+		 */
+		private Duration generationRefreshInterval = Duration.ofSeconds(1);
+
+		/**
+		 * Whether the older versions whose values failed to deserialize (per root type) are remembered, so their values are no
+		 * longer read from Redis. The versions are shared by all instances through Redis.
+		 */
+		private boolean rememberIncompatibleVersions = true;
+
+		/**
+		 * How often each instance publishes its model fingerprints and the incompatible versions it has found, and reads those of
+		 * the other instances.
+		 */
+		private Duration versionRegistryRefreshInterval = Duration.ofSeconds(30);
+
+		/**
+		 * Whether identical payloads of different versions of a key are only stored once (content addressed), the version fields then
+		 * hold a short reference to the payload. This reduces the memory used while several versions are live, at the cost of running
+		 * a script for each write.
+		 */
+		private boolean deduplicatePayloads = false;
+
+		/**
+		 * The number of older application versions whose values are kept in each key besides the current version's value, the values
+		 * of older versions are pruned when a key is written and by a periodic sweep of the keys. Negative to keep all versions.
+		 */
+		private int retainedVersions = -1;
+
+		/**
+		 * How often the keys of each cache are swept for the values of versions that are no longer retained (or have expired).
+		 */
+		private Duration versionSweepInterval = Duration.ofHours(1);
+
+		/**
+		 * Whether each version's value in a key has its own time to live, rather than every write extending the time to live of the
+		 * whole key (and so of the values of the other versions). Uses HEXPIRE on Redis 7.4 or later, older servers store the
+		 * expiration time of each value in the key instead.
+		 */
+		private boolean fieldTimeToLive = false;
+
+		/**
+		 * How the application versions are ordered, a value of an older version is promoted to the current version. Versions that
+		 * are not integers are published into a registry in Redis, so each instance knows the older versions of a cache.
+		 */
+		private VersionOrdering versionOrdering = VersionOrdering.INTEGER;
+
+		/**
+		 * The channel used to publish near cache invalidations to all instances.
+		 */
+		private String nearCacheChannel = "unified-cache:near-cache-invalidations";
+
+		/**
+		 * The maximum number of Redis operations of a single cache that are in flight at once, zero for no limit. Once the limit is
+		 * reached, gets are a miss and puts are dropped rather than queueing behind the operations of the cache.
+		 */
+		private int maxConcurrentOperations = 0;
+
+		/**
+		 * The circuit breaker that skips calls to Redis while Redis is degraded.
+		 */
+		private final CircuitBreakerSettings circuitBreaker = new CircuitBreakerSettings();
+
 		public Duration getTimeToLive() {
 			return this.timeToLive;
 		}
@@ -71,6 +503,14 @@ public class CacheSettings {
 			this.cacheNullValues = cacheNullValues;
 		}
 
+		public Duration getNullValueTimeToLive() {
+			return nullValueTimeToLive;
+		}
+
+		public void setNullValueTimeToLive(Duration nullValueTimeToLive) {
+			this.nullValueTimeToLive = nullValueTimeToLive;
+		}
+
 		public String getKeyPrefix() {
 			return this.keyPrefix;
 		}
@@ -86,6 +526,280 @@ public class CacheSettings {
 		public void setUseKeyPrefix(boolean useKeyPrefix) {
 			this.useKeyPrefix = useKeyPrefix;
 		}
+
+		public int getBatchSize() {
+			return batchSize;
+		}
+
+		public void setBatchSize(int batchSize) {
+			this.batchSize = batchSize;
+		}
+
+		public int getScanCount() {
+			return scanCount;
+		}
+
+		public void setScanCount(int scanCount) {
+			this.scanCount = scanCount;
+		}
+
+		public Duration getGetBatchWindow() {
+			return getBatchWindow;
+		}
+
+		public void setGetBatchWindow(Duration getBatchWindow) {
+			this.getBatchWindow = getBatchWindow;
+		}
+
+		public int getGetBatchSize() {
+			return getBatchSize;
+		}
+
+		public void setGetBatchSize(int getBatchSize) {
+			this.getBatchSize = getBatchSize;
+		}
+
+		public Duration getGetBatchTimeout() {
+			return getBatchTimeout;
+		}
+
+		public void setGetBatchTimeout(Duration getBatchTimeout) {
+			this.getBatchTimeout = getBatchTimeout;
+		}
+
+		public Duration getLoadTimeout() {
+			return loadTimeout;
+		}
+
+		public void setLoadTimeout(Duration loadTimeout) {
+			this.loadTimeout = loadTimeout;
+		}
+
+		public boolean isUseLoadLeases() {
+			return useLoadLeases;
+		}
+
+		public void setUseLoadLeases(boolean useLoadLeases) {
+			this.useLoadLeases = useLoadLeases;
+		}
+
+		public Duration getLoadLeaseTime() {
+			return loadLeaseTime;
+		}
+
+		public void setLoadLeaseTime(Duration loadLeaseTime) {
+			this.loadLeaseTime = loadLeaseTime;
+		}
+
+		public Duration getLoadLeasePollInterval() {
+			return loadLeasePollInterval;
+		}
+
+		public void setLoadLeasePollInterval(Duration loadLeasePollInterval) {
+			this.loadLeasePollInterval = loadLeasePollInterval;
+		}
+
+		public boolean isUseGenerations() {
+			return useGenerations;
+		}
+
+		public void setUseGenerations(boolean useGenerations) {
+			this.useGenerations = useGenerations;
+		}
+
+		public Duration getGenerationRefreshInterval() {
+			return generationRefreshInterval;
+		}
+
+		public void setGenerationRefreshInterval(Duration generationRefreshInterval) {
+			this.generationRefreshInterval = generationRefreshInterval;
+		}
+
+		public boolean isRememberIncompatibleVersions() {
+			return rememberIncompatibleVersions;
+		}
+
+		public void setRememberIncompatibleVersions(boolean rememberIncompatibleVersions) {
+			this.rememberIncompatibleVersions = rememberIncompatibleVersions;
+		}
+
+		public Duration getVersionRegistryRefreshInterval() {
+			return versionRegistryRefreshInterval;
+		}
+
+		public void setVersionRegistryRefreshInterval(Duration versionRegistryRefreshInterval) {
+			this.versionRegistryRefreshInterval = versionRegistryRefreshInterval;
+		}
+
+		public boolean isDeduplicatePayloads() {
+			return deduplicatePayloads;
+		}
+
+		public void setDeduplicatePayloads(boolean deduplicatePayloads) {
+			this.deduplicatePayloads = deduplicatePayloads;
+		}
+
+		public int getRetainedVersions() {
+			return retainedVersions;
+		}
+
+		public void setRetainedVersions(int retainedVersions) {
+			this.retainedVersions = retainedVersions;
+		}
+
+		public Duration getVersionSweepInterval() {
+			return versionSweepInterval;
+		}
+
+		public void setVersionSweepInterval(Duration versionSweepInterval) {
+			this.versionSweepInterval = versionSweepInterval;
+		}
+
+		public boolean isFieldTimeToLive() {
+			return fieldTimeToLive;
+		}
+
+		public void setFieldTimeToLive(boolean fieldTimeToLive) {
+			this.fieldTimeToLive = fieldTimeToLive;
+		}
+
+		public VersionOrdering getVersionOrdering() {
+			return versionOrdering;
+		}
+
+		public void setVersionOrdering(VersionOrdering versionOrdering) {
+			this.versionOrdering = versionOrdering;
+		}
+
+		public String getNearCacheChannel() {
+			return nearCacheChannel;
+		}
+
+		public void setNearCacheChannel(String nearCacheChannel) {
+			this.nearCacheChannel = nearCacheChannel;
+		}
+
+		public int getMaxConcurrentOperations() {
+			return maxConcurrentOperations;
+		}
+
+		public void setMaxConcurrentOperations(int maxConcurrentOperations) {
+			this.maxConcurrentOperations = maxConcurrentOperations;
+		}
+
+		public CircuitBreakerSettings getCircuitBreaker() {
+			return circuitBreaker;
+		}
+	}
+
+	/**
+	 * Circuit breaker properties, the breaker is shared by all of the caches.
+	 */
+	public static class CircuitBreakerSettings {
+
+		/**
+		 * Whether calls to Redis are made through a circuit breaker.
+		 */
+		private boolean enabled = false;
+
+		/**
+		 * The number of most recent calls used to compute the failure and slow call rates.
+		 */
+		private int slidingWindowSize = 100;
+
+		/**
+		 * The number of calls that must be recorded before the breaker can open.
+		 */
+		private int minimumNumberOfCalls = 20;
+
+		/**
+		 * The percentage of failed calls at which the breaker opens.
+		 */
+		private float failureRateThreshold = 50;
+
+		/**
+		 * Calls that take longer than this are considered slow.
+		 */
+		private Duration slowCallDuration = Duration.ofMillis(500);
+
+		/**
+		 * The percentage of slow calls at which the breaker opens.
+		 */
+		private float slowCallRateThreshold = 50;
+
+		/**
+		 * How long the breaker stays open before probe calls are let through.
+		 */
+		private Duration waitDurationInOpenState = Duration.ofSeconds(10);
+
+		/**
+		 * The number of probe calls that must succeed to close the breaker again.
+		 */
+		private int permittedCallsInHalfOpenState = 5;
+
+		public boolean isEnabled() {
+			return enabled;
+		}
+
+		public void setEnabled(boolean enabled) {
+			this.enabled = enabled;
+		}
+
+		public int getSlidingWindowSize() {
+			return slidingWindowSize;
+		}
+
+		public void setSlidingWindowSize(int slidingWindowSize) {
+			this.slidingWindowSize = slidingWindowSize;
+		}
+
+		public int getMinimumNumberOfCalls() {
+			return minimumNumberOfCalls;
+		}
+
+		public void setMinimumNumberOfCalls(int minimumNumberOfCalls) {
+			this.minimumNumberOfCalls = minimumNumberOfCalls;
+		}
+
+		public float getFailureRateThreshold() {
+			return failureRateThreshold;
+		}
+
+		public void setFailureRateThreshold(float failureRateThreshold) {
+			this.failureRateThreshold = failureRateThreshold;
+		}
+
+		public Duration getSlowCallDuration() {
+			return slowCallDuration;
+		}
+
+		public void setSlowCallDuration(Duration slowCallDuration) {
+			this.slowCallDuration = slowCallDuration;
+		}
+
+		public float getSlowCallRateThreshold() {
+			return slowCallRateThreshold;
+		}
+
+		public void setSlowCallRateThreshold(float slowCallRateThreshold) {
+			this.slowCallRateThreshold = slowCallRateThreshold;
+		}
+
+		public Duration getWaitDurationInOpenState() {
+			return waitDurationInOpenState;
+		}
+
+		public void setWaitDurationInOpenState(Duration waitDurationInOpenState) {
+			this.waitDurationInOpenState = waitDurationInOpenState;
+		}
+
+		public int getPermittedCallsInHalfOpenState() {
+			return permittedCallsInHalfOpenState;
+		}
+
+		public void setPermittedCallsInHalfOpenState(int permittedCallsInHalfOpenState) {
+			this.permittedCallsInHalfOpenState = permittedCallsInHalfOpenState;
+		}
 	}
 
 }
@@ -0,0 +1,38 @@
+package com.example.cache.config;
+
+import java.time.Instant;
+
+import org.springframework.boot.actuate.health.AbstractHealthIndicator;
+import org.springframework.boot.actuate.health.Health;
+
+import com.example.cache.RedisCircuitBreaker;
+
+/**
+ * Reports the state of the redis circuit breaker shared by the caches. The health is always up: an open breaker means the caches
+ * are falling back to the underlying data source, the application itself can still serve requests and must not be taken out of
+ * rotation. The state of the breaker, its failure count and rates and, while open, when it will let probe calls through are
+ * included as details.
+ */
+public class RedisCircuitBreakerHealthIndicator extends AbstractHealthIndicator {
+
+	private final RedisCircuitBreaker circuitBreaker;
+
+	public RedisCircuitBreakerHealthIndicator(RedisCircuitBreaker circuitBreaker) {
+		super("The state of the redis circuit breaker could not be determined.");
+		this.circuitBreaker = circuitBreaker;
+	}
+
+	@Override
+	protected void doHealthCheck(Health.Builder builder) {
+		builder.up()
+			.withDetail("state", circuitBreaker.getState())
+			.withDetail("failedCalls", circuitBreaker.getFailureCount())
+			.withDetail("failureRate", circuitBreaker.getFailureRate())
+			.withDetail("slowCallRate", circuitBreaker.getSlowCallRate())
+			.withDetail("rejectedCalls", circuitBreaker.getRejectedCount());
+		Instant openUntil = circuitBreaker.getOpenUntil();
+		if (openUntil != null) {
+			builder.withDetail("openUntil", openUntil);
+		}
+	}
+}
@@ -1,10 +1,21 @@
 package com.example.cache.config;
 
+import java.util.concurrent.TimeUnit;
+
+import com.example.cache.GetBatcher;
+import com.example.cache.NearCache;
+import com.example.cache.IncompatibleVersions;
+import com.example.cache.OffHeapNearCache;
+import com.example.cache.RedisCircuitBreaker;
 import com.example.cache.UnifiedRedisCache;
 
+import io.micrometer.core.instrument.DistributionSummary;
 import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.FunctionTimer;
+import io.micrometer.core.instrument.Gauge;
 import io.micrometer.core.instrument.MeterRegistry;
 import io.micrometer.core.instrument.Tag;
+import io.micrometer.core.instrument.Timer;
 import io.micrometer.core.instrument.binder.cache.CacheMeterBinder;
 
 public class UnifiedRedisCacheMetrics extends CacheMeterBinder {
@@ -53,6 +64,170 @@ public class UnifiedRedisCacheMetrics extends CacheMeterBinder {
                 .tags(getTagsWithCacheName()).tag("result", "promotion")
                 .description("the number of times a cached value has been promoted from an earlier version of the application.")
                 .register(registry);
+
+        if (cache.getIncompatibleVersions() != null) {
+            Gauge.builder("cache.promotions.incompatible", cache.getIncompatibleVersions(), IncompatibleVersions::size)
+                    .tags(getTagsWithCacheName())
+                    .description("the number of older versions (per root type) whose values are incompatible with the current version and are no longer read.")
+                    .register(registry);
+        }
+
+        FunctionCounter.builder("cache.gets.negative", cache, c -> c.getNegativeHitCount())
+                .tags(getTagsWithCacheName())
+                .description("the number of hits that returned a cached null value (the key is known to have no value).")
+                .register(registry);
+
+        FunctionTimer.builder("cache.puts.batches", cache, c -> c.getBatchPutCount(), c -> c.getBatchPutTime(), TimeUnit.NANOSECONDS)
+                .tags(getTagsWithCacheName())
+                .description("the number and total time of the pipelined batches used to put multiple values into the cache.")
+                .register(registry);
+
+        FunctionCounter.builder("cache.puts.failures", cache, c -> c.getBatchPutFailureCount())
+                .tags(getTagsWithCacheName())
+                .description("the number of values that could not be written to the cache by a batch put.")
+                .register(registry);
+
+        FunctionCounter.builder("cache.loads.coalesced", cache, c -> c.getCoalescedLoadCount())
+                .tags(getTagsWithCacheName())
+                .description("the number of cache loads that waited on a load of the same key already in progress, rather than loading the value.")
+                .register(registry);
+
+        FunctionCounter.builder("cache.loads.timeouts", cache, c -> c.getLoadTimeoutCount())
+                .tags(getTagsWithCacheName())
+                .description("the number of cache loads that timed out waiting on a load in progress and loaded the value themselves.")
+                .register(registry);
+
+        FunctionCounter.builder("cache.loads.leases", cache, c -> c.getLeaseWaitCount())
+                .tags(getTagsWithCacheName()).tag("result", "waited")
+                .description("the number of cache loads that waited on the lease of another instance and read the value it loaded.")
+                .register(registry);
+
+        FunctionCounter.builder("cache.loads.leases", cache, c -> c.getLeaseFallbackCount())
+                .tags(getTagsWithCacheName()).tag("result", "fallback")
+                .description("the number of cache loads that waited on the lease of another instance but loaded the value themselves.")
+                .register(registry);
+
+        FunctionCounter.builder("cache.clear.removals", cache, c -> c.getClearedKeyCount())
+                .tags(getTagsWithCacheName())
+                .description("the number of keys removed by clearing the cache, updated while a clear is in progress.")
+                .register(registry);
+
+        Gauge.builder("cache.clear.active", cache, c -> c.isClearInProgress() ? 1 : 0)
+                .tags(getTagsWithCacheName())
+                .description("1 while the cache is being cleared, otherwise 0.")
+                .register(registry);
+
+        RedisCircuitBreaker circuitBreaker = cache.getCircuitBreaker();
+        if (circuitBreaker != null) {
+            Gauge.builder("cache.circuit.state", circuitBreaker, c -> c.getState().ordinal())
+                    .tags(getTagsWithCacheName())
+                    .description("the state of the redis circuit breaker: 0 closed, 1 half open, 2 open.")
+                    .register(registry);
+
+            FunctionCounter.builder("cache.circuit.rejections", cache, c -> c.getCircuitRejectionCount())
+                    .tags(getTagsWithCacheName())
+                    .description("the number of calls to redis that were skipped because the circuit breaker was open.")
+                    .register(registry);
+        }
+
+        if (cache.getMaxConcurrentOperations() > 0) {
+            Gauge.builder("cache.bulkhead.active", cache, c -> c.getActiveOperations())
+                    .tags(getTagsWithCacheName())
+                    .description("the number of redis operations of the cache that are in flight.")
+                    .register(registry);
+
+            FunctionCounter.builder("cache.bulkhead.rejections", cache, c -> c.getBulkheadRejectionCount())
+                    .tags(getTagsWithCacheName())
+                    .description("the number of calls to redis that were skipped because the cache had the maximum number of operations in flight.")
+                    .register(registry);
+        }
+
+        if (cache.isBloomFilterEnabled()) {
+            FunctionCounter.builder("cache.bloom.skips", cache, c -> c.getBloomFilterSkipCount())
+                    .tags(getTagsWithCacheName())
+                    .description("the number of lookups that were a miss without calling redis, because the bloom filter showed the key was never written.")
+                    .register(registry);
+
+            Gauge.builder("cache.bloom.fpp", cache, c -> c.getBloomFilter() != null ? c.getBloomFilter().getExpectedFalsePositiveProbability() : 0)
+                    .tags(getTagsWithCacheName())
+                    .description("the probability that a key that was never written is looked up in redis anyway, given the keys in the bloom filter.")
+                    .register(registry);
+
+            Gauge.builder("cache.bloom.memory", cache, c -> c.getBloomFilter() != null ? c.getBloomFilter().getMemory() : 0)
+                    .tags(getTagsWithCacheName())
+                    .description("the size of the bloom filter.")
+                    .baseUnit("bytes")
+                    .register(registry);
+        }
+
+        if (cache.getRetainedVersions() >= 0 || cache.isFieldTimeToLive()) {
+            FunctionCounter.builder("cache.versions.pruned", cache, c -> c.getPrunedVersionCount())
+                    .tags(getTagsWithCacheName())
+                    .description("the number of values of stale (or expired) versions that were pruned from the keys.")
+                    .register(registry);
+
+            FunctionCounter.builder("cache.versions.pruned.bytes", cache, c -> c.getPrunedVersionBytes())
+                    .tags(getTagsWithCacheName())
+                    .description("the size of the values of stale (or expired) versions that were pruned from the keys.")
+                    .baseUnit("bytes")
+                    .register(registry);
+        }
+
+        GetBatcher getBatcher = cache.getGetBatcher();
+        if (getBatcher != null) {
+            getBatcher.setMetrics(
+                    DistributionSummary.builder("cache.gets.batch.size")
+                            .tags(getTagsWithCacheName())
+                            .description("the number of lookups sent to redis in each batch.")
+                            .publishPercentileHistogram()
+                            .register(registry),
+                    Timer.builder("cache.gets.batch.wait")
+                            .tags(getTagsWithCacheName())
+                            .description("how long each lookup waited for its batch to be sent to redis.")
+                            .publishPercentileHistogram()
+                            .register(registry));
+
+            FunctionCounter.builder("cache.gets.batch.overflow", getBatcher, GetBatcher::getOverflowCount)
+                    .tags(getTagsWithCacheName())
+                    .description("the number of lookups that were made directly because the batch queue was full.")
+                    .register(registry);
+        }
+
+        NearCache nearCache = cache.getNearCache();
+        if (nearCache != null) {
+            FunctionCounter.builder("cache.near.gets", nearCache, NearCache::hitCount)
+                    .tags(getTagsWithCacheName()).tag("result", "hit")
+                    .description("the number of times a value was found in the near cache, these are included in the cache hits.")
+                    .register(registry);
+
+            FunctionCounter.builder("cache.near.gets", nearCache, NearCache::missCount)
+                    .tags(getTagsWithCacheName()).tag("result", "miss")
+                    .description("the number of times a value was not found in the near cache.")
+                    .register(registry);
+
+            FunctionCounter.builder("cache.near.evictions", nearCache, NearCache::evictionCount)
+                    .tags(getTagsWithCacheName())
+                    .description("the number of entries evicted from the near cache due to its size or time to live.")
+                    .register(registry);
+
+            Gauge.builder("cache.near.size", nearCache, NearCache::size)
+                    .tags(getTagsWithCacheName())
+                    .description("the number of entries held in the near cache.")
+                    .register(registry);
+
+            FunctionCounter.builder("cache.near.invalidations.dropped", cache, c -> c.getDroppedInvalidationCount())
+                    .tags(getTagsWithCacheName())
+                    .description("the number of near cache invalidations that could not be published to the other instances.")
+                    .register(registry);
+
+            if (nearCache instanceof OffHeapNearCache) {
+                Gauge.builder("cache.near.memory", (OffHeapNearCache) nearCache, OffHeapNearCache::getAllocatedMemory)
+                        .tags(getTagsWithCacheName())
+                        .description("the number of bytes of direct memory allocated by the near cache.")
+                        .baseUnit("bytes")
+                        .register(registry);
+            }
+        }
 	}
 
 }
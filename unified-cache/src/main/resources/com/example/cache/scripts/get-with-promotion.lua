@@ -0,0 +1,109 @@
+-- Returns the cached payload for the current application version in a single round trip.
+--
+-- KEYS[1] : The cache key (a hash of application version -> serialized value)
+-- ARGV[1] : The current application version
+-- ARGV[2] : The current time in milliseconds when the values have their own time to live (see store-value.lua), zero otherwise.
+-- ARGV[3] : The time to live (in seconds) of a value promoted by the script when the values have their own time to live, zero otherwise.
+-- ARGV[4] : The number (M) of versions older than the current version that follow, or -1 if the versions are numeric.
+-- ARGV[5..M+4] : The older versions, newest first (the versions are not numeric, so the caller orders them).
+-- ARGV[M+5] : The number (N) of versions that are known to be compatible with the current version.
+-- ARGV[M+6..M+N+5] : The compatible versions (they published the same fingerprint of the cached models).
+-- ARGV[M+N+6..] : Optional pairs of (version, payload prefix) known to be incompatible with the current version. An older version's
+--             payload that starts with the prefix (the root type of the payload) is skipped in favour of the next older version.
+--
+-- If the current version has no value, the payload of the newest version that is OLDER than the current version (and not known to
+-- be incompatible) is returned instead. Numeric versions are ordered by the script, other versions are ordered by the caller. If that
+-- version is compatible, the payload is promoted to the current version (HSETNX) by the script. Otherwise the caller is responsible
+-- for verifying the payload is compatible (serialVersionUIDs match) before promoting it to the current version.
+--
+-- A version field may hold a reference to a payload stored once for all versions (see store-value.lua), the payload is returned in
+-- its place. A compatible version's reference (rather than the payload) is promoted. A value whose expiration time (stored in the
+-- '@' field of its version when the server does not support HEXPIRE) has passed is ignored. A promoted value gets its own time to
+-- live and, like a value written by store-value.lua, only ever extends the expiration of the key.
+--
+-- Returns {version, payload}, {current version, payload, promoted from version} or nil if there is nothing to return.
+local now = tonumber(ARGV[2])
+local ttl = tonumber(ARGV[3])
+
+local function resolve(value)
+	if value and string.byte(value, 1) == 1 then
+		return redis.call('HGET', KEYS[1], string.sub(value, 2))
+	end
+	return value
+end
+
+-- Returns the stored value of a version and its payload, or false if the version has no (live) value.
+local function get(field)
+	if now > 0 then
+		local expiresAt = redis.call('HGET', KEYS[1], '@' .. field)
+		if expiresAt and tonumber(expiresAt) <= now then
+			return false, false
+		end
+	end
+	local stored = redis.call('HGET', KEYS[1], field)
+	return stored, resolve(stored)
+end
+
+local _, payload = get(ARGV[1])
+if payload then
+	return {ARGV[1], payload}
+end
+
+local olderCount = tonumber(ARGV[4])
+local older = {}
+if olderCount < 0 then
+	if not string.match(ARGV[1], '^%-?%d+$') then
+		return nil
+	end
+	local current = tonumber(ARGV[1])
+	for _, field in ipairs(redis.call('HKEYS', KEYS[1])) do
+		if string.match(field, '^%-?%d+$') and tonumber(field) < current then
+			table.insert(older, field)
+		end
+	end
+	table.sort(older, function(first, second) return tonumber(first) > tonumber(second) end)
+	olderCount = 0
+else
+	for index = 5, olderCount + 4 do
+		table.insert(older, ARGV[index])
+	end
+end
+
+local compatibleCount = tonumber(ARGV[olderCount + 5])
+local compatible = {}
+for index = olderCount + 6, olderCount + compatibleCount + 5 do
+	compatible[ARGV[index]] = true
+end
+local firstExclusion = olderCount + compatibleCount + 6
+
+for _, field in ipairs(older) do
+	local stored, candidate = get(field)
+	-- An expired value, or a reference to a missing payload, is skipped.
+	local excluded = not candidate
+	for index = firstExclusion, #ARGV - 1, 2 do
+		if excluded then
+			break
+		end
+		if ARGV[index] == field and string.sub(candidate, 1, string.len(ARGV[index + 1])) == ARGV[index + 1] then
+			excluded = true
+		end
+	end
+	if not excluded then
+		if compatible[field] then
+			if redis.call('HSETNX', KEYS[1], ARGV[1], stored) == 1 and ttl > 0 then
+				local result = redis.pcall('HEXPIRE', KEYS[1], ttl, 'FIELDS', 1, ARGV[1])
+				local fieldsExpire = not (type(result) == 'table' and result.err)
+				if not fieldsExpire then
+					redis.call('HSET', KEYS[1], '@' .. ARGV[1], now + ttl * 1000)
+				end
+				local current = redis.call('TTL', KEYS[1])
+				if current < ttl and (current >= 0 or not fieldsExpire) then
+					redis.call('EXPIRE', KEYS[1], ttl)
+				end
+			end
+			return {ARGV[1], candidate, field}
+		end
+		return {field, candidate}
+	end
+end
+return nil
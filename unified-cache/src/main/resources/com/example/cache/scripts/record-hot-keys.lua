@@ -0,0 +1,61 @@
+-- Adds the sampled hits of an instance to the hot key ranking of a cache, in a single round trip.
+--
+-- KEYS[1] : The ranking (a sorted set of cache key -> decayed number of sampled hits)
+-- ARGV[1] : The current time in milliseconds.
+-- ARGV[2] : The decay interval in milliseconds, a hit is worth half as much once per interval.
+-- ARGV[3] : The maximum number of keys in the ranking, the lowest ranked keys are removed.
+-- ARGV[4] : The time to live of the ranking in seconds, zero means the ranking does not expire.
+-- ARGV[5..] : Pairs of (cache key, number of sampled hits).
+--
+-- The scores are decayed lazily (forward decay): rather than halving every score once per interval, each hit is scaled up by
+-- 2^(elapsed intervals) relative to a landmark time, so a newer hit outweighs an older one and the existing scores are left alone.
+-- The landmark is the name of a member (it starts with a NUL byte, so it is never a cache key) whose score is +inf. Once the scale
+-- grows to 2^RENORMALIZE_EXPONENT, all of the scores are scaled back down in one pass and the landmark moves to the current time,
+-- keys whose score drops below one half are removed. A ranking that has not been written for MAXIMUM_EXPONENT intervals is dropped,
+-- its scores are too small to matter.
+--
+-- Returns the number of keys in the ranking.
+local LANDMARK = '\0landmark:'
+local RENORMALIZE_EXPONENT = 16
+local MAXIMUM_EXPONENT = 64
+
+local now = tonumber(ARGV[1])
+local landmarkMember = redis.call('ZREVRANGE', KEYS[1], 0, 0)[1]
+local landmark = false
+if landmarkMember and string.sub(landmarkMember, 1, string.len(LANDMARK)) == LANDMARK then
+	landmark = tonumber(string.sub(landmarkMember, string.len(LANDMARK) + 1))
+end
+
+local exponent = landmark and math.max(0, (now - landmark) / tonumber(ARGV[2])) or 0
+if landmark and exponent >= MAXIMUM_EXPONENT then
+	redis.call('DEL', KEYS[1])
+	landmark = false
+elseif landmark and exponent >= RENORMALIZE_EXPONENT then
+	redis.call('ZUNIONSTORE', KEYS[1], 1, KEYS[1], 'WEIGHTS', 2 ^ -exponent)
+	redis.call('ZREM', KEYS[1], landmarkMember)
+	redis.call('ZREMRANGEBYSCORE', KEYS[1], '-inf', '(0.5')
+	landmark = false
+end
+if not landmark then
+	redis.call('ZADD', KEYS[1], '+inf', LANDMARK .. now)
+	exponent = 0
+end
+
+local scale = 2 ^ exponent
+for index = 5, #ARGV - 1, 2 do
+	redis.call('ZINCRBY', KEYS[1], tonumber(ARGV[index + 1]) * scale, ARGV[index])
+end
+
+-- The landmark (+inf) always ranks first, so it is never trimmed.
+local maximum = tonumber(ARGV[3])
+local size = redis.call('ZCARD', KEYS[1])
+if size > maximum + 1 then
+	redis.call('ZREMRANGEBYRANK', KEYS[1], 0, size - maximum - 2)
+	size = maximum + 1
+end
+
+local ttl = tonumber(ARGV[4])
+if ttl > 0 then
+	redis.call('EXPIRE', KEYS[1], ttl)
+end
+return size - 1
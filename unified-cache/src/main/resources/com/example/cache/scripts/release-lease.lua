@@ -0,0 +1,8 @@
+-- Releases a load lease, but only if it is still held by the caller (the lease may have expired and been taken by another instance).
+--
+-- KEYS[1] : The lease key
+-- ARGV[1] : The token of the caller that acquired the lease
+if redis.call('GET', KEYS[1]) == ARGV[1] then
+	return redis.call('DEL', KEYS[1])
+end
+return 0
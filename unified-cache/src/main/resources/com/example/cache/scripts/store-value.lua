@@ -0,0 +1,179 @@
+-- Stores the current version's payload of a cache key and prunes the values of stale (older) versions in a single round trip.
+--
+-- KEYS[1] : The cache key (a hash of application version -> serialized value)
+-- ARGV[1] : The current application version
+-- ARGV[2] : The serialized value (ignored by 'prune')
+-- ARGV[3] : The time to live of the value in seconds, zero means the expiration is left unchanged.
+-- ARGV[4] : 'put' to set the current version's value, 'replace' to also drop the other versions, 'absent' to only set the value if
+--           the current version has no value yet (like HSETNX), 'promote' to do the same without extending the expiration of the key
+--           or 'prune' to only prune the stale versions.
+-- ARGV[5] : '1' to deduplicate the payload, '0' to store it in the version field as is.
+-- ARGV[6] : The number of older (numeric) versions whose values are retained besides the current version, the values of any older
+--           versions are pruned. Negative to retain the values of all versions.
+-- ARGV[7] : The current time in milliseconds if each version's value has its own time to live, zero if the time to live applies to the
+--           whole key.
+--
+-- A deduplicated payload longer than MINIMUM_SIZE is stored in a field named after its content ('#' followed by the SHA1 of the
+-- payload) and the version field only holds a reference to that field: a byte 1 followed by the name of the field. Identical payloads
+-- of different versions are only stored once. A payload field that is no longer referenced by any version is removed.
+--
+-- When each value has its own time to live, the version field is expired with HEXPIRE. Servers without HEXPIRE (before Redis 7.4)
+-- store the expiration time of the value in a field named '@' followed by the version instead, expired values are then ignored by
+-- the get script and pruned by this script. The key is still expired as a whole on such servers, so that keys that are no longer
+-- written are removed. As the values have their own time to live, the expiration of the key is only ever extended (every write,
+-- promotions included, extends it to at least the time to live of the value written), it never removes a fresher value. With HEXPIRE
+-- the key itself has no expiration, but one that was set before (by a server without HEXPIRE, or before the values had their own time
+-- to live) is extended the same way.
+--
+-- Returns {1 if the current version's value was set or 0, the number of version fields pruned, the number of bytes pruned}, followed
+-- by the payload the current version already has when 'absent' did not set the value.
+local MINIMUM_SIZE = 64
+
+if redis.call('TYPE', KEYS[1]).ok ~= 'hash' and ARGV[4] == 'prune' then
+	return {0, 0, 0}
+end
+
+local now = tonumber(ARGV[7])
+local pruned = 0
+local prunedBytes = 0
+
+local function isReference(value)
+	return value and string.byte(value, 1) == 1
+end
+
+local function resolve(value)
+	if isReference(value) then
+		return redis.call('HGET', KEYS[1], string.sub(value, 2))
+	end
+	return value
+end
+
+-- Removes the payload field of a reference if no version references it anymore, returns the number of bytes removed.
+local function release(reference)
+	for _, field in ipairs(redis.call('HKEYS', KEYS[1])) do
+		if string.sub(field, 1, 1) ~= '#' and redis.call('HGET', KEYS[1], field) == reference then
+			return 0
+		end
+	end
+	local payloadField = string.sub(reference, 2)
+	local payload = redis.call('HGET', KEYS[1], payloadField)
+	if not payload then
+		return 0
+	end
+	redis.call('HDEL', KEYS[1], payloadField)
+	return string.len(payload)
+end
+
+-- Removes the value of a version (and its expiration time), it is counted as pruned.
+local function prune(version)
+	local value = redis.call('HGET', KEYS[1], version)
+	redis.call('HDEL', KEYS[1], version, '@' .. version)
+	if value then
+		pruned = pruned + 1
+		prunedBytes = prunedBytes + string.len(value)
+		if isReference(value) then
+			prunedBytes = prunedBytes + release(value)
+		end
+	end
+end
+
+-- Expires a field with HEXPIRE (GT only extends the time to live of a field), returns false if the server does not support HEXPIRE.
+local function expireField(field, ttl, onlyExtend)
+	local result
+	if onlyExtend then
+		result = redis.pcall('HEXPIRE', KEYS[1], ttl, 'GT', 'FIELDS', 1, field)
+	else
+		result = redis.pcall('HEXPIRE', KEYS[1], ttl, 'FIELDS', 1, field)
+	end
+	return not (type(result) == 'table' and result.err)
+end
+
+if now > 0 then
+	for _, field in ipairs(redis.call('HKEYS', KEYS[1])) do
+		if string.sub(field, 1, 1) == '@' and tonumber(redis.call('HGET', KEYS[1], field)) <= now then
+			prune(string.sub(field, 2))
+		end
+	end
+end
+
+local mode = ARGV[4]
+local ttl = tonumber(ARGV[3])
+local written = 0
+local expireKey = ttl > 0
+local fieldsExpire = false
+if mode ~= 'prune' then
+	local previous = false
+	if mode == 'replace' then
+		redis.call('DEL', KEYS[1])
+	else
+		previous = redis.call('HGET', KEYS[1], ARGV[1])
+		if previous and mode == 'promote' then
+			return {0, pruned, prunedBytes}
+		end
+		-- A reference to a missing payload is overwritten.
+		local existing = mode == 'absent' and resolve(previous)
+		if existing then
+			return {0, pruned, prunedBytes, existing}
+		end
+	end
+
+	local value = ARGV[2]
+	local payloadField = false
+	local newPayload = false
+	if ARGV[5] == '1' and string.len(value) > MINIMUM_SIZE then
+		payloadField = '#' .. redis.sha1hex(value)
+		newPayload = redis.call('HSETNX', KEYS[1], payloadField, value) == 1
+		value = '\1' .. payloadField
+	end
+	redis.call('HSET', KEYS[1], ARGV[1], value)
+	written = 1
+
+	local expiresAt = false
+	if now > 0 and ttl > 0 then
+		if expireField(ARGV[1], ttl, false) then
+			-- A shared payload lives as long as the longest lived version that references it.
+			if payloadField then
+				expireField(payloadField, ttl, not newPayload)
+			end
+			fieldsExpire = true
+		else
+			expiresAt = now + ttl * 1000
+		end
+	end
+	if expiresAt then
+		redis.call('HSET', KEYS[1], '@' .. ARGV[1], expiresAt)
+	else
+		redis.call('HDEL', KEYS[1], '@' .. ARGV[1])
+	end
+
+	if previous ~= value and isReference(previous) then
+		release(previous)
+	end
+end
+
+local retained = tonumber(ARGV[6])
+if retained >= 0 and string.match(ARGV[1], '^%-?%d+$') then
+	local current = tonumber(ARGV[1])
+	local older = {}
+	for _, field in ipairs(redis.call('HKEYS', KEYS[1])) do
+		if string.match(field, '^%-?%d+$') and tonumber(field) < current then
+			table.insert(older, field)
+		end
+	end
+	table.sort(older, function(first, second) return tonumber(first) > tonumber(second) end)
+	for index = retained + 1, #older do
+		prune(older[index])
+	end
+end
+
+if expireKey and written == 1 then
+	if now > 0 then
+		local current = redis.call('TTL', KEYS[1])
+		if current < ttl and (current >= 0 or not fieldsExpire) then
+			redis.call('EXPIRE', KEYS[1], ttl)
+		end
+	else
+		redis.call('EXPIRE', KEYS[1], ttl)
+	end
+end
+return {written, pruned, prunedBytes}
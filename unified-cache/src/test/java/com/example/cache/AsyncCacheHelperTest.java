@@ -0,0 +1,130 @@
+package com.example.cache;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.hasEntry;
+import static org.hamcrest.Matchers.nullValue;
+import static org.hamcrest.Matchers.sameInstance;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoMoreInteractions;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+
+import org.assertj.core.util.Sets;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.MockitoAnnotations;
+import org.springframework.cache.Cache;
+import org.springframework.cache.Cache.ValueWrapper;
+import org.springframework.cache.CacheManager;
+
+public class AsyncCacheHelperTest {
+
+	private static final List<String> KEY_LIST = Arrays.asList(
+			UUID.randomUUID().toString(),
+			UUID.randomUUID().toString(),
+			UUID.randomUUID().toString()
+	);
+
+	private static final Set<String> KEYS_SET = Collections.unmodifiableSet(Sets.newHashSet(KEY_LIST));
+
+	@Mock
+	private Cache cache;
+
+	@Mock
+	private AsyncExtendedCache asyncCache;
+
+	private CacheManager cacheManager;
+
+	private AsyncCacheHelper asyncCacheHelper;
+
+	@Before
+	public void before() {
+		MockitoAnnotations.initMocks(this);
+		cacheManager = Mockito.mock(CacheManager.class);
+		asyncCacheHelper = new AsyncCacheHelperImpl(new CacheHelperImpl(cacheManager));
+	}
+
+	@Test
+	public void testGet_noCache() {
+		assertThat(asyncCacheHelper.get("testCache", KEY_LIST.get(0)).join(), nullValue());
+	}
+
+	@Test
+	public void testGet_regularCacheExists() {
+		initCache(cache);
+		ValueWrapper wrapper = Mockito.mock(ValueWrapper.class);
+		doReturn(wrapper).when(cache).get(KEY_LIST.get(0));
+
+		assertThat(asyncCacheHelper.get("testCache", KEY_LIST.get(0)).join(), sameInstance(wrapper));
+		verify(cache).get(KEY_LIST.get(0));
+	}
+
+	@Test
+	public void testGet_asyncCacheExists() {
+		initCache(asyncCache);
+		ValueWrapper wrapper = Mockito.mock(ValueWrapper.class);
+		doReturn(CompletableFuture.completedFuture(wrapper)).when(asyncCache).getAsync(KEY_LIST.get(0));
+
+		assertThat(asyncCacheHelper.get("testCache", KEY_LIST.get(0)).join(), sameInstance(wrapper));
+		verify(cacheManager).getCache("testCache");
+		verify(asyncCache).getAsync(KEY_LIST.get(0));
+		verifyNoMoreInteractions(cacheManager, asyncCache);
+	}
+
+	@Test
+	public void testGetAll_asyncCacheExists() {
+		initCache(asyncCache);
+		ValueWrapper wrapper = Mockito.mock(ValueWrapper.class);
+		doReturn(CompletableFuture.completedFuture(Collections.singletonMap(KEY_LIST.get(1), wrapper))).when(asyncCache).getAllAsync(KEYS_SET);
+
+		Map<String, ValueWrapper> result = asyncCacheHelper.getAll("testCache", KEYS_SET).join();
+		verify(asyncCache).getAllAsync(KEYS_SET);
+		assertThat(result.size(), equalTo(1));
+		assertThat(result, hasEntry(KEY_LIST.get(1), wrapper));
+	}
+
+	@Test
+	public void testPut_asyncCacheExists() {
+		initCache(asyncCache);
+		doReturn(CompletableFuture.completedFuture(null)).when(asyncCache).replaceAsync(KEY_LIST.get(0), "value");
+
+		asyncCacheHelper.put("testCache", KEY_LIST.get(0), "value", true).join();
+		verify(cacheManager).getCache("testCache");
+		verify(asyncCache).replaceAsync(KEY_LIST.get(0), "value");
+		verifyNoMoreInteractions(cacheManager, asyncCache);
+	}
+
+	@Test
+	public void testPutAll_regularCacheExists() {
+		initCache(cache);
+		Map<String, String> entries = Collections.singletonMap(KEY_LIST.get(0), "value");
+		asyncCacheHelper.putAll("testCache", entries, false).join();
+		verify(cache).put(KEY_LIST.get(0), "value");
+	}
+
+	@Test
+	public void testEvictAll_asyncCacheExists() {
+		initCache(asyncCache);
+		doReturn(CompletableFuture.completedFuture(null)).when(asyncCache).evictAllAsync(KEYS_SET);
+
+		asyncCacheHelper.evictAll("testCache", KEYS_SET).join();
+		verify(cacheManager).getCache("testCache");
+		verify(asyncCache).evictAllAsync(KEYS_SET);
+		verifyNoMoreInteractions(cacheManager, asyncCache);
+	}
+
+	private void initCache(Cache cache) {
+		doReturn(cache).when(cacheManager).getCache(anyString());
+	}
+}
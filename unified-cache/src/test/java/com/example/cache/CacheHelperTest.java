@@ -125,6 +125,20 @@ public class CacheHelperTest {
 		assertThat(result, hasEntry(KEY_LIST.get(2), wrapper2));
 	}
 
+	@Test
+	public void testGetAll_extendedCacheExists() {
+		ExtendedCache cache = initCache(Mockito.mock(ExtendedCache.class));
+		ValueWrapper wrapper = Mockito.mock(ValueWrapper.class);
+		doReturn(Collections.singletonMap(KEY_LIST.get(1), wrapper)).when(cache).getAll(KEYS_SET);
+
+		Map<String, ValueWrapper> result = runHasCacheManagerTest((h, c) -> h.getAll(c, KEYS_SET));
+		verify(cache).getAll(KEYS_SET);
+		verifyNoMoreInteractions(cacheManager, cache);
+
+		assertThat(result.size(), equalTo(1));
+		assertThat(result, hasEntry(KEY_LIST.get(1), wrapper));
+	}
+
 	@Test
 	public void testEvictAll_noCacheManager() {
 		runNoManagerSinkTest((h, c) -> h.evictAll(c, KEYS_SET));
@@ -155,6 +169,27 @@ public class CacheHelperTest {
 		verifyNoMoreInteractions(cacheManager, cache);
 	}
 
+	@Test
+	public void testPutAll_regularCacheExists() {
+		initCache();
+		Map<String, String> entries = Collections.singletonMap(KEY_LIST.get(0), "value");
+		buildCacheHelper.putAll("testCache", entries, true);
+		verify(cacheManager).getCache("testCache");
+		verify(cache).evict(KEY_LIST.get(0));
+		verify(cache).put(KEY_LIST.get(0), "value");
+		verifyNoMoreInteractions(cacheManager, cache);
+	}
+
+	@Test
+	public void testPutAll_extendedCacheExists() {
+		ExtendedCache cache = initCache(Mockito.mock(ExtendedCache.class));
+		Map<String, String> entries = Collections.singletonMap(KEY_LIST.get(0), "value");
+		buildCacheHelper.putAll("testCache", entries, true);
+		verify(cacheManager).getCache("testCache");
+		verify(cache).putAll(entries, true);
+		verifyNoMoreInteractions(cacheManager, cache);
+	}
+
 	private void initCache() {
 		initCache(cache);
 	}
@@ -0,0 +1,180 @@
+package com.example.cache;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.hasItem;
+import static org.hamcrest.Matchers.not;
+import static org.hamcrest.Matchers.notNullValue;
+import static org.hamcrest.Matchers.nullValue;
+
+import java.io.Serializable;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.RedisTemplate;
+
+import com.example.cache.config.CacheSettings;
+
+/**
+ * Runs against a redis-server started locally (on the port of the "redis.port" system property, 6379 by default), the tests are skipped
+ * if there is no server. Servers before Redis 7.4 exercise the fallback to expiration times stored in the key.
+ */
+public class FieldTimeToLiveTest {
+
+	private LettuceConnectionFactory connectionFactory;
+	private RedisTemplate<Object, Object> template;
+	private UnifiedRedisCacheManager olderManager;
+	private UnifiedRedisCacheManager newerManager;
+
+	@Before
+	public void setUp() {
+		connectionFactory = new LettuceConnectionFactory("localhost", Integer.getInteger("redis.port", 6379));
+		connectionFactory.afterPropertiesSet();
+		try {
+			RedisConnection connection = connectionFactory.getConnection();
+			connection.ping();
+			connection.close();
+		} catch (RuntimeException e) {
+			connectionFactory.destroy();
+			connectionFactory = null;
+			Assume.assumeNoException("There is no local redis-server.", e);
+		}
+		template = new RedisTemplate<>();
+		template.setConnectionFactory(connectionFactory);
+		template.setKeySerializer(new RedisJsonSerializer());
+		template.setValueSerializer(new RedisJsonSerializer());
+		template.afterPropertiesSet();
+
+		//The values of the older version expire well before those of the newer version.
+		olderManager = createManager(createSettings(Duration.ofSeconds(1)), "1");
+		newerManager = createManager(createSettings(Duration.ofSeconds(5)), "2");
+		getCache(olderManager).clear();
+	}
+
+	@After
+	public void tearDown() {
+		if (olderManager != null) {
+			olderManager.destroy();
+			newerManager.destroy();
+		}
+		if (connectionFactory != null) {
+			connectionFactory.destroy();
+		}
+	}
+
+	@Test
+	public void testWriteDoesNotExtendOtherVersions() throws InterruptedException {
+		getCache(olderManager).put(1L, new Model("older"));
+		getCache(newerManager).put(1L, new Model("newer"));
+
+		//The older version's value expires, even though the key was written by the newer version since.
+		awaitExpired(olderManager, 1L);
+		assertThat(getCache(newerManager).get(1L).get(), equalTo(new Model("newer")));
+
+		//The expired value is pruned once the key is written again (or swept), if the server did not remove it already.
+		getCache(newerManager).put(1L, new Model("newer"));
+		assertThat(getFields(1L), not(hasItem("1")));
+	}
+
+	@Test
+	public void testPromotedValueHasItsOwnTimeToLive() throws InterruptedException {
+		getCache(olderManager).put(2L, new Model("older"));
+		assertThat(getCache(newerManager).get(2L), notNullValue());
+		assertThat(getCache(newerManager).getPromotionCount(), equalTo(1L));
+
+		//The older value expires, the promoted value lives on until its own time to live has passed.
+		awaitExpired(olderManager, 2L);
+		assertThat(getCache(newerManager).get(2L).get(), equalTo(new Model("older")));
+		awaitExpired(newerManager, 2L);
+		assertThat(getCache(newerManager).get(2L), nullValue());
+	}
+
+	@Test
+	public void testShorterTimeToLiveDoesNotExpireOtherVersions() throws InterruptedException {
+		getCache(newerManager).put(3L, new Model("newer"));
+		getCache(olderManager).put(3L, new Model("older"));
+
+		//The write of the older version does not shorten the expiration of the key.
+		awaitExpired(olderManager, 3L);
+		assertThat(getCache(newerManager).get(3L).get(), equalTo(new Model("newer")));
+	}
+
+	private static CacheSettings createSettings(Duration timeToLive) {
+		CacheSettings settings = new CacheSettings();
+		settings.getRedis().setTimeToLive(timeToLive);
+		settings.getRedis().setFieldTimeToLive(true);
+		return settings;
+	}
+
+	/**
+	 * Wait (at most 10 seconds) for the value of a key to expire.
+	 */
+	private static void awaitExpired(UnifiedRedisCacheManager manager, Object key) throws InterruptedException {
+		long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+		while (getCache(manager).get(key) != null) {
+			assertThat("The value of [" + key + "] did not expire.", System.nanoTime() < deadline);
+			Thread.sleep(50);
+		}
+	}
+
+	private UnifiedRedisCacheManager createManager(CacheSettings settings, String applicationVersion) {
+		UnifiedRedisCacheManager manager = new UnifiedRedisCacheManager(template, null, settings, applicationVersion);
+		manager.afterPropertiesSet();
+		return manager;
+	}
+
+	private static UnifiedRedisCache getCache(UnifiedRedisCacheManager manager) {
+		return (UnifiedRedisCache) manager.getCache("field-ttl");
+	}
+
+	private Set<String> getFields(Object key) {
+		byte[] keyBytes = getCache(newerManager).computeKey(key);
+		Set<String> fields = new HashSet<>();
+		for (byte[] field : template.execute((RedisCallback<Set<byte[]>>) connection -> connection.hKeys(keyBytes))) {
+			fields.add(new String(field, StandardCharsets.UTF_8));
+		}
+		return fields;
+	}
+
+	public static class Model implements Serializable {
+
+		private static final long serialVersionUID = 1L;
+
+		private String name;
+
+		public Model() {
+		}
+
+		public Model(String name) {
+			this.name = name;
+		}
+
+		public String getName() {
+			return name;
+		}
+
+		public void setName(String name) {
+			this.name = name;
+		}
+
+		@Override
+		public boolean equals(Object other) {
+			return other instanceof Model && ((Model) other).name.equals(name);
+		}
+
+		@Override
+		public int hashCode() {
+			return name.hashCode();
+		}
+	}
+}
@@ -0,0 +1,195 @@
+package com.example.cache;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.instanceOf;
+import static org.hamcrest.Matchers.nullValue;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Function;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class GetBatcherTest {
+
+	private final List<Integer> batchSizes = new ArrayList<>();
+	private final CountDownLatch fetching = new CountDownLatch(1);
+	private final CountDownLatch released = new CountDownLatch(1);
+	private ExecutorService callers;
+	private GetBatcher batcher;
+
+	@Before
+	public void before() {
+		callers = Executors.newCachedThreadPool();
+	}
+
+	@After
+	public void after() {
+		released.countDown();
+		if (batcher != null) {
+			batcher.shutdown();
+		}
+		callers.shutdownNow();
+	}
+
+	@Test
+	public void testFullBatchIsFetchedBeforeTheWindow() throws Exception {
+		batcher = new GetBatcher("test", Duration.ofSeconds(30), 3, Duration.ofSeconds(10), this::fetch);
+		List<Future<byte[][]>> results = new ArrayList<>();
+		for (int index = 0; index < 3; index++) {
+			results.add(get(index));
+		}
+		for (int index = 0; index < 3; index++) {
+			assertThat(results.get(index).get(5, TimeUnit.SECONDS)[1], equalTo(key(index)));
+		}
+		synchronized (batchSizes) {
+			assertThat(batchSizes, contains(3));
+		}
+	}
+
+	@Test
+	public void testPartialBatchIsFetchedAfterTheWindow() throws Exception {
+		batcher = new GetBatcher("test", Duration.ofMillis(20), 10, Duration.ofSeconds(10), this::fetch);
+		assertThat(batcher.get(key(1))[1], equalTo(key(1)));
+		//A miss is returned as null.
+		assertThat(batcher.get(key(-1)), nullValue());
+		synchronized (batchSizes) {
+			assertThat(batchSizes, contains(1, 1));
+		}
+	}
+
+	@Test
+	public void testFailedFetchFailsTheBatch() throws Exception {
+		batcher = new GetBatcher("test", Duration.ofMillis(1), 10, Duration.ofSeconds(10), keys -> {
+			throw new IllegalStateException("Redis is down.");
+		});
+		try {
+			batcher.get(key(1));
+			throw new AssertionError("The lookup should have failed.");
+		} catch (ExecutionException e) {
+			assertThat(e.getCause(), instanceOf(IllegalStateException.class));
+		}
+	}
+
+	@Test(expected = TimeoutException.class)
+	public void testSlowFetchTimesOut() throws Exception {
+		batcher = new GetBatcher("test", Duration.ofMillis(1), 1, Duration.ofMillis(50), blockingFetch());
+		batcher.get(key(1));
+	}
+
+	@Test
+	public void testFullQueueIsRejected() throws Exception {
+		batcher = new GetBatcher("test", Duration.ofMillis(1), 1, Duration.ofSeconds(10), blockingFetch());
+		Future<byte[][]> first = get(0);
+		assertThat(fetching.await(5, TimeUnit.SECONDS), equalTo(true));
+
+		//The dispatcher is stuck on the first batch, the queue holds QUEUED_BATCHES lookups and the others are rejected.
+		int lookups = GetBatcher.QUEUED_BATCHES + 3;
+		List<Future<byte[][]>> results = new ArrayList<>();
+		for (int index = 1; index <= lookups; index++) {
+			results.add(get(index));
+		}
+		long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+		while (batcher.getOverflowCount() < 3 && System.nanoTime() < deadline) {
+			Thread.sleep(1);
+		}
+		assertThat(batcher.getOverflowCount(), equalTo(3L));
+
+		released.countDown();
+		assertThat(first.get(5, TimeUnit.SECONDS)[1], equalTo(key(0)));
+		int rejected = 0;
+		for (Future<byte[][]> result : results) {
+			try {
+				result.get(5, TimeUnit.SECONDS);
+			} catch (ExecutionException e) {
+				assertThat(e.getCause(), instanceOf(RejectedExecutionException.class));
+				rejected++;
+			}
+		}
+		assertThat(rejected, equalTo(3));
+	}
+
+	@Test
+	public void testShutdownRejectsQueuedLookups() throws Exception {
+		batcher = new GetBatcher("test", Duration.ofMillis(1), 1, Duration.ofSeconds(10), blockingFetch());
+		Future<byte[][]> first = get(0);
+		assertThat(fetching.await(5, TimeUnit.SECONDS), equalTo(true));
+		Future<byte[][]> queued = get(1);
+
+		batcher.shutdown();
+		released.countDown();
+
+		//The batch that was being fetched completes, the lookup behind it is rejected (and made directly by its caller).
+		assertThat(first.get(5, TimeUnit.SECONDS)[1], equalTo(key(0)));
+		try {
+			queued.get(5, TimeUnit.SECONDS);
+			throw new AssertionError("The queued lookup should have been rejected.");
+		} catch (ExecutionException e) {
+			assertThat(e.getCause(), instanceOf(RejectedExecutionException.class));
+		}
+	}
+
+	@Test(expected = RejectedExecutionException.class)
+	public void testLookupAfterShutdownIsRejected() throws Exception {
+		batcher = new GetBatcher("test", Duration.ofMillis(1), 10, Duration.ofSeconds(10), this::fetch);
+		batcher.shutdown();
+		batcher.get(key(1));
+	}
+
+	private Future<byte[][]> get(int index) {
+		return callers.submit(() -> batcher.get(key(index)));
+	}
+
+	/**
+	 * Returns the key as the value of each key, a key of a negative index is a miss.
+	 */
+	private List<byte[][]> fetch(List<byte[]> keys) {
+		synchronized (batchSizes) {
+			batchSizes.add(keys.size());
+		}
+		List<byte[][]> values = new ArrayList<>(keys.size());
+		for (byte[] key : keys) {
+			values.add(key[4] == '-' ? null : new byte[][] { "1".getBytes(StandardCharsets.UTF_8), key });
+		}
+		return values;
+	}
+
+	/**
+	 * Signals the first fetch and holds every fetch until released, regardless of the dispatcher being interrupted.
+	 */
+	private Function<List<byte[]>, List<byte[][]>> blockingFetch() {
+		return keys -> {
+			fetching.countDown();
+			boolean interrupted = false;
+			while (released.getCount() > 0) {
+				try {
+					released.await();
+				} catch (InterruptedException e) {
+					interrupted = true;
+				}
+			}
+			if (interrupted) {
+				Thread.currentThread().interrupt();
+			}
+			return fetch(keys);
+		};
+	}
+
+	private static byte[] key(int index) {
+		return ("key:" + index).getBytes(StandardCharsets.UTF_8);
+	}
+}
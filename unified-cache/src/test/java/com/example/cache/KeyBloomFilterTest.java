@@ -0,0 +1,58 @@
+package com.example.cache;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.lessThan;
+
+import java.nio.charset.StandardCharsets;
+
+import org.junit.Test;
+
+public class KeyBloomFilterTest {
+
+	@Test
+	public void testNoFalseNegatives() {
+		KeyBloomFilter filter = new KeyBloomFilter(1000, 0.01, 1024 * 1024);
+		for (int index = 0; index < 1000; index++) {
+			filter.put(key("customer:" + index));
+		}
+		for (int index = 0; index < 1000; index++) {
+			assertThat(filter.mightContain(key("customer:" + index)), equalTo(true));
+		}
+	}
+
+	@Test
+	public void testFalsePositiveRate() {
+		KeyBloomFilter filter = new KeyBloomFilter(10000, 0.01, 1024 * 1024);
+		for (int index = 0; index < 10000; index++) {
+			filter.put(key("customer:" + index));
+		}
+		int falsePositives = 0;
+		for (int index = 10000; index < 20000; index++) {
+			if (filter.mightContain(key("customer:" + index))) {
+				falsePositives++;
+			}
+		}
+		assertThat(falsePositives, lessThan(200));
+		assertThat(filter.getExpectedFalsePositiveProbability(), lessThan(0.02));
+	}
+
+	@Test
+	public void testMaximumMemory() {
+		KeyBloomFilter filter = new KeyBloomFilter(1000000, 0.01, 1024);
+		assertThat(filter.getMemory(), equalTo(1024L));
+		assertThat(filter.getHashFunctions(), equalTo(1));
+	}
+
+	@Test
+	public void testMurmur3() {
+		//The reference values of the x64 128 bit variant of murmur3 (seed 0).
+		long[] hash = KeyBloomFilter.murmur3(key("hello"));
+		assertThat(hash[0], equalTo(0xcbd8a7b341bd9b02L));
+		assertThat(hash[1], equalTo(0x5b1e906a48ae1d19L));
+	}
+
+	private static byte[] key(String key) {
+		return key.getBytes(StandardCharsets.UTF_8);
+	}
+}
@@ -0,0 +1,70 @@
+package com.example.cache;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.containsInAnyOrder;
+import static org.hamcrest.Matchers.empty;
+
+import java.io.Serializable;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+
+public class ModelFingerprintTest {
+
+	@Test
+	public void testClosedModel() {
+		assertThat(ModelFingerprint.getOpenTypes(Collections.singletonList(Order.class)), empty());
+	}
+
+	@Test
+	public void testExtendableModel() {
+		assertThat(ModelFingerprint.getOpenTypes(Collections.singletonList(Base.class)), contains(Base.class.getName()));
+	}
+
+	@Test
+	public void testPolymorphicFields() {
+		assertThat(ModelFingerprint.getOpenTypes(Collections.singletonList(Holder.class)),
+			containsInAnyOrder(Base.class.getName(), Object.class.getName(), Serializable.class.getName(), List.class.getName()));
+	}
+
+	public static final class Order implements Serializable {
+		private static final long serialVersionUID = 1L;
+
+		private String id;
+		private long[] amounts;
+		private List<Line> lines;
+		private Map<String, Line> linesById;
+		private Status status;
+	}
+
+	public static final class Line implements Serializable {
+		private static final long serialVersionUID = 1L;
+
+		private String description;
+		private Long quantity;
+	}
+
+	public enum Status {
+		OPEN, CLOSED
+	}
+
+	public static class Base implements Serializable {
+		private static final long serialVersionUID = 1L;
+
+		private String name;
+	}
+
+	public static final class Holder implements Serializable {
+		private static final long serialVersionUID = 1L;
+
+		//A subclass of Base, any value, an implementation of Serializable and a list of anything.
+		private List<Base> bases;
+		private Object any;
+		private Serializable payload;
+		@SuppressWarnings("rawtypes")
+		private List raw;
+	}
+}
@@ -0,0 +1,128 @@
+package com.example.cache;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.notNullValue;
+import static org.hamcrest.Matchers.nullValue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mockito;
+import org.springframework.data.redis.RedisConnectionFailureException;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.serializer.StringRedisSerializer;
+
+public class NearCacheInvalidatorTest {
+
+	private RedisTemplate<Object, Object> redisOperations;
+	private HeapNearCache nearCache;
+	private UnifiedRedisCache cache;
+
+	@Before
+	@SuppressWarnings("unchecked")
+	public void before() {
+		redisOperations = Mockito.mock(RedisTemplate.class);
+		doReturn(new StringRedisSerializer()).when(redisOperations).getKeySerializer();
+		doReturn(new RedisJsonSerializer()).when(redisOperations).getValueSerializer();
+
+		cache = new UnifiedRedisCache("test", "test:".getBytes(StandardCharsets.UTF_8), redisOperations, 60, "1");
+		nearCache = new HeapNearCache(10, Duration.ofMinutes(1));
+		cache.setNearCache(nearCache, new NearCacheInvalidator(redisOperations, "near-cache"));
+
+		//A single failure opens the breaker, which then stays open for a minute.
+		RedisCircuitBreaker breaker = new RedisCircuitBreaker(10, 1, 50, Duration.ofMillis(500), 100, Duration.ofMinutes(1), 2);
+		breaker.onFailure(TimeUnit.MILLISECONDS.toNanos(1));
+		cache.setCircuitBreaker(breaker);
+	}
+
+	@Test
+	@SuppressWarnings("unchecked")
+	public void testEvictWithOpenCircuitSendsNoCommand() {
+		byte[] keyBytes = cache.computeKey("key");
+		nearCache.put(keyBytes, "value", null);
+
+		cache.evict("key");
+
+		//The local near cache is invalidated, but neither the DEL nor the invalidation message is sent. The value in redis is unchanged,
+		//so there is nothing to tell the other instances.
+		assertThat(nearCache.get(keyBytes), nullValue());
+		verify(redisOperations, never()).execute(any(RedisCallback.class));
+		assertThat(cache.getCircuitRejectionCount(), equalTo(1L));
+		assertThat(cache.getDroppedInvalidationCount(), equalTo(0L));
+	}
+
+	@Test
+	@SuppressWarnings("unchecked")
+	public void testEvictWithBulkheadFullAfterTheWritePublishesTheInvalidation() {
+		cache.setCircuitBreaker(null);
+		byte[] keyBytes = cache.computeKey("key");
+		nearCache.put(keyBytes, "value", null);
+
+		//The DEL is made, by the time it has completed other operations have filled the bulkhead.
+		doAnswer(invocation -> {
+			cache.setMaxConcurrentOperations(1);
+			cache.acquireRedis();
+			return null;
+		}).doReturn(1L).when(redisOperations).execute(any(RedisCallback.class));
+
+		cache.evict("key");
+
+		assertThat(nearCache.get(keyBytes), nullValue());
+		verify(redisOperations, times(2)).execute(any(RedisCallback.class));
+		assertThat(cache.getBulkheadRejectionCount(), equalTo(0L));
+		assertThat(cache.getDroppedInvalidationCount(), equalTo(0L));
+	}
+
+	@Test
+	@SuppressWarnings("unchecked")
+	public void testFailedPublishIsCounted() {
+		cache.setCircuitBreaker(null);
+		doReturn(null).doThrow(new RedisConnectionFailureException("Connection reset.")).when(redisOperations).execute(any(RedisCallback.class));
+
+		cache.evict("key");
+
+		verify(redisOperations, times(2)).execute(any(RedisCallback.class));
+		assertThat(cache.getDroppedInvalidationCount(), equalTo(1L));
+	}
+
+	@Test
+	@SuppressWarnings("unchecked")
+	public void testClearWithOpenCircuitSendsNoCommand() {
+		byte[] keyBytes = cache.computeKey("key");
+		nearCache.put(keyBytes, "value", null);
+
+		cache.clear();
+
+		assertThat(nearCache.get(keyBytes), nullValue());
+		verify(redisOperations, never()).execute(any(RedisCallback.class));
+		assertThat(cache.getCircuitRejectionCount(), equalTo(1L));
+	}
+
+	@Test
+	public void testInvalidationDuringReadIsNotOverwritten() {
+		byte[] keyBytes = cache.computeKey("key");
+		byte[] valueBytes = cache.serializeValue("value");
+
+		//The key is invalidated while its value is being read from redis, the value that was read is no longer current.
+		long epoch = cache.getNearCacheEpoch(keyBytes);
+		cache.invalidateNearCache(keyBytes);
+		assertThat(cache.toValueWrapper(keyBytes, cache.getCurrentVersionBytes(), valueBytes, epoch, null), notNullValue());
+		assertThat(nearCache.get(keyBytes), nullValue());
+
+		//A read that started after the invalidation fills the near cache.
+		epoch = cache.getNearCacheEpoch(keyBytes);
+		cache.toValueWrapper(keyBytes, cache.getCurrentVersionBytes(), valueBytes, epoch, null);
+		assertThat(nearCache.get(keyBytes).get(), equalTo("value"));
+	}
+}
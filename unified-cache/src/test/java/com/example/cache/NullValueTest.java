@@ -0,0 +1,118 @@
+package com.example.cache;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.notNullValue;
+import static org.hamcrest.Matchers.nullValue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mockito;
+import org.springframework.cache.Cache.ValueWrapper;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.serializer.StringRedisSerializer;
+
+import com.example.cache.config.UnifiedRedisCacheMetrics;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+public class NullValueTest {
+
+	private RedisTemplate<Object, Object> redisOperations;
+	private UnifiedRedisCache cache;
+
+	@Before
+	@SuppressWarnings("unchecked")
+	public void before() {
+		redisOperations = Mockito.mock(RedisTemplate.class);
+		doReturn(new StringRedisSerializer()).when(redisOperations).getKeySerializer();
+		doReturn(new RedisJsonSerializer()).when(redisOperations).getValueSerializer();
+
+		cache = new UnifiedRedisCache("test", "test:".getBytes(StandardCharsets.UTF_8), redisOperations, 60, "1");
+	}
+
+	@Test
+	public void testNullValueRoundTrip() {
+		byte[] valueBytes = cache.serializeValue(null);
+		assertThat(UnifiedRedisCache.isNullValue(valueBytes), equalTo(true));
+		assertThat(UnifiedRedisCache.isNullValue(cache.serializeValue("value")), equalTo(false));
+
+		byte[] keyBytes = cache.computeKey("key");
+		ValueWrapper valueWrapper = cache.toValueWrapper(keyBytes, cache.getCurrentVersionBytes(), valueBytes,
+			cache.getNearCacheEpoch(keyBytes), null);
+		assertThat(valueWrapper, notNullValue());
+		assertThat(valueWrapper.get(), nullValue());
+	}
+
+	@Test
+	public void testNegativeHitIsCounted() {
+		SimpleMeterRegistry registry = new SimpleMeterRegistry();
+		new UnifiedRedisCacheMetrics(cache, "test", Collections.emptyList()).bindTo(registry);
+
+		byte[] keyBytes = cache.computeKey("key");
+		cache.toValueWrapper(keyBytes, cache.getCurrentVersionBytes(), UnifiedRedisCache.NULL_VALUE, cache.getNearCacheEpoch(keyBytes), null);
+		//A miss is not a negative hit.
+		cache.toValueWrapper(keyBytes, null, null, cache.getNearCacheEpoch(keyBytes), null);
+
+		assertThat(cache.getNegativeHitCount(), equalTo(1L));
+		assertThat(registry.get("cache.gets.negative").functionCounter().count(), equalTo(1.0));
+	}
+
+	@Test
+	public void testNullValueTimeToLive() {
+		byte[] valueBytes = cache.serializeValue("value");
+
+		//Without a time to live of their own, null values live as long as any other value.
+		assertThat(getExpirationArgument(UnifiedRedisCache.NULL_VALUE), equalTo("60"));
+
+		cache.setNullValues(true, Duration.ofSeconds(10));
+		assertThat(getExpirationArgument(UnifiedRedisCache.NULL_VALUE), equalTo("10"));
+		assertThat(getExpirationArgument(valueBytes), equalTo("60"));
+
+		//The time to live of null values is capped by that of the cache.
+		cache.setNullValues(true, Duration.ofMinutes(5));
+		assertThat(getExpirationArgument(UnifiedRedisCache.NULL_VALUE), equalTo("60"));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testNullValueRejected() {
+		cache.setNullValues(false, null);
+		cache.serializeValue(null);
+	}
+
+	@Test
+	@SuppressWarnings("unchecked")
+	public void testRejectedNullValueDoesNotAbortPutAll() {
+		cache.setNullValues(false, null);
+		cache.setBatchSize(1);
+		doReturn(Collections.singletonList(Arrays.asList(1L, 0L, 0L)))
+			.when(redisOperations).executePipelined(any(RedisCallback.class), any());
+
+		Map<String, String> entries = new LinkedHashMap<>();
+		entries.put("first", "value");
+		entries.put("second", null);
+		entries.put("third", "value");
+		cache.putAll(entries, false);
+
+		//The null value fails its own entry, the batches before and after it are written.
+		verify(redisOperations, times(2)).executePipelined(any(RedisCallback.class), any());
+		assertThat(cache.getBatchPutFailureCount(), equalTo(1L));
+		assertThat(cache.getPutCount(), equalTo(2L));
+	}
+
+	private String getExpirationArgument(byte[] valueBytes) {
+		return new String(cache.getStoreArguments(valueBytes, UnifiedRedisCache.STORE_PUT)[2], StandardCharsets.UTF_8);
+	}
+}
@@ -0,0 +1,111 @@
+package com.example.cache;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.notNullValue;
+import static org.hamcrest.Matchers.nullValue;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Arrays;
+
+import org.junit.Test;
+import org.springframework.data.redis.serializer.RedisSerializer;
+import org.springframework.data.redis.serializer.SerializationException;
+
+public class OffHeapNearCacheTest {
+
+	@Test
+	public void testSizeClasses() {
+		OffHeapNearCache cache = new OffHeapNearCache(1024 * 1024, Duration.ofMinutes(1), null);
+		assertThat(cache.getChunkSize(1), equalTo(64));
+		assertThat(cache.getChunkSize(64), equalTo(64));
+		assertThat(cache.getChunkSize(65), equalTo(128));
+		assertThat(cache.getChunkSize(1000), equalTo(1024));
+		assertThat(cache.getChunkSize(1024 * 1024), equalTo(1024 * 1024));
+	}
+
+	@Test
+	public void testValuesLargerThanASlabAreNotHeld() {
+		OffHeapNearCache cache = new OffHeapNearCache(1024, Duration.ofMinutes(1), null);
+		cache.put(key(1), null, value(1025));
+		assertThat(cache.get(key(1)), nullValue());
+		assertThat(cache.getAllocatedMemory(), equalTo(0L));
+	}
+
+	@Test
+	public void testLeastRecentlyUsedEviction() {
+		//A single slab of 1024 bytes, carved into four chunks of 256 bytes.
+		OffHeapNearCache cache = new OffHeapNearCache(1024, Duration.ofMinutes(1), null);
+		for (int index = 0; index < 4; index++) {
+			cache.put(key(index), null, value(200));
+		}
+		assertThat(cache.get(key(0)), notNullValue());
+
+		cache.put(key(4), null, value(200));
+		assertThat(cache.get(key(1)), nullValue());
+		assertThat(cache.get(key(0)), notNullValue());
+		assertThat(cache.get(key(4)), notNullValue());
+		assertThat(cache.size(), equalTo(4L));
+		assertThat(cache.evictionCount(), equalTo(1L));
+		assertThat((byte[]) cache.get(key(4)).get(), equalTo(value(200)));
+	}
+
+	@Test
+	public void testTimeToLive() {
+		OffHeapNearCache cache = new OffHeapNearCache(1024, Duration.ZERO, null);
+		cache.put(key(1), null, value(10));
+		assertThat(cache.get(key(1)), nullValue());
+		assertThat(cache.size(), equalTo(0L));
+		assertThat(cache.evictionCount(), equalTo(1L));
+	}
+
+	@Test
+	public void testInvalidateAllRepartitionsTheSlabs() {
+		OffHeapNearCache cache = new OffHeapNearCache(1024, Duration.ofMinutes(1), null);
+		cache.put(key(1), null, value(10));
+
+		//The only slab is carved into 64 byte chunks, there is no room for a larger value.
+		cache.put(key(2), null, value(200));
+		assertThat(cache.get(key(2)), nullValue());
+
+		for (int clear = 0; clear < 3; clear++) {
+			cache.invalidateAll();
+			assertThat(cache.get(key(1)), nullValue());
+			cache.put(key(2), null, value(200));
+			assertThat(cache.get(key(2)), notNullValue());
+			//The slab is kept and re-partitioned, rather than a new slab being allocated.
+			assertThat(cache.getAllocatedMemory(), equalTo(1024L));
+		}
+	}
+
+	@Test
+	public void testDeserializationFailureDropsTheEntry() {
+		OffHeapNearCache cache = new OffHeapNearCache(1024, Duration.ofMinutes(1), new RedisSerializer<Object>() {
+
+			@Override
+			public byte[] serialize(Object value) {
+				return (byte[]) value;
+			}
+
+			@Override
+			public Object deserialize(byte[] bytes) {
+				throw new SerializationException("The class has changed.");
+			}
+		});
+		cache.put(key(1), null, value(10));
+		assertThat(cache.get(key(1)), nullValue());
+		assertThat(cache.size(), equalTo(0L));
+		assertThat(cache.missCount(), equalTo(1L));
+	}
+
+	private static byte[] key(int index) {
+		return ("key:" + index).getBytes(StandardCharsets.UTF_8);
+	}
+
+	private static byte[] value(int length) {
+		byte[] value = new byte[length];
+		Arrays.fill(value, (byte) length);
+		return value;
+	}
+}
@@ -0,0 +1,96 @@
+package com.example.cache;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+import org.springframework.data.redis.RedisConnectionFailureException;
+import org.springframework.data.redis.RedisSystemException;
+
+import com.example.cache.RedisCircuitBreaker.State;
+
+import io.lettuce.core.RedisCommandTimeoutException;
+
+public class RedisCircuitBreakerTest {
+
+	private static final long FAST = TimeUnit.MILLISECONDS.toNanos(1);
+	private static final long SLOW = TimeUnit.SECONDS.toNanos(1);
+
+	@Test
+	public void testOpensOnFailureRate() {
+		RedisCircuitBreaker breaker = new RedisCircuitBreaker(10, 4, 50, Duration.ofMillis(500), 100, Duration.ofMinutes(1), 2);
+		breaker.onSuccess(FAST);
+		breaker.onFailure(FAST);
+		breaker.onSuccess(FAST);
+		assertThat(breaker.getState(), equalTo(State.CLOSED));
+
+		//The fourth call reaches the minimum number of calls with a failure rate of 50%.
+		breaker.onFailure(FAST);
+		assertThat(breaker.getState(), equalTo(State.OPEN));
+		assertThat(breaker.tryAcquire(), equalTo(false));
+		assertThat(breaker.getRejectedCount(), equalTo(1L));
+	}
+
+	@Test
+	public void testOpensOnSlowCallRate() {
+		RedisCircuitBreaker breaker = new RedisCircuitBreaker(10, 2, 100, Duration.ofMillis(500), 50, Duration.ofMinutes(1), 2);
+		breaker.onSuccess(FAST);
+		breaker.onSuccess(SLOW);
+		assertThat(breaker.getState(), equalTo(State.OPEN));
+	}
+
+	@Test
+	public void testSlidingWindowForgetsOldCalls() {
+		RedisCircuitBreaker breaker = new RedisCircuitBreaker(4, 4, 50, Duration.ofMillis(500), 100, Duration.ofMinutes(1), 2);
+		breaker.onFailure(FAST);
+		for (int index = 0; index < 6; index++) {
+			breaker.onSuccess(FAST);
+		}
+		breaker.onFailure(FAST);
+		assertThat(breaker.getFailureRate(), equalTo(25.0f));
+		assertThat(breaker.getState(), equalTo(State.CLOSED));
+	}
+
+	@Test
+	public void testHalfOpenClosesAfterSuccessfulProbes() {
+		RedisCircuitBreaker breaker = new RedisCircuitBreaker(10, 1, 50, Duration.ofMillis(500), 100, Duration.ZERO, 2);
+		breaker.onFailure(FAST);
+		assertThat(breaker.getState(), equalTo(State.HALF_OPEN));
+
+		//Only the permitted number of probes are let through.
+		assertThat(breaker.tryAcquire(), equalTo(true));
+		assertThat(breaker.tryAcquire(), equalTo(true));
+		assertThat(breaker.tryAcquire(), equalTo(false));
+
+		breaker.onSuccess(FAST);
+		breaker.onSuccess(FAST);
+		assertThat(breaker.getState(), equalTo(State.CLOSED));
+		assertThat(breaker.getFailureRate(), equalTo(0.0f));
+		assertThat(breaker.tryAcquire(), equalTo(true));
+	}
+
+	@Test
+	public void testHalfOpenReopensOnSlowProbe() throws InterruptedException {
+		RedisCircuitBreaker breaker = new RedisCircuitBreaker(10, 1, 50, Duration.ofMillis(500), 100, Duration.ofMillis(50), 2);
+		breaker.onFailure(FAST);
+		assertThat(breaker.getState(), equalTo(State.OPEN));
+		assertThat(breaker.tryAcquire(), equalTo(false));
+
+		Thread.sleep(60);
+		assertThat(breaker.tryAcquire(), equalTo(true));
+		breaker.onSuccess(SLOW);
+		assertThat(breaker.getState(), equalTo(State.OPEN));
+		assertThat(breaker.tryAcquire(), equalTo(false));
+	}
+
+	@Test
+	public void testRedisFailures() {
+		assertThat(RedisCircuitBreaker.isRedisFailure(new RedisConnectionFailureException("down")), equalTo(true));
+		assertThat(RedisCircuitBreaker.isRedisFailure(new RedisSystemException("timeout", new RedisCommandTimeoutException())), equalTo(true));
+		assertThat(RedisCircuitBreaker.isRedisFailure(new RedisSystemException("NOSCRIPT", new IllegalStateException())), equalTo(false));
+		assertThat(RedisCircuitBreaker.isRedisFailure(new RedisCircuitOpenException()), equalTo(true));
+	}
+}
@@ -0,0 +1,72 @@
+package com.example.cache;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.equalTo;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+
+public class VersionComparatorTest {
+
+	@Test
+	public void testInteger() {
+		assertThat(VersionComparator.INTEGER.isOrdered("1.0.0-SNAPSHOT"), equalTo(false));
+		assertThat(sorted(VersionComparator.INTEGER, "10", "9", "100"), contains("9", "10", "100"));
+	}
+
+	@Test
+	public void testSemantic() {
+		assertThat(VersionComparator.SEMANTIC.isOrdered("1.0.0-SNAPSHOT"), equalTo(true));
+		assertThat(VersionComparator.SEMANTIC.isOrdered("20241016-nightly!"), equalTo(false));
+		assertThat(sorted(VersionComparator.SEMANTIC, "1.10.0", "1.2.0", "1.0.0", "1.0.0-rc.1", "1.0.0-alpha", "1.0.0-alpha.1", "1.0.0-rc.11",
+				"1.0.0-rc.2", "v0.9", "2"),
+			contains("v0.9", "1.0.0-alpha", "1.0.0-alpha.1", "1.0.0-rc.1", "1.0.0-rc.2", "1.0.0-rc.11", "1.0.0", "1.2.0", "1.10.0", "2"));
+		//Build metadata does not take part in the ordering.
+		assertThat(VersionComparator.SEMANTIC.compare("1.4.2+build.7", "1.4.2+build.8"), equalTo(0));
+	}
+
+	@Test
+	public void testBuildTimestamp() {
+		assertThat(VersionComparator.BUILD_TIMESTAMP.isOrdered("1.0.0-SNAPSHOT"), equalTo(false));
+		assertThat(sorted(VersionComparator.BUILD_TIMESTAMP, "2024-10-16T15:30:00Z", "20241016", "build-20241016.153000-42", "20240930.080000",
+				"20241016.153000-7"),
+			contains("20240930.080000", "20241016", "2024-10-16T15:30:00Z", "20241016.153000-7", "build-20241016.153000-42"));
+	}
+
+	@Test
+	public void testUnorderedVersionsAreOldest() {
+		assertThat(sorted(VersionComparator.SEMANTIC, "1.0.0", "latest"), contains("latest", "1.0.0"));
+	}
+
+	@Test
+	public void testOlderVersionsNewestFirst() {
+		VersionRegistry registry = new VersionRegistry(bytes("registry"), "1.2.0", VersionComparator.SEMANTIC, 0);
+		Map<byte[], byte[]> published = new LinkedHashMap<>();
+		for (String version : Arrays.asList("1.0.0", "1.3.0", "1.1.0", "1.2.0", "1.2.0-rc.1", "latest")) {
+			published.put(bytes(version), bytes("0"));
+		}
+		registry.update(published);
+		List<String> olderVersions = new ArrayList<>();
+		for (byte[] version : registry.getOlderVersions()) {
+			olderVersions.add(new String(version, StandardCharsets.UTF_8));
+		}
+		assertThat(olderVersions, contains("1.2.0-rc.1", "1.1.0", "1.0.0"));
+	}
+
+	private static List<String> sorted(VersionComparator comparator, String... versions) {
+		List<String> sorted = new ArrayList<>(Arrays.asList(versions));
+		sorted.sort(comparator);
+		return sorted;
+	}
+
+	private static byte[] bytes(String value) {
+		return value.getBytes(StandardCharsets.UTF_8);
+	}
+}